@@ -0,0 +1,183 @@
+package no.uib.pap.methods.matching;
+
+import no.uib.pap.model.Proteoform;
+import org.apache.commons.lang3.tuple.Pair;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.ToIntFunction;
+
+/**
+ * A {@link Proteoform} encoded once for matching, so the matchers compare primitive arrays without creating objects.
+ * <p>
+ * <p>Each PTM is a long with the identifier of its modification type in the {@link PtmTypes} of the
+ * {@link ProteoformIndex} in the high 32 bits and its coordinate in the
+ * low 32 bits, where 0 stands for a null coordinate, 1 for -1 and any other value for the coordinate plus 2. The PTMs
+ * are sorted, so the PTMs of a type are contiguous and ordered by coordinate, with the unknown coordinates first.
+ * The known coordinates of all the PTMs are also kept sorted on their own, for the matching without types.</p>
+ * <p>
+ * <p>A proteoform whose accession or PTM types are null, or whose coordinates do not fit, is not packed and the
+ * matchers compare it with {@link ProteoformMatching#matches(Proteoform, Proteoform, Long)}.</p>
+ */
+public final class PackedProteoform {
+
+    /**
+     * Start or end coordinate that is null or -1, which matches any coordinate.
+     */
+    public static final long UNKNOWN = Long.MIN_VALUE;
+
+    private static final long MAX_COORDINATE = 0xFFFFFFFFL - 2;
+
+    private final Proteoform proteoform;
+    private final String accession;
+    private final long start;
+    private final long end;
+    private final long[] ptms;
+    private final long[] coordinates;
+    private final int unknownCoordinates;
+
+    private PackedProteoform(Proteoform proteoform, long start, long end, long[] ptms, long[] coordinates, int unknownCoordinates) {
+        this.proteoform = proteoform;
+        this.accession = proteoform.getUniProtAccWithIsoform();
+        this.start = start;
+        this.end = end;
+        this.ptms = ptms;
+        this.coordinates = coordinates;
+        this.unknownCoordinates = unknownCoordinates;
+    }
+
+    /**
+     * Encodes the proteoform, or wraps it unpacked if it cannot be encoded. The proteoforms compared with each other
+     * must be encoded with the same types, see {@link ProteoformIndex#pack(Proteoform)}.
+     *
+     * @param types Identifier of each modification type
+     */
+    static PackedProteoform of(Proteoform proteoform, ToIntFunction<String> types) {
+        Long start = proteoform.getStartCoordinate();
+        Long end = proteoform.getEndCoordinate();
+        List<Pair<String, Long>> ptmList = proteoform.getPtms();
+        if (proteoform.getUniProtAccWithIsoform() == null || Long.valueOf(UNKNOWN).equals(start) || Long.valueOf(UNKNOWN).equals(end)) {
+            return new PackedProteoform(proteoform, UNKNOWN, UNKNOWN, null, null, 0);
+        }
+        long[] ptms = new long[ptmList.size()];
+        long[] coordinates = new long[ptmList.size()];
+        int known = 0;
+        for (int i = 0; i < ptms.length; i++) {
+            Pair<String, Long> ptm = ptmList.get(i);
+            Long coordinate = ptm.getValue();
+            if (ptm.getKey() == null || coordinate != null && (coordinate < -1 || coordinate > MAX_COORDINATE)) {
+                return new PackedProteoform(proteoform, UNKNOWN, UNKNOWN, null, null, 0);
+            }
+            long encoded = coordinate == null ? 0 : coordinate + 2;
+            ptms[i] = (long) types.applyAsInt(ptm.getKey()) << 32 | encoded;
+            if (encoded > 1) {
+                coordinates[known++] = coordinate;
+            }
+        }
+        Arrays.sort(ptms);
+        coordinates = Arrays.copyOf(coordinates, known);
+        Arrays.sort(coordinates);
+        return new PackedProteoform(proteoform, decode(start), decode(end), ptms, coordinates, ptms.length - known);
+    }
+
+    private static long decode(Long coordinate) {
+        return coordinate == null || coordinate == -1L ? UNKNOWN : coordinate;
+    }
+
+    /**
+     * @param coordinate A coordinate from 0, or {@link #UNKNOWN} for the first key of the type
+     * @return The PTM of the type at the coordinate
+     */
+    static long key(int type, long coordinate) {
+        return (long) type << 32 | (coordinate == UNKNOWN ? 0 : coordinate + 2);
+    }
+
+    /**
+     * Finds the first value that is not less than the key, from a position of a sorted array. The search gallops:
+     * it doubles its step until it passes the key and then searches that step by halves, so it takes O(log d) steps
+     * for a distance d from the position.
+     *
+     * @return The position of the value, or the length of the array if all the values from the position are less
+     */
+    static int lowerBound(long[] sorted, int from, long key) {
+        int low = from;
+        int step = 1;
+        while (step <= sorted.length - low && sorted[low + step - 1] < key) {
+            low += step;
+            step <<= 1;
+        }
+        int length = (step <= sorted.length - low ? low + step - 1 : sorted.length) - low;
+        if (length == 0) {
+            return low;
+        }
+        // Halves the range with a conditional move instead of a branch, which the processor can not predict
+        while (length > 1) {
+            int half = length >>> 1;
+            low = sorted[low + half - 1] < key ? low + half : low;
+            length -= half;
+        }
+        return sorted[low] < key ? low + 1 : low;
+    }
+
+    static int type(long ptm) {
+        return (int) (ptm >>> 32);
+    }
+
+    static boolean isUnknown(long ptm) {
+        return (ptm & 0xFFFFFFFFL) <= 1;
+    }
+
+    static long coordinate(long ptm) {
+        return (ptm & 0xFFFFFFFFL) - 2;
+    }
+
+    /**
+     * @return False if the proteoform could not be encoded and only {@link #getProteoform()} is set
+     */
+    public boolean isPacked() {
+        return ptms != null;
+    }
+
+    public Proteoform getProteoform() {
+        return proteoform;
+    }
+
+    public String getAccession() {
+        return accession;
+    }
+
+    /**
+     * @return The start coordinate, or {@link #UNKNOWN}
+     */
+    public long getStart() {
+        return start;
+    }
+
+    /**
+     * @return The end coordinate, or {@link #UNKNOWN}
+     */
+    public long getEnd() {
+        return end;
+    }
+
+    /**
+     * @return The sorted PTMs, not to be modified
+     */
+    long[] getPtms() {
+        return ptms;
+    }
+
+    /**
+     * @return The sorted known coordinates of the PTMs, not to be modified
+     */
+    long[] getCoordinates() {
+        return coordinates;
+    }
+
+    /**
+     * @return Number of PTMs with a null or -1 coordinate
+     */
+    int getUnknownCoordinates() {
+        return unknownCoordinates;
+    }
+}
@@ -0,0 +1,261 @@
+package no.uib.pap.methods.matching;
+
+import com.google.common.collect.ImmutableMap;
+import no.uib.pap.model.Mapping;
+import no.uib.pap.model.MatchType;
+import no.uib.pap.model.Proteoform;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * The reference proteoforms of a {@link Mapping} encoded as {@link PackedProteoform}s, so each reference proteoform is
+ * encoded once for all the searches that use the mapping.
+ * <p>
+ * <p>The proteoforms of each accession and isoform also have inverted indices of their PTMs, with and without the
+ * types, which {@link #getCandidates(PackedProteoform, MatchType, Long)} uses to find the proteoforms that can match
+ * an input proteoform without comparing it with all of them. Proteins such as histones have hundreds of proteoforms,
+ * of which an input matches a few.</p>
+ */
+public final class ProteoformIndex {
+
+    private static final PackedProteoform[] NONE = new PackedProteoform[0];
+
+    private static final Map<Mapping, ProteoformIndex> indices = Collections.synchronizedMap(new WeakHashMap<>());
+
+    private final PtmTypes types = new PtmTypes();
+    private final ImmutableMap<String, PackedProteoform[]> proteoforms;
+    private final ImmutableMap<String, Group> groups;
+
+    /*
+     * The proteoforms of one accession and isoform.
+     */
+    static final class Group {
+
+        private final PackedProteoform[] proteoforms;
+        private final PtmPostings typed;
+        private final PtmPostings untyped;
+
+        private Group(PackedProteoform[] proteoforms) {
+            this.proteoforms = proteoforms;
+            this.typed = new PtmPostings(proteoforms, true);
+            this.untyped = new PtmPostings(proteoforms, false);
+        }
+
+        /**
+         * @return The proteoforms in the order of the mapping, not to be modified
+         */
+        PackedProteoform[] getProteoforms() {
+            return proteoforms;
+        }
+    }
+
+    private ProteoformIndex(Mapping mapping) {
+        ImmutableMap.Builder<String, PackedProteoform[]> builder = ImmutableMap.builder();
+        Map<String, List<PackedProteoform>> isoforms = new LinkedHashMap<>();
+        for (Map.Entry<String, Collection<Proteoform>> protein : mapping.getProteinsToProteoforms().asMap().entrySet()) {
+            PackedProteoform[] packed = protein.getValue().stream().map(proteoform -> PackedProteoform.of(proteoform, types::add)).toArray(PackedProteoform[]::new);
+            builder.put(protein.getKey(), packed);
+            for (PackedProteoform proteoform : packed) {
+                // A proteoform under another accession can not match the inputs that look it up by their accession
+                String accession = proteoform.getProteoform().getUniProtAccWithIsoform();
+                if (accession != null && protein.getKey().equals(proteoform.getProteoform().getUniProtAcc())) {
+                    isoforms.computeIfAbsent(accession, key -> new ArrayList<>()).add(proteoform);
+                }
+            }
+        }
+        this.proteoforms = builder.build();
+        ImmutableMap.Builder<String, Group> groupBuilder = ImmutableMap.builder();
+        for (Map.Entry<String, List<PackedProteoform>> isoform : isoforms.entrySet()) {
+            groupBuilder.put(isoform.getKey(), new Group(isoform.getValue().toArray(NONE)));
+        }
+        this.groups = groupBuilder.build();
+    }
+
+    /**
+     * Gets the index of the mapping. The index is created on the first call and reused while the mapping is in use.
+     */
+    public static ProteoformIndex of(Mapping mapping) {
+        return indices.computeIfAbsent(mapping, ProteoformIndex::new);
+    }
+
+    /**
+     * Encodes an input proteoform to match it with the reference proteoforms of the index. The PTM types that no
+     * reference proteoform has share one identifier, as they can not be matched.
+     */
+    public PackedProteoform pack(Proteoform input) {
+        return PackedProteoform.of(input, types::get);
+    }
+
+    /**
+     * @return Number of PTM types of the reference proteoforms
+     */
+    int getTypeCount() {
+        return types.size();
+    }
+
+    /**
+     * @param accession UniProt accession without isoform
+     * @return The reference proteoforms of the protein, in the order of the mapping, not to be modified
+     */
+    public PackedProteoform[] get(String accession) {
+        PackedProteoform[] packed = proteoforms.get(accession);
+        return packed == null ? NONE : packed;
+    }
+
+    /**
+     * Gets the reference proteoforms of the accession of the input that can match it with the match type and margin,
+     * in the order of the mapping. All the proteoforms that match are returned, and some that do not, so each one
+     * must still be checked with the matcher of the match type.
+     * <p>
+     * <p>A reference PTM is hit by an input PTM when they have the same type, if the match type uses the types, and
+     * either coordinate is unknown or they are within the margin. Then, a candidate for:</p>
+     * <ul>
+     * <li>superset has all of its PTMs hit, or none,</li>
+     * <li>one has at least one PTM hit, or none,</li>
+     * <li>subset has a PTM hit by each input PTM,</li>
+     * <li>strict has a PTM hit by each input PTM with margin 0, and as many PTMs as the input.</li>
+     * </ul>
+     * <p>Reference proteoforms that are not packed are always candidates. Inputs that are not packed and null or
+     * negative margins get all the proteoforms of the accession.</p>
+     */
+    public List<PackedProteoform> getCandidates(PackedProteoform input, MatchType matchType, Long margin) {
+        return getCandidates(input.isPacked() ? getGroup(input.getAccession()) : null, input, matchType, margin);
+    }
+
+    /**
+     * @return The proteoforms of the accession and isoform, or null if there are none
+     */
+    Group getGroup(String accession) {
+        return groups.get(accession);
+    }
+
+    /**
+     * Gets the candidates of an input of the group, like {@link #getCandidates(PackedProteoform, MatchType, Long)},
+     * so the inputs of a group look it up once.
+     */
+    List<PackedProteoform> getCandidates(Group group, PackedProteoform input, MatchType matchType, Long margin) {
+        if (!input.isPacked() || (matchType != MatchType.STRICT && (margin == null || margin < 0))) {
+            return Arrays.asList(get(input.getProteoform().getUniProtAcc()));
+        }
+        if (group == null) {
+            return Collections.emptyList();
+        }
+        Hits hits = new Hits(group, useTypes(matchType) ? group.typed : group.untyped, input.getPtms(), matchType == MatchType.STRICT ? 0 : margin);
+        List<PackedProteoform> candidates = new ArrayList<>();
+        for (int proteoform = 0; proteoform < group.proteoforms.length; proteoform++) {
+            if (hits.isCandidate(matchType, proteoform)) {
+                candidates.add(group.proteoforms[proteoform]);
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * Finds the candidates of a packed input of the group for several match types at once, like
+     * {@link #getCandidates(Group, PackedProteoform, MatchType, Long)} for each of them, but walking the postings with
+     * and without types once for all of them. The candidates for a margin are also candidates for any smaller margin.
+     *
+     * @param margin A margin of at least 0
+     * @return For each proteoform of {@link Group#getProteoforms()}, the bits of the positions of the match types that
+     * it is a candidate for
+     */
+    int[] getCandidateTypes(Group group, PackedProteoform input, MatchType[] matchTypes, long margin) {
+        int[] candidateTypes = new int[group.proteoforms.length];
+        Hits typed = null;
+        Hits untyped = null;
+        Hits strict = null;
+        for (int type = 0; type < matchTypes.length; type++) {
+            Hits hits;
+            if (matchTypes[type] == MatchType.STRICT) {
+                if (strict == null) {
+                    strict = margin == 0 && typed != null ? typed : new Hits(group, group.typed, input.getPtms(), 0);
+                }
+                hits = strict;
+            } else if (useTypes(matchTypes[type])) {
+                if (typed == null) {
+                    typed = margin == 0 && strict != null ? strict : new Hits(group, group.typed, input.getPtms(), margin);
+                }
+                hits = typed;
+            } else {
+                if (untyped == null) {
+                    untyped = new Hits(group, group.untyped, input.getPtms(), margin);
+                }
+                hits = untyped;
+            }
+            for (int proteoform = 0; proteoform < candidateTypes.length; proteoform++) {
+                if (hits.isCandidate(matchTypes[type], proteoform)) {
+                    candidateTypes[proteoform] |= 1 << type;
+                }
+            }
+        }
+        return candidateTypes;
+    }
+
+    private static boolean useTypes(MatchType matchType) {
+        return matchType != MatchType.SUPERSET_NO_TYPES && matchType != MatchType.SUBSET_NO_TYPES && matchType != MatchType.ONE_NO_TYPES;
+    }
+
+    /*
+     * The hits of the PTMs of an input on the PTMs of the proteoforms of a group, counted in one walk of the postings.
+     */
+    private static final class Hits {
+
+        private final PackedProteoform[] proteoforms;
+        private final int inputPtms;
+        // Number of PTMs of each proteoform hit by any input PTM
+        private final int[] hitPtms;
+        // Number of input PTMs that hit each proteoform
+        private final int[] hitBy;
+
+        Hits(Group group, PtmPostings postings, long[] inputPtms, long margin) {
+            this.proteoforms = group.proteoforms;
+            this.inputPtms = inputPtms.length;
+            int[] hitPtms = new int[proteoforms.length];
+            int[] hitBy = new int[proteoforms.length];
+            boolean[] hit = new boolean[postings.size()];
+            int[] last = new int[proteoforms.length];
+            for (int i = 0; i < inputPtms.length; i++) {
+                int stamp = i + 1;
+                postings.visit(inputPtms[i], margin, (posting, proteoform) -> {
+                    if (!hit[posting]) {
+                        hit[posting] = true;
+                        hitPtms[proteoform]++;
+                    }
+                    if (last[proteoform] != stamp) {
+                        last[proteoform] = stamp;
+                        hitBy[proteoform]++;
+                    }
+                });
+            }
+            this.hitPtms = hitPtms;
+            this.hitBy = hitBy;
+        }
+
+        boolean isCandidate(MatchType matchType, int proteoform) {
+            PackedProteoform reference = proteoforms[proteoform];
+            if (!reference.isPacked()) {
+                return true;
+            }
+            int ptms = reference.getPtms().length;
+            switch (matchType) {
+                case SUPERSET:
+                case SUPERSET_NO_TYPES:
+                    return ptms == 0 || hitPtms[proteoform] == ptms;
+                case ONE:
+                case ONE_NO_TYPES:
+                    return ptms == 0 || hitPtms[proteoform] > 0;
+                case STRICT:
+                    return hitBy[proteoform] == inputPtms && ptms == inputPtms;
+                default:
+                    return hitBy[proteoform] == inputPtms;
+            }
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package no.uib.pap.methods.matching;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import no.uib.pap.model.Mapping;
+import no.uib.pap.model.MatchType;
+import no.uib.pap.model.Proteoform;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.WeakHashMap;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * The reference proteoforms matched by the input proteoforms already searched against a {@link Mapping}, so the
+ * proteoforms that come in many searches, such as common phosphorylation sites and histone marks, are matched once.
+ * <p>
+ * <p>The matches are kept for each input proteoform, match type and margin, in a cache that evicts the least recently
+ * used entries when it has more than its maximum number of entries. The input proteoforms are compared by their
+ * accession, start and end coordinates and sorted PTMs, so the same proteoform written with its PTMs in another order
+ * uses the same entry. The cache counts its hits and misses, and is safe to use from several threads.</p>
+ * <p>
+ * <p>Each mapping has its own cache, so a reloaded mapping starts with an empty one, and the cache of the previous
+ * mapping is dropped with it, or right away with {@link #invalidate(Mapping)}.</p>
+ */
+public final class ProteoformMatchCache {
+
+    /**
+     * Number of input proteoforms, match types and margins kept by the cache of {@link #of(Mapping)}.
+     */
+    public static final long DEFAULT_MAX_ENTRIES = 100_000;
+
+    private static final Map<Mapping, ProteoformMatchCache> caches = Collections.synchronizedMap(new WeakHashMap<>());
+
+    private final ProteoformIndex index;
+    private final Cache<Key, Proteoform[]> matches;
+
+    /*
+     * An input proteoform as the matchers see it, with a match type and margin.
+     */
+    private static final class Key {
+
+        private final String accession;
+        private final long start;
+        private final long end;
+        private final long[] ptms;
+        // The proteoform itself if it could not be packed
+        private final Proteoform unpacked;
+        private final MatchType matchType;
+        private final Long margin;
+        private final int hash;
+
+        Key(PackedProteoform proteoform, MatchType matchType, Long margin) {
+            this.accession = proteoform.getAccession();
+            this.start = proteoform.getStart();
+            this.end = proteoform.getEnd();
+            this.ptms = proteoform.getPtms();
+            this.unpacked = proteoform.isPacked() ? null : proteoform.getProteoform();
+            this.matchType = matchType;
+            this.margin = margin;
+            this.hash = Objects.hash(accession, start, end, Arrays.hashCode(ptms), unpacked, matchType, margin);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return hash == key.hash && start == key.start && end == key.end && matchType == key.matchType
+                    && Objects.equals(margin, key.margin) && Objects.equals(accession, key.accession)
+                    && Arrays.equals(ptms, key.ptms) && Objects.equals(unpacked, key.unpacked);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    ProteoformMatchCache(ProteoformIndex index, long maxEntries) {
+        if (maxEntries < 0) {
+            throw new IllegalArgumentException("The maximum number of entries must not be negative.");
+        }
+        this.index = index;
+        this.matches = CacheBuilder.newBuilder()
+                .maximumSize(maxEntries)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Gets the cache of the mapping. The cache is created on the first call, with {@link #DEFAULT_MAX_ENTRIES}, and
+     * reused while the mapping is in use.
+     */
+    public static ProteoformMatchCache of(Mapping mapping) {
+        return of(mapping, DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * Gets the cache of the mapping. The maximum number of entries is used only if this call creates the cache, so it
+     * must be given before the first search of the mapping.
+     */
+    public static ProteoformMatchCache of(Mapping mapping, long maxEntries) {
+        return caches.computeIfAbsent(mapping, key -> new ProteoformMatchCache(ProteoformIndex.of(key), maxEntries));
+    }
+
+    /**
+     * Drops the cache of the mapping, for example when the mapping is reloaded while it is still in use. The next call
+     * to {@link #of(Mapping)} creates an empty cache.
+     */
+    public static void invalidate(Mapping mapping) {
+        ProteoformMatchCache cache = caches.remove(mapping);
+        if (cache != null) {
+            cache.matches.invalidateAll();
+        }
+    }
+
+    /**
+     * Gets the reference proteoforms that the input matches, from the cache or matching it if it is not there.
+     *
+     * @return The matched reference proteoforms, in the order of the mapping
+     */
+    public List<Proteoform> getMatches(Proteoform input, MatchType matchType, Long margin) {
+        ProteoformMatchTable table = matchAll(Collections.singletonList(input), matchType, margin, null);
+        List<Proteoform> references = new ArrayList<>();
+        for (int match = table.start(0); match < table.end(0); match++) {
+            references.add(table.getReference(match));
+        }
+        return references;
+    }
+
+    /**
+     * Matches the inputs like {@link ProteoformMatching#matchAll(List, ProteoformIndex, MatchType, Long, ForkJoinPool)},
+     * taking the matches of the inputs in the cache from it and matching the rest together.
+     */
+    public ProteoformMatchTable matchAll(List<Proteoform> inputs, MatchType matchType, Long margin, ForkJoinPool pool) {
+        Proteoform[][] found = new Proteoform[inputs.size()][];
+        Map<Key, List<Integer>> missed = new HashMap<>();
+        List<Proteoform> misses = new ArrayList<>();
+        List<Key> missKeys = new ArrayList<>();
+        for (int input = 0; input < inputs.size(); input++) {
+            Key key = new Key(index.pack(inputs.get(input)), matchType, margin);
+            found[input] = matches.getIfPresent(key);
+            if (found[input] == null) {
+                List<Integer> positions = missed.get(key);
+                if (positions == null) {
+                    positions = new ArrayList<>();
+                    missed.put(key, positions);
+                    misses.add(inputs.get(input));
+                    missKeys.add(key);
+                }
+                positions.add(input);
+            }
+        }
+
+        if (!misses.isEmpty()) {
+            ProteoformMatchTable table = ProteoformMatching.matchAll(misses, index, matchType, margin, pool);
+            for (int miss = 0; miss < table.size(); miss++) {
+                Proteoform[] references = new Proteoform[table.end(miss) - table.start(miss)];
+                for (int match = table.start(miss); match < table.end(miss); match++) {
+                    references[match - table.start(miss)] = table.getReference(match);
+                }
+                matches.put(missKeys.get(miss), references);
+                for (int input : missed.get(missKeys.get(miss))) {
+                    found[input] = references;
+                }
+            }
+        }
+        return ProteoformMatchTable.of(inputs.toArray(new Proteoform[0]), found, null);
+    }
+
+    /**
+     * @return The hits, misses and evictions of the cache since it was created
+     */
+    public CacheStats getStats() {
+        return matches.stats();
+    }
+
+    /**
+     * @return Approximate number of entries in the cache
+     */
+    public long size() {
+        return matches.size();
+    }
+
+    /**
+     * Removes all the entries, keeping the counts of {@link #getStats()}.
+     */
+    public void invalidateAll() {
+        matches.invalidateAll();
+    }
+}
@@ -0,0 +1,318 @@
+package no.uib.pap.methods.matching;
+
+import no.uib.pap.model.MatchType;
+import no.uib.pap.model.Proteoform;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The reference proteoforms matched by each of a list of input proteoforms, made by
+ * {@link ProteoformMatching#matchAll(List, ProteoformIndex, MatchType, Long, java.util.concurrent.ForkJoinPool)}.
+ * <p>
+ * <p>The matches of all the inputs are stored one after the other, in the order of the inputs and, for each input, in
+ * the order of the mapping, and are traversed like the targets of a {@link no.uib.pap.methods.reference.CsrGraph}:</p>
+ * <pre>
+ * for (int match = table.start(input), end = table.end(input); match &lt; end; match++) {
+ *     Proteoform reference = table.getReference(match);
+ * }
+ * </pre>
+ */
+public final class ProteoformMatchTable {
+
+    /**
+     * Number of inputs above which the accession groups are split between fork/join tasks.
+     */
+    static final int GRAIN = 256;
+
+    private final Proteoform[] inputs;
+    private final int[] offsets;
+    private final Proteoform[] references;
+    private final long[] margins;
+
+    private ProteoformMatchTable(Proteoform[] inputs, int[] offsets, Proteoform[] references, long[] margins) {
+        this.inputs = inputs;
+        this.offsets = offsets;
+        this.references = references;
+        this.margins = margins;
+    }
+
+    static ProteoformMatchTable match(List<Proteoform> inputs, ProteoformIndex index, MatchType matchType, Long margin, ForkJoinPool pool) {
+        return match(inputs, index, new MatchType[]{matchType}, new Long[]{margin}, false, pool)[0];
+    }
+
+    static ProteoformMatchTable sweep(List<Proteoform> inputs, ProteoformIndex index, MatchType matchType, long maxMargin, ForkJoinPool pool) {
+        return match(inputs, index, new MatchType[]{matchType}, new Long[]{maxMargin}, true, pool)[0];
+    }
+
+    static ProteoformMatchTable[] match(List<Proteoform> inputs, ProteoformIndex index, MatchType[] matchTypes, Long[] margins, ForkJoinPool pool) {
+        return match(inputs, index, matchTypes, margins, false, pool);
+    }
+
+    /**
+     * Matches the inputs with each match type and margin, finding the candidates of each input once for all of them.
+     *
+     * @param sweep True to keep the smallest margin of each match
+     * @return The table of each match type and margin, at position type * margins.length + margin
+     */
+    private static ProteoformMatchTable[] match(List<Proteoform> inputs, ProteoformIndex index, MatchType[] matchTypes, Long[] margins, boolean sweep, ForkJoinPool pool) {
+
+        // Groups the inputs by accession and isoform, in the order of the first input of each group
+        Map<String, List<Integer>> accessions = new LinkedHashMap<>();
+        for (int input = 0; input < inputs.size(); input++) {
+            accessions.computeIfAbsent(inputs.get(input).getUniProtAccWithIsoform(), key -> new ArrayList<>()).add(input);
+        }
+        int[] order = new int[inputs.size()];
+        int[] groupStarts = new int[accessions.size() + 1];
+        int group = 0;
+        int position = 0;
+        for (List<Integer> accession : accessions.values()) {
+            for (int input : accession) {
+                order[position++] = input;
+            }
+            groupStarts[++group] = position;
+        }
+
+        Proteoform[][][] matches = new Proteoform[matchTypes.length * margins.length][inputs.size()][];
+        long[][][] minimalMargins = sweep ? new long[matches.length][inputs.size()][] : null;
+        MatchTask task = new MatchTask(inputs, index, matchTypes, margins, order, groupStarts, matches, minimalMargins, 0, accessions.size());
+        if (pool == null) {
+            task.compute();
+        } else {
+            pool.invoke(task);
+        }
+
+        Proteoform[] inputArray = inputs.toArray(new Proteoform[0]);
+        ProteoformMatchTable[] tables = new ProteoformMatchTable[matches.length];
+        for (int mode = 0; mode < matches.length; mode++) {
+            tables[mode] = of(inputArray, matches[mode], sweep ? minimalMargins[mode] : null);
+        }
+        return tables;
+    }
+
+    /**
+     * Stores the matches of each input one after the other.
+     *
+     * @param minimalMargins The smallest margin of each match, or null if the table is not a sweep
+     */
+    static ProteoformMatchTable of(Proteoform[] inputs, Proteoform[][] matches, long[][] minimalMargins) {
+        int[] offsets = new int[inputs.length + 1];
+        for (int input = 0; input < inputs.length; input++) {
+            offsets[input + 1] = offsets[input] + matches[input].length;
+        }
+        Proteoform[] references = new Proteoform[offsets[inputs.length]];
+        long[] margins = minimalMargins != null ? new long[references.length] : null;
+        for (int input = 0; input < inputs.length; input++) {
+            System.arraycopy(matches[input], 0, references, offsets[input], matches[input].length);
+            if (minimalMargins != null) {
+                System.arraycopy(minimalMargins[input], 0, margins, offsets[input], matches[input].length);
+            }
+        }
+        return new ProteoformMatchTable(inputs, offsets, references, margins);
+    }
+
+    /*
+     * Matches the inputs of a range of accession groups, splitting it while it has more than one group and more than
+     * GRAIN inputs. Each input writes only its own slots of the matches.
+     */
+    private static class MatchTask extends RecursiveAction {
+
+        private final List<Proteoform> inputs;
+        private final ProteoformIndex index;
+        private final MatchType[] matchTypes;
+        private final ProteoformMatching[] matchers;
+        private final Long[] margins;
+        private final int[] order;
+        private final int[] groupStarts;
+        private final Proteoform[][][] matches;
+        private final long[][][] minimalMargins;
+        private final int from;
+        private final int to;
+
+        MatchTask(List<Proteoform> inputs, ProteoformIndex index, MatchType[] matchTypes, Long[] margins,
+                  int[] order, int[] groupStarts, Proteoform[][][] matches, long[][][] minimalMargins, int from, int to) {
+            this.inputs = inputs;
+            this.index = index;
+            this.matchTypes = matchTypes;
+            this.matchers = new ProteoformMatching[matchTypes.length];
+            for (int type = 0; type < matchTypes.length; type++) {
+                matchers[type] = ProteoformMatching.getInstance(matchTypes[type]);
+            }
+            this.margins = margins;
+            this.order = order;
+            this.groupStarts = groupStarts;
+            this.matches = matches;
+            this.minimalMargins = minimalMargins;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1 && groupStarts[to] - groupStarts[from] > GRAIN && getPool() != null) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new MatchTask(inputs, index, matchTypes, margins, order, groupStarts, matches, minimalMargins, from, middle),
+                        new MatchTask(inputs, index, matchTypes, margins, order, groupStarts, matches, minimalMargins, middle, to));
+                return;
+            }
+
+            // The candidates of the largest margin are found once for all the margins, unless one of them is not valid
+            Long largest = 0L;
+            for (Long margin : margins) {
+                largest = margin == null || margin < 0 || largest == null ? null : Math.max(largest, margin);
+            }
+
+            List<List<Proteoform>> found = new ArrayList<>();
+            List<List<Long>> foundMargins = new ArrayList<>();
+            for (int mode = 0; mode < matches.length; mode++) {
+                found.add(new ArrayList<>());
+                foundMargins.add(new ArrayList<>());
+            }
+            for (int group = from; group < to; group++) {
+                ProteoformIndex.Group references = null;
+                for (int position = groupStarts[group]; position < groupStarts[group + 1]; position++) {
+                    PackedProteoform input = index.pack(inputs.get(order[position]));
+                    if (references == null && input.isPacked()) {
+                        references = index.getGroup(input.getAccession());
+                    }
+                    for (int mode = 0; mode < matches.length; mode++) {
+                        found.get(mode).clear();
+                        foundMargins.get(mode).clear();
+                    }
+                    if (references != null && input.isPacked() && largest != null) {
+                        PackedProteoform[] proteoforms = references.getProteoforms();
+                        int[] candidateTypes = index.getCandidateTypes(references, input, matchTypes, largest);
+                        for (int proteoform = 0; proteoform < proteoforms.length; proteoform++) {
+                            for (int type = 0; type < matchTypes.length; type++) {
+                                if ((candidateTypes[proteoform] & 1 << type) == 0) {
+                                    continue;
+                                }
+                                for (int margin = 0; margin < margins.length; margin++) {
+                                    int mode = type * margins.length + margin;
+                                    check(type, margin, input, proteoforms[proteoform], found.get(mode), foundMargins.get(mode));
+                                }
+                            }
+                        }
+                    } else {
+                        for (int type = 0; type < matchTypes.length; type++) {
+                            for (int margin = 0; margin < margins.length; margin++) {
+                                int mode = type * margins.length + margin;
+                                for (PackedProteoform reference : index.getCandidates(references, input, matchTypes[type], margins[margin])) {
+                                    check(type, margin, input, reference, found.get(mode), foundMargins.get(mode));
+                                }
+                            }
+                        }
+                    }
+                    for (int mode = 0; mode < matches.length; mode++) {
+                        matches[mode][order[position]] = found.get(mode).toArray(new Proteoform[0]);
+                        if (minimalMargins != null) {
+                            minimalMargins[mode][order[position]] = foundMargins.get(mode).stream().mapToLong(Long::longValue).toArray();
+                        }
+                    }
+                }
+            }
+        }
+
+        private void check(int type, int margin, PackedProteoform input, PackedProteoform reference, List<Proteoform> found, List<Long> foundMargins) {
+            if (minimalMargins == null) {
+                if (matchers[type].matches(input, reference, margins[margin])) {
+                    found.add(reference.getProteoform());
+                }
+                return;
+            }
+            long minimalMargin = matchers[type].getMinimalMargin(input, reference, margins[margin]);
+            if (minimalMargin >= 0) {
+                found.add(reference.getProteoform());
+                foundMargins.add(minimalMargin);
+            }
+        }
+    }
+
+    /**
+     * @return Number of inputs
+     */
+    public int size() {
+        return inputs.length;
+    }
+
+    public Proteoform getInput(int input) {
+        return inputs[input];
+    }
+
+    /**
+     * @return Position of the first match of the input
+     */
+    public int start(int input) {
+        return offsets[input];
+    }
+
+    /**
+     * @return Position after the last match of the input
+     */
+    public int end(int input) {
+        return offsets[input + 1];
+    }
+
+    public Proteoform getReference(int match) {
+        return references[match];
+    }
+
+    /**
+     * @return Number of input and reference pairs that match
+     */
+    public int getMatchCount() {
+        return references.length;
+    }
+
+    /**
+     * @return True if the table was made by
+     * {@link ProteoformMatching#sweep(List, ProteoformIndex, MatchType, long, ForkJoinPool)} and has the smallest
+     * margin of each match
+     */
+    public boolean isSweep() {
+        return margins != null;
+    }
+
+    /**
+     * @return The smallest margin with which the input and reference of the match match, in a sweep
+     */
+    public long getMargin(int match) {
+        if (margins == null) {
+            throw new IllegalStateException("The table is not a sweep.");
+        }
+        return margins[match];
+    }
+
+    /**
+     * Selects the matches of a sweep that match with a margin, in the same order.
+     *
+     * @return The table of the margin, which is also a sweep
+     */
+    public ProteoformMatchTable atMargin(long margin) {
+        if (margins == null) {
+            throw new IllegalStateException("The table is not a sweep.");
+        }
+        int[] marginOffsets = new int[offsets.length];
+        int count = 0;
+        for (long matchMargin : margins) {
+            count += matchMargin <= margin ? 1 : 0;
+        }
+        Proteoform[] marginReferences = new Proteoform[count];
+        long[] marginMargins = new long[count];
+        int next = 0;
+        for (int input = 0; input < inputs.length; input++) {
+            for (int match = offsets[input]; match < offsets[input + 1]; match++) {
+                if (margins[match] <= margin) {
+                    marginReferences[next] = references[match];
+                    marginMargins[next++] = margins[match];
+                }
+            }
+            marginOffsets[input + 1] = next;
+        }
+        return new ProteoformMatchTable(inputs, marginOffsets, marginReferences, marginMargins);
+    }
+}
@@ -1,12 +1,145 @@
 package no.uib.pap.methods.matching;
 
+import com.google.common.collect.ImmutableTable;
 import no.uib.pap.model.MatchType;
 import no.uib.pap.model.Proteoform;
 
+import java.util.EnumMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Strategy to decide if an input proteoform matches a reference proteoform. The matchers are immutable, so the
+ * instances of {@link #getInstance(MatchType)} are shared by all the searches, including concurrent searches with
+ * different match types.
+ */
 public abstract class ProteoformMatching {
 
 	public abstract Boolean matches(Proteoform iP, Proteoform rP, Long margin);
 
+	/**
+	 * Matches two encoded proteoforms, with the same result as {@link #matches(Proteoform, Proteoform, Long)} on the
+	 * proteoforms they encode. The arrays are compared without creating objects, unless one of the proteoforms is not
+	 * packed or the margin is null or negative, which go through the proteoforms.
+	 */
+	public boolean matches(PackedProteoform iP, PackedProteoform rP, Long margin) {
+		if (!iP.isPacked() || !rP.isPacked() || margin == null || margin < 0) {
+			return matches(iP.getProteoform(), rP.getProteoform(), margin);
+		}
+		return matchesPacked(iP, rP, margin);
+	}
+
+	/**
+	 * Finds the smallest margin with which two proteoforms match, up to a largest margin. A matcher that matches with
+	 * a margin also matches with any larger one, so the smallest margin is found by halving the range of margins.
+	 *
+	 * @param maxMargin Largest margin, at least 0
+	 * @return The smallest margin, or -1 if the proteoforms do not match with the largest margin
+	 */
+	public long getMinimalMargin(PackedProteoform iP, PackedProteoform rP, long maxMargin) {
+		if (!matches(iP, rP, maxMargin)) {
+			return -1;
+		}
+		long low = 0;
+		long high = maxMargin;
+		while (low < high) {
+			long middle = (low + high) >>> 1;
+			if (matches(iP, rP, middle)) {
+				high = middle;
+			} else {
+				low = middle + 1;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Matches two packed proteoforms with a margin of at least 0.
+	 */
+	protected abstract boolean matchesPacked(PackedProteoform iP, PackedProteoform rP, long margin);
+
+	/**
+	 * Checks the accession, including the isoform, and the start and end coordinates of two packed proteoforms.
+	 */
+	static boolean matchesSpan(PackedProteoform iP, PackedProteoform rP, long margin) {
+		return iP.getAccession().equals(rP.getAccession())
+				&& matchesCoordinate(iP.getStart(), rP.getStart(), margin)
+				&& matchesCoordinate(iP.getEnd(), rP.getEnd(), margin);
+	}
+
+	static boolean matchesCoordinate(long iC, long rC, long margin) {
+		return iC == PackedProteoform.UNKNOWN || rC == PackedProteoform.UNKNOWN || Math.abs(iC - rC) <= margin;
+	}
+
+	/**
+	 * Looks for each PTM of the required proteoform in the available one: a PTM of the same type, when the types are
+	 * used, and a coordinate within the margin, where an unknown coordinate matches any other.
+	 * <p>
+	 * <p>The PTMs of a proteoform are sorted by type and coordinate, so they are an index of its coordinates by type,
+	 * and the window of coordinates within the margin of a required PTM is found by binary search. The required PTMs
+	 * are sorted too, so each search starts where the one of the previous PTM ended and gallops forward: a PTM takes
+	 * O(log n) steps, and all of them together no more than one pass over the available PTMs.</p>
+	 *
+	 * @param all True to check that all the required PTMs are found, false to check that at least one is
+	 */
+	static boolean matchesPtms(PackedProteoform required, PackedProteoform available, long margin, boolean useTypes, boolean all) {
+		return useTypes
+				? matchesTypedPtms(required.getPtms(), available.getPtms(), margin, all)
+				: matchesUntypedPtms(required, available, margin, all);
+	}
+
+	private static boolean matchesTypedPtms(long[] required, long[] available, long margin, boolean all) {
+		int group = 0;
+		int next = 0;
+		int groupType = -1;
+		for (long ptm : required) {
+			int type = PackedProteoform.type(ptm);
+			if (type != groupType) {
+				group = PackedProteoform.lowerBound(available, group, PackedProteoform.key(type, PackedProteoform.UNKNOWN));
+				groupType = type;
+				next = group;
+			}
+			boolean found;
+			if (group == available.length || PackedProteoform.type(available[group]) != type) {
+				found = false;
+			} else if (PackedProteoform.isUnknown(available[group]) || PackedProteoform.isUnknown(ptm)) {
+				// The unknown coordinates are the first of their type
+				found = true;
+			} else {
+				long coordinate = PackedProteoform.coordinate(ptm);
+				next = PackedProteoform.lowerBound(available, next, PackedProteoform.key(type, Math.max(0, coordinate - margin)));
+				found = next < available.length && PackedProteoform.type(available[next]) == type
+						&& PackedProteoform.coordinate(available[next]) - coordinate <= margin;
+			}
+			if (found != all) {
+				return found;
+			}
+		}
+		return all;
+	}
+
+	private static boolean matchesUntypedPtms(PackedProteoform required, PackedProteoform available, long margin, boolean all) {
+		if (available.getPtms().length == 0) {
+			return all && required.getPtms().length == 0;
+		}
+		if (available.getUnknownCoordinates() > 0 || required.getUnknownCoordinates() > 0 && !all) {
+			return all || required.getPtms().length > 0;
+		}
+		long[] availableCoordinates = available.getCoordinates();
+		int next = 0;
+		for (long coordinate : required.getCoordinates()) {
+			next = PackedProteoform.lowerBound(availableCoordinates, next, coordinate - margin);
+			boolean found = next < availableCoordinates.length && availableCoordinates[next] - coordinate <= margin;
+			if (found != all) {
+				return found;
+			}
+		}
+		return all;
+	}
+
 	public boolean matches(Long iC, Long rC, Long margin) {
 		if (iC != null) {
 			if (iC == -1L)
@@ -26,7 +159,76 @@ public abstract class ProteoformMatching {
 		return true;
 	}
 
+	/*
+	 * Holds the shared matchers, created when the first one is requested, after the subclasses can be initialized.
+	 */
+	private static final class Instances {
+
+		private static final Map<MatchType, ProteoformMatching> matchers = new EnumMap<>(MatchType.class);
+
+		static {
+			for (MatchType matchType : MatchType.values()) {
+				matchers.put(matchType, create(matchType));
+			}
+		}
+	}
+
+	/**
+	 * @return The shared matcher of the match type
+	 */
 	public static ProteoformMatching getInstance(MatchType matchType){
+		return Instances.matchers.get(matchType);
+	}
+
+	/**
+	 * Matches all the inputs against the reference proteoforms of the index, looking up the reference proteoforms of
+	 * each accession and isoform once for all its inputs.
+	 *
+	 * @param pool Pool to match the accessions in parallel, or null to match them in the calling thread
+	 * @return The reference proteoforms matched by each input, in the order of the inputs
+	 */
+	public static ProteoformMatchTable matchAll(List<Proteoform> inputs, ProteoformIndex index, MatchType matchType, Long margin, ForkJoinPool pool){
+		return ProteoformMatchTable.match(inputs, index, matchType, margin, pool);
+	}
+
+	/**
+	 * Matches all the inputs against the reference proteoforms of the index with every margin up to a largest one in
+	 * one pass: each match of the table has the smallest margin with which it matches, and
+	 * {@link ProteoformMatchTable#atMargin(long)} gives the matches of any margin in the range.
+	 *
+	 * @param maxMargin Largest margin, at least 0
+	 * @param pool      Pool to match the accessions in parallel, or null to match them in the calling thread
+	 */
+	public static ProteoformMatchTable sweep(List<Proteoform> inputs, ProteoformIndex index, MatchType matchType, long maxMargin, ForkJoinPool pool){
+		if (maxMargin < 0) {
+			throw new IllegalArgumentException("The margin must be at least 0.");
+		}
+		return ProteoformMatchTable.sweep(inputs, index, matchType, maxMargin, pool);
+	}
+
+	/**
+	 * Matches all the inputs against the reference proteoforms of the index with several match types and margins in
+	 * one pass: the candidates of each input are found once, and each candidate is checked with all the match types
+	 * and margins it can match.
+	 *
+	 * @param margins Margins of at least 0
+	 * @param pool    Pool to match the accessions in parallel, or null to match them in the calling thread
+	 * @return The table of each match type and margin, in the order of the arguments
+	 */
+	public static ImmutableTable<MatchType, Long, ProteoformMatchTable> matchAll(List<Proteoform> inputs, ProteoformIndex index, Set<MatchType> matchTypes, List<Long> margins, ForkJoinPool pool){
+		MatchType[] typeArray = matchTypes.toArray(new MatchType[0]);
+		Long[] marginArray = new LinkedHashSet<>(margins).toArray(new Long[0]);
+		ProteoformMatchTable[] tables = ProteoformMatchTable.match(inputs, index, typeArray, marginArray, pool);
+		ImmutableTable.Builder<MatchType, Long, ProteoformMatchTable> builder = ImmutableTable.builder();
+		for (int type = 0; type < typeArray.length; type++) {
+			for (int margin = 0; margin < marginArray.length; margin++) {
+				builder.put(typeArray[type], marginArray[margin], tables[type * marginArray.length + margin]);
+			}
+		}
+		return builder.build();
+	}
+
+	private static ProteoformMatching create(MatchType matchType){
 		ProteoformMatching matcher = null;
 		switch (matchType) {
 			case SUPERSET:
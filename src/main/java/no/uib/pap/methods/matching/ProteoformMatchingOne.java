@@ -4,10 +4,13 @@ import no.uib.pap.model.Proteoform;
 import org.apache.commons.lang3.tuple.MutablePair;
 import org.apache.commons.lang3.tuple.Pair;
 
-public class ProteoformMatchingOne extends ProteoformMatching {
+public final class ProteoformMatchingOne extends ProteoformMatching {
 
-    private static Boolean useTypes;
+    private final boolean useTypes;
 
+    /**
+     * @param useTypes True if the PTMs match only PTMs of the same type
+     */
     public ProteoformMatchingOne(Boolean useTypes) {
         this.useTypes = useTypes;
     }
@@ -59,4 +62,9 @@ public class ProteoformMatchingOne extends ProteoformMatching {
 
         return false;
     }
+
+    @Override
+    protected boolean matchesPacked(PackedProteoform iP, PackedProteoform rP, long margin) {
+        return matchesSpan(iP, rP, margin) && (rP.getPtms().length == 0 || matchesPtms(rP, iP, margin, useTypes, false));
+    }
 }
@@ -5,7 +5,7 @@ import org.apache.commons.lang3.tuple.MutablePair;
 
 import java.util.Map;
 
-public class ProteoformMatchingStrict extends ProteoformMatching {
+public final class ProteoformMatchingStrict extends ProteoformMatching {
 
     @Override
     public Boolean matches(Proteoform iP, Proteoform rP, Long margin) {
@@ -44,4 +44,29 @@ public class ProteoformMatchingStrict extends ProteoformMatching {
         return true;
     }
 
+    @Override
+    protected boolean matchesPacked(PackedProteoform iP, PackedProteoform rP, long margin) {
+        if (!iP.getAccession().equals(rP.getAccession()) || iP.getPtms().length != rP.getPtms().length) {
+            return false;
+        }
+
+        // Each PTM of one should be exactly in the other, so both have the same distinct PTMs
+        long[] iPtms = iP.getPtms();
+        long[] rPtms = rP.getPtms();
+        int i = 0;
+        int r = 0;
+        while (i < iPtms.length && r < rPtms.length) {
+            if (iPtms[i] != rPtms[r]) {
+                return false;
+            }
+            long ptm = iPtms[i];
+            while (i < iPtms.length && iPtms[i] == ptm) {
+                i++;
+            }
+            while (r < rPtms.length && rPtms[r] == ptm) {
+                r++;
+            }
+        }
+        return i == iPtms.length && r == rPtms.length;
+    }
 }
@@ -7,31 +7,17 @@ import org.apache.commons.lang3.tuple.Pair;
 /**
  * Matching type where the input proteoforms are matched with proteoforms, when all the ptms of the input proteoform are in the reference proteoforms.
  */
-public class ProteoformMatchingSubset extends ProteoformMatching {
+public final class ProteoformMatchingSubset extends ProteoformMatching {
 
-    private static Boolean useTypes;
+    private final boolean useTypes;
 
+    /**
+     * @param useTypes True if the PTMs match only PTMs of the same type
+     */
     public ProteoformMatchingSubset(Boolean useTypes) {
         this.useTypes = useTypes;
     }
 
-    public boolean matches(Long iC, Long rC, Long margin) {
-        if (iC != null) {
-            if (iC == -1L) iC = null;
-        }
-        if (rC != null) {
-            if (rC == -1L) rC = null;
-        }
-        if (iC != null && rC != null) {
-            if (iC != rC) {
-                if (Math.abs(iC - rC) > margin) {
-                    return false;
-                }
-            }
-        }
-        return true;
-    }
-
     @Override
     public Boolean matches(Proteoform iP, Proteoform rP, Long margin) {
 
@@ -80,4 +66,9 @@ public class ProteoformMatchingSubset extends ProteoformMatching {
         }
         return true;
     }
+
+    @Override
+    protected boolean matchesPacked(PackedProteoform iP, PackedProteoform rP, long margin) {
+        return matchesSpan(iP, rP, margin) && matchesPtms(iP, rP, margin, useTypes, true);
+    }
 }
@@ -0,0 +1,124 @@
+package no.uib.pap.methods.matching;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.stream.IntStream;
+
+/**
+ * Inverted index of the PTMs of the reference proteoforms of one accession and isoform, from the modification type and
+ * coordinate bucket of each PTM to the proteoforms that have it.
+ * <p>
+ * <p>The keys are sorted, with the type in the high 32 bits and the bucket in the low ones, and the postings of all
+ * the keys are stored one after the other like in a {@link no.uib.pap.methods.reference.CsrGraph}. Bucket 0 has the
+ * PTMs with an unknown coordinate, and bucket b > 0 the coordinates from (b - 1) * {@link #BUCKET_WIDTH} to
+ * b * {@link #BUCKET_WIDTH} - 1. The buckets of a type are contiguous, so a coordinate window is a range of keys.
+ * Without types, all the PTMs are indexed under type 0. The proteoforms that are not packed have no postings.</p>
+ */
+final class PtmPostings {
+
+    static final int BUCKET_WIDTH = 16;
+
+    interface Visitor {
+        void visit(int posting, int proteoform);
+    }
+
+    private final boolean useTypes;
+    private final long[] keys;
+    private final int[] starts;
+    private final int[] proteoforms;
+    private final long[] ptms;
+
+    PtmPostings(PackedProteoform[] group, boolean useTypes) {
+        this.useTypes = useTypes;
+        int size = 0;
+        for (PackedProteoform proteoform : group) {
+            size += proteoform.isPacked() ? proteoform.getPtms().length : 0;
+        }
+        int[] entryProteoforms = new int[size];
+        long[] entryPtms = new long[size];
+        int entry = 0;
+        for (int proteoform = 0; proteoform < group.length; proteoform++) {
+            if (!group[proteoform].isPacked()) {
+                continue;
+            }
+            for (long ptm : group[proteoform].getPtms()) {
+                entryProteoforms[entry] = proteoform;
+                entryPtms[entry++] = ptm;
+            }
+        }
+
+        // Sorts the entries by key, keeping the order of the proteoforms within each key
+        int[] order = IntStream.range(0, size).boxed()
+                .sorted(Comparator.comparingLong(e -> key(entryPtms[e])))
+                .mapToInt(Integer::intValue).toArray();
+        this.proteoforms = new int[size];
+        this.ptms = new long[size];
+        long[] entryKeys = new long[size];
+        int distinct = 0;
+        for (int i = 0; i < size; i++) {
+            proteoforms[i] = entryProteoforms[order[i]];
+            ptms[i] = entryPtms[order[i]];
+            long key = key(ptms[i]);
+            if (distinct == 0 || entryKeys[distinct - 1] != key) {
+                entryKeys[distinct++] = key;
+            }
+        }
+        this.keys = Arrays.copyOf(entryKeys, distinct);
+        this.starts = new int[distinct + 1];
+        for (int i = 0, k = 0; i < size; i++) {
+            if (key(ptms[i]) != keys[k]) {
+                starts[++k] = i;
+            }
+        }
+        starts[distinct] = size;
+    }
+
+    private int type(long ptm) {
+        return useTypes ? PackedProteoform.type(ptm) : 0;
+    }
+
+    private long key(long ptm) {
+        long bucket = PackedProteoform.isUnknown(ptm) ? 0 : 1 + PackedProteoform.coordinate(ptm) / BUCKET_WIDTH;
+        return (long) type(ptm) << 32 | bucket;
+    }
+
+    private int lowerBound(long key) {
+        return PackedProteoform.lowerBound(keys, 0, key);
+    }
+
+    /**
+     * Visits the postings of the reference PTMs that the PTM can match: the ones of the same type, when the types are
+     * used, with an unknown coordinate or one within the margin, or all the ones of the type if the coordinate of the
+     * PTM is unknown. Only the buckets of the window of the PTM are read.
+     */
+    void visit(long ptm, long margin, Visitor visitor) {
+        long type = (long) type(ptm) << 32;
+        if (PackedProteoform.isUnknown(ptm)) {
+            for (int posting = starts[lowerBound(type)], end = starts[lowerBound(type + (1L << 32))]; posting < end; posting++) {
+                visitor.visit(posting, proteoforms[posting]);
+            }
+            return;
+        }
+        int unknown = lowerBound(type);
+        if (unknown < keys.length && keys[unknown] == type) {
+            for (int posting = starts[unknown], end = starts[unknown + 1]; posting < end; posting++) {
+                visitor.visit(posting, proteoforms[posting]);
+            }
+        }
+        long coordinate = PackedProteoform.coordinate(ptm);
+        long first = Math.max(0, coordinate - margin);
+        long last = Math.min(coordinate + Math.min(margin, Integer.MAX_VALUE), 0xFFFFFFFFL);
+        for (int posting = starts[lowerBound(type | 1 + first / BUCKET_WIDTH)], end = starts[lowerBound(type | 2 + last / BUCKET_WIDTH)]; posting < end; posting++) {
+            if (Math.abs(PackedProteoform.coordinate(ptms[posting]) - coordinate) <= margin) {
+                visitor.visit(posting, proteoforms[posting]);
+            }
+        }
+    }
+
+    /**
+     * @return Number of postings, one for each PTM of each proteoform
+     */
+    int size() {
+        return ptms.length;
+    }
+}
@@ -0,0 +1,43 @@
+package no.uib.pap.methods.matching;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Identifiers of the PTM types of the {@link PackedProteoform}s of a {@link ProteoformIndex}.
+ * <p>
+ * <p>The reference proteoforms add their types when the index is created, and the input proteoforms are packed with
+ * {@link #get(String)}, which gives {@link #UNKNOWN} to all the types that no reference has. Those PTMs can not be hit
+ * by any reference PTM, whatever their type, so they do not need their own identifiers, and the identifiers are
+ * released with the index instead of growing with every type of the inputs.</p>
+ */
+final class PtmTypes {
+
+    /**
+     * Identifier of the types that are not in the reference proteoforms.
+     */
+    static final int UNKNOWN = 0;
+
+    private final Map<String, Integer> ids = new HashMap<>();
+
+    /**
+     * @return The identifier of the type, added if it is new. Not to be called once the index is shared.
+     */
+    int add(String type) {
+        return ids.computeIfAbsent(type, key -> ids.size() + 1);
+    }
+
+    /**
+     * @return The identifier of the type, or {@link #UNKNOWN} if it was not added
+     */
+    int get(String type) {
+        return ids.getOrDefault(type, UNKNOWN);
+    }
+
+    /**
+     * @return Number of types added
+     */
+    int size() {
+        return ids.size();
+    }
+}
@@ -0,0 +1,290 @@
+package no.uib.pap.methods.reference;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.cache.RemovalListener;
+import no.uib.pap.model.Mapping;
+
+import java.lang.ref.WeakReference;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The {@link ChromosomeIndex} and the {@link IntervalIndex} of each chromosome of a {@link Mapping}.
+ * <p>
+ * <p>The indices of a chromosome are created from the table of the chromosome the first time they are requested, so
+ * a search only pays for the chromosomes in its input. The indices are kept in a cache that evicts the least recently
+ * used chromosomes, with their intervals and filters, when their total size goes over the memory budget, and loads
+ * them again if they are requested later. It is safe to use from several threads.</p>
+ * <p>
+ * <p>The searches use the index of {@link #of(Mapping)}, which reads the tables from the source and with the budget set
+ * with {@link #setDefaults(ChromosomeTableSource, long)}, by default from the mapping without a budget.</p>
+ */
+public final class ChrBpIndex {
+
+    /**
+     * Chromosomes with base pair positions in the mapping.
+     */
+    public static final int CHROMOSOMES = 22;
+
+    private static final Map<Mapping, ChrBpIndex> indices = Collections.synchronizedMap(new WeakHashMap<>());
+
+    private static ChromosomeTableSource<Long> defaultSource;
+    private static long defaultMaxBytes = Long.MAX_VALUE;
+
+    private final LoadingCache<Integer, Chromosome> chromosomes;
+    private final double falsePositiveRate;
+    // Counts of the filters of the evicted chromosomes
+    private final AtomicLong evictedFilterChecks = new AtomicLong();
+    private final AtomicLong evictedFilterSkips = new AtomicLong();
+
+    /*
+     * The indices of a chromosome. The intervals and the filter are created when they are first requested, and the
+     * chromosome is then weighed again with them.
+     */
+    private static final class Chromosome {
+
+        private final ChromosomeIndex index;
+        private volatile IntervalIndex intervals;
+        private volatile KeyFilter filter;
+
+        Chromosome(ChromosomeIndex index) {
+            this.index = index;
+        }
+
+        long getSizeInBytes() {
+            IntervalIndex intervals = this.intervals;
+            KeyFilter filter = this.filter;
+            return index.getSizeInBytes() + (intervals == null ? 0 : intervals.getSizeInBytes()) + (filter == null ? 0 : filter.getSizeInBytes());
+        }
+    }
+
+    ChrBpIndex(ChromosomeTableSource<Long> source, long maxBytes) {
+        this(source, maxBytes, KeyFilter.DEFAULT_FALSE_POSITIVE_RATE);
+    }
+
+    ChrBpIndex(ChromosomeTableSource<Long> source, long maxBytes, double falsePositiveRate) {
+        this(CacheLoader.from((Integer chr) -> ChromosomeIndex.of(source.load(chr))), maxBytes, falsePositiveRate);
+    }
+
+    private ChrBpIndex(CacheLoader<Integer, ChromosomeIndex> loader, long maxBytes, double falsePositiveRate) {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("The memory budget must not be negative.");
+        }
+        if (!(falsePositiveRate > 0 && falsePositiveRate <= 1)) {
+            throw new IllegalArgumentException("The false positive rate must be greater than 0 and at most 1.");
+        }
+        this.falsePositiveRate = falsePositiveRate;
+        RemovalListener<Integer, Chromosome> evictions = notification -> {
+            KeyFilter filter = notification.getValue() == null ? null : notification.getValue().filter;
+            if (notification.wasEvicted() && filter != null) {
+                evictedFilterChecks.addAndGet(filter.getChecks());
+                evictedFilterSkips.addAndGet(filter.getSkips());
+            }
+        };
+        // A single segment, so the budget is shared by all the chromosomes instead of split in parts
+        this.chromosomes = CacheBuilder.newBuilder()
+                .concurrencyLevel(1)
+                .maximumWeight(maxBytes)
+                .weigher((Integer chr, Chromosome chromosome) -> (int) Math.min(Integer.MAX_VALUE, chromosome.getSizeInBytes()))
+                .removalListener(evictions)
+                .build(new CacheLoader<Integer, Chromosome>() {
+                    @Override
+                    public Chromosome load(Integer chr) throws Exception {
+                        return new Chromosome(loader.load(chr));
+                    }
+                });
+    }
+
+    /*
+     * Reads the tables from the mapping. The index is a value of the weak map of indices, so it must not keep the
+     * mapping reachable.
+     */
+    private static ChromosomeTableSource<Long> mappingSource(Mapping mapping) {
+        WeakReference<Mapping> reference = new WeakReference<>(mapping);
+        return chr -> {
+            Mapping source = reference.get();
+            if (source == null) {
+                throw new IllegalStateException("The mapping of the index is no longer in use.");
+            }
+            return source.getChrBpToProteins(chr);
+        };
+    }
+
+    /**
+     * Sets the source and the memory budget of the indices created by {@link #of(Mapping)}, the one used by the
+     * searches. The indices already created keep theirs, so they must be set before the first search of a mapping.
+     *
+     * @param source   Where the tables of the chromosomes are read from, see {@link ChromosomeTableSource#chrBpFiles(String)},
+     *                 or null to read them from the mapping
+     * @param maxBytes Memory budget of the indices of each mapping
+     */
+    public static synchronized void setDefaults(ChromosomeTableSource<Long> source, long maxBytes) {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("The memory budget must not be negative.");
+        }
+        defaultSource = source;
+        defaultMaxBytes = maxBytes;
+    }
+
+    /**
+     * Gets the index of the mapping. The index is created on the first call and reused while the mapping is in use.
+     * A new index reads the tables from the source and with the budget of
+     * {@link #setDefaults(ChromosomeTableSource, long)}.
+     */
+    public static ChrBpIndex of(Mapping mapping) {
+        ChromosomeTableSource<Long> source;
+        long maxBytes;
+        synchronized (ChrBpIndex.class) {
+            source = defaultSource;
+            maxBytes = defaultMaxBytes;
+        }
+        return indices.computeIfAbsent(mapping, key -> new ChrBpIndex(source == null ? mappingSource(key) : source, maxBytes));
+    }
+
+    /**
+     * Gets the index of the mapping. The source and the budget are used only if this call creates the index, so they
+     * must be given before the first search of the mapping.
+     *
+     * @param source   Where the tables of the chromosomes are read from, see {@link ChromosomeTableSource#chrBpFiles(String)}
+     * @param maxBytes Memory budget of the chromosome indices
+     */
+    public static ChrBpIndex of(Mapping mapping, ChromosomeTableSource<Long> source, long maxBytes) {
+        return indices.computeIfAbsent(mapping, key -> new ChrBpIndex(source, maxBytes));
+    }
+
+    /**
+     * Gets the index of the mapping, like {@link #of(Mapping, ChromosomeTableSource, long)}.
+     *
+     * @param falsePositiveRate False positive rate of the filters of the chromosomes, see {@link #getFilter(int)}
+     */
+    public static ChrBpIndex of(Mapping mapping, ChromosomeTableSource<Long> source, long maxBytes, double falsePositiveRate) {
+        return indices.computeIfAbsent(mapping, key -> new ChrBpIndex(source, maxBytes, falsePositiveRate));
+    }
+
+    /**
+     * Gets the index of the mapping. If this call creates the index, the chromosome indices are read from the mapped
+     * snapshot, so they have no memory budget: their pages belong to the file and are shared with other processes.
+     */
+    public static ChrBpIndex of(Mapping mapping, ReferenceSnapshot snapshot) {
+        return indices.computeIfAbsent(mapping, key -> new ChrBpIndex(CacheLoader.from((Integer chr) -> snapshot.getChromosome(chr)), Long.MAX_VALUE,
+                KeyFilter.DEFAULT_FALSE_POSITIVE_RATE));
+    }
+
+    /**
+     * @param chr Number of the chromosome
+     * @return The index of the chromosome, empty if the mapping has no positions for it
+     */
+    public ChromosomeIndex get(int chr) {
+        if (chr < 1 || chr > CHROMOSOMES) {
+            return ChromosomeIndex.EMPTY;
+        }
+        return chromosomes.getUnchecked(chr).index;
+    }
+
+    /*
+     * Puts the chromosome again in the cache so it is weighed with its new intervals or filter, which may evict the
+     * least recently used chromosomes.
+     */
+    private void reweigh(int chr, Chromosome chromosome) {
+        chromosomes.asMap().replace(chr, chromosome, chromosome);
+    }
+
+    /**
+     * @param chr Number of the chromosome
+     * @return The intervals of the proteins of the chromosome, empty if the mapping has no positions for it
+     */
+    public IntervalIndex getIntervals(int chr) {
+        if (chr < 1 || chr > CHROMOSOMES) {
+            return IntervalIndex.EMPTY;
+        }
+        Chromosome chromosome = chromosomes.getUnchecked(chr);
+        IntervalIndex intervals = chromosome.intervals;
+        if (intervals == null) {
+            synchronized (chromosome) {
+                if (chromosome.intervals == null) {
+                    chromosome.intervals = IntervalIndex.of(chromosome.index);
+                    reweigh(chr, chromosome);
+                }
+                intervals = chromosome.intervals;
+            }
+        }
+        return intervals;
+    }
+
+    /**
+     * Gets the filter of the positions of the chromosome, to check before looking up a position. The filter is
+     * created the first time it is requested and evicted with the index of the chromosome.
+     *
+     * @param chr Number of the chromosome
+     * @return The filter of the chromosome, with all the positions of the chromosome
+     */
+    public KeyFilter getFilter(int chr) {
+        if (chr < 1 || chr > CHROMOSOMES) {
+            return KeyFilter.ALL;
+        }
+        Chromosome chromosome = chromosomes.getUnchecked(chr);
+        KeyFilter filter = chromosome.filter;
+        if (filter == null) {
+            synchronized (chromosome) {
+                if (chromosome.filter == null) {
+                    KeyFilter created = KeyFilter.create(chromosome.index.size(), falsePositiveRate);
+                    if (created != KeyFilter.ALL) {
+                        for (int position = 0; position < chromosome.index.size(); position++) {
+                            created.add(chromosome.index.getPosition(position));
+                        }
+                    }
+                    chromosome.filter = created;
+                    reweigh(chr, chromosome);
+                }
+                filter = chromosome.filter;
+            }
+        }
+        return filter;
+    }
+
+    /**
+     * @return The keys checked by the filters of all the chromosomes, including the evicted ones
+     */
+    public long getFilterChecks() {
+        long checks = evictedFilterChecks.get();
+        for (Chromosome chromosome : chromosomes.asMap().values()) {
+            KeyFilter filter = chromosome.filter;
+            checks += filter == null ? 0 : filter.getChecks();
+        }
+        return checks;
+    }
+
+    /**
+     * @return The keys skipped by the filters of all the chromosomes, including the evicted ones
+     */
+    public long getFilterSkips() {
+        long skips = evictedFilterSkips.get();
+        for (Chromosome chromosome : chromosomes.asMap().values()) {
+            KeyFilter filter = chromosome.filter;
+            skips += filter == null ? 0 : filter.getSkips();
+        }
+        return skips;
+    }
+
+    /**
+     * @return True if the index of the chromosome is loaded
+     */
+    public boolean isLoaded(int chr) {
+        return chromosomes.asMap().containsKey(chr);
+    }
+
+    /**
+     * @return Approximate number of bytes used by the loaded chromosome indices, with their intervals and filters
+     */
+    public long getLoadedSizeInBytes() {
+        long size = 0;
+        for (Chromosome chromosome : chromosomes.asMap().values()) {
+            size += chromosome.getSizeInBytes();
+        }
+        return size;
+    }
+}
@@ -0,0 +1,189 @@
+package no.uib.pap.methods.reference;
+
+import com.google.common.collect.Multimap;
+
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Base pair positions of one chromosome and the proteins at each of them.
+ * <p>
+ * <p>The positions are kept sorted in a primitive array and found by binary search. The proteins of all the positions
+ * are stored one after the other, with the offsets array marking where the proteins of each position start, as in a
+ * {@link CsrGraph}:</p>
+ * <pre>
+ * int position = index.find(bp);
+ * if (position != ChromosomeIndex.MISSING) {
+ *     for (int i = index.start(position); i &lt; index.end(position); i++) {
+ *         index.getProtein(i);
+ *     }
+ * }
+ * </pre>
+ * <p>The arrays are kept in buffers, which wrap arrays on the heap for the indices created from a table and point to
+ * the mapped file for the indices of a {@link ReferenceSnapshot}.</p>
+ */
+public final class ChromosomeIndex {
+
+    public static final int MISSING = -1;
+
+    static final ChromosomeIndex EMPTY = new ChromosomeIndex(LongBuffer.wrap(new long[0]), IntBuffer.wrap(new int[1]), IntBuffer.wrap(new int[0]), new String[0]);
+
+    private final LongBuffer positions;
+    private final IntBuffer offsets;
+    private final IntBuffer proteins;
+    private final String[] proteinNames;
+
+    ChromosomeIndex(LongBuffer positions, IntBuffer offsets, IntBuffer proteins, String[] proteinNames) {
+        this.positions = positions;
+        this.offsets = offsets;
+        this.proteins = proteins;
+        this.proteinNames = proteinNames;
+    }
+
+    /**
+     * Creates the index of the positions of a chromosome, keeping the order of the proteins of each position.
+     *
+     * @param chrBpToProteins Proteins at each base pair position of the chromosome
+     */
+    public static ChromosomeIndex of(Multimap<Long, String> chrBpToProteins) {
+        long[] positions = new long[chrBpToProteins.keySet().size()];
+        int p = 0;
+        for (Long bp : chrBpToProteins.keySet()) {
+            positions[p++] = bp;
+        }
+        Arrays.sort(positions);
+
+        Map<String, Integer> proteinIds = new LinkedHashMap<>();
+        int[] offsets = new int[positions.length + 1];
+        int[] proteins = new int[chrBpToProteins.size()];
+        int i = 0;
+        for (p = 0; p < positions.length; p++) {
+            for (String protein : chrBpToProteins.get(positions[p])) {
+                proteins[i++] = proteinIds.computeIfAbsent(protein, key -> proteinIds.size());
+            }
+            offsets[p + 1] = i;
+        }
+        return new ChromosomeIndex(LongBuffer.wrap(positions), IntBuffer.wrap(offsets), IntBuffer.wrap(proteins), proteinIds.keySet().toArray(new String[0]));
+    }
+
+    /*
+     * Same result as Arrays.binarySearch on the positions.
+     */
+    private int binarySearch(long bp) {
+        int low = 0;
+        int high = positions.limit() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long position = positions.get(middle);
+            if (position < bp) {
+                low = middle + 1;
+            } else if (position > bp) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -(low + 1);
+    }
+
+    /**
+     * @return Index of the base pair position, or {@link #MISSING} if there are no proteins at that position
+     */
+    public int find(long bp) {
+        int position = binarySearch(bp);
+        return position < 0 ? MISSING : position;
+    }
+
+    /**
+     * @return Index of the first position at or after the base pair, or {@link #size()} if there is none
+     */
+    public int lowerBound(long bp) {
+        int position = binarySearch(bp);
+        return position < 0 ? -position - 1 : position;
+    }
+
+    /**
+     * Chooses between probing each base pair with {@link #find(long)} and walking the sorted base pairs and the
+     * positions together. The probes cost a binary search each, the walk costs one step per base pair and position.
+     *
+     * @param inputs Number of sorted base pairs to look up
+     * @return True if walking the positions is cheaper than probing them
+     */
+    public boolean prefersMergeJoin(int inputs) {
+        long probeCost = (long) inputs * (64 - Long.numberOfLeadingZeros(positions.limit()));
+        return probeCost > (long) inputs + positions.limit();
+    }
+
+    /**
+     * @return Index of the first protein of the position
+     */
+    public int start(int position) {
+        return offsets.get(position);
+    }
+
+    /**
+     * @return Index after the last protein of the position
+     */
+    public int end(int position) {
+        return offsets.get(position + 1);
+    }
+
+    public String getProtein(int i) {
+        return proteinNames[proteins.get(i)];
+    }
+
+    /**
+     * @return Identifier of the protein within the chromosome, between 0 and {@link #getProteinCount()}
+     */
+    int getProteinId(int i) {
+        return proteins.get(i);
+    }
+
+    String getProteinName(int proteinId) {
+        return proteinNames[proteinId];
+    }
+
+    /**
+     * @return Number of different proteins in the chromosome
+     */
+    int getProteinCount() {
+        return proteinNames.length;
+    }
+
+    public long getPosition(int position) {
+        return positions.get(position);
+    }
+
+    /**
+     * @return Number of base pair positions with proteins
+     */
+    public int size() {
+        return positions.limit();
+    }
+
+    LongBuffer getPositions() {
+        return positions.duplicate();
+    }
+
+    IntBuffer getOffsets() {
+        return offsets.duplicate();
+    }
+
+    IntBuffer getProteins() {
+        return proteins.duplicate();
+    }
+
+    String[] getProteinNames() {
+        return proteinNames;
+    }
+
+    /**
+     * @return Approximate number of bytes used by the index, without the protein names
+     */
+    public long getSizeInBytes() {
+        return 16L + 4 * 16L + 8L * positions.limit() + 4L * offsets.limit() + 4L * proteins.limit() + 4L * proteinNames.length;
+    }
+}
@@ -0,0 +1,45 @@
+package no.uib.pap.methods.reference;
+
+import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.collect.Multimap;
+
+import java.io.File;
+
+/**
+ * Loads the table of one chromosome, from the identifiers of the chromosome (rsids or base pair positions) to proteins.
+ * <p>
+ * <p>The indices of this package read each table once to build their own compact representation, so with a source
+ * that reads the resource files directly the table can be collected right after, instead of staying in the
+ * {@link no.uib.pap.model.Mapping}.</p>
+ *
+ * @param <K> Type of the identifiers of the chromosome
+ */
+@FunctionalInterface
+public interface ChromosomeTableSource<K> {
+
+    /**
+     * @param chr Number of the chromosome
+     * @return The proteins of each identifier of the chromosome, empty if there is no table for the chromosome
+     */
+    Multimap<K, String> load(int chr);
+
+    /**
+     * Reads the chrBpToProteins tables from the serialized files in the directory.
+     */
+    static ChromosomeTableSource<Long> chrBpFiles(String directory) {
+        return chr -> readTable(new File(directory, "chrBpToProteins" + chr + ".gz"));
+    }
+
+    /**
+     * Reads the rsIdsToProteins tables from the serialized files in the directory.
+     */
+    static ChromosomeTableSource<String> rsIdFiles(String directory) {
+        return chr -> readTable(new File(directory, "rsIdsToProteins" + chr + ".gz"));
+    }
+
+    @SuppressWarnings("unchecked")
+    static <K> Multimap<K, String> readTable(File file) {
+        Multimap<K, String> table = (Multimap<K, String>) TableLoader.readTable(file);
+        return table == null ? ImmutableSetMultimap.of() : table;
+    }
+}
@@ -0,0 +1,138 @@
+package no.uib.pap.methods.reference;
+
+import java.util.Arrays;
+
+/**
+ * Reactions, pathways and top level pathways reached from one protein or proteoform of the reference data.
+ * <p>
+ * <p>The paths are the (reaction, pathway) pairs in the order of the traversal of the {@link MappingView} graphs. The
+ * roll-up replaces each path by one entry for each top level pathway of its pathway, or by one entry with the pathway
+ * itself when the pathway is a top level pathway. The arrays returned by this class are shared and must not be
+ * modified.</p>
+ */
+public final class Closure {
+
+    static final Closure EMPTY = new Closure(new int[0], new int[0], new int[0], new int[0], new int[0], new int[0], new int[0]);
+
+    private final int[] reactions;
+    private final int[] pathReactions;
+    private final int[] pathPathways;
+    private final int[] rollUpPaths;
+    private final int[] rollUpTopLevelPathways;
+    private final int[] pathways;
+    private final int[] topLevelPathways;
+
+    private Closure(int[] reactions, int[] pathReactions, int[] pathPathways, int[] rollUpPaths, int[] rollUpTopLevelPathways, int[] pathways, int[] topLevelPathways) {
+        this.reactions = reactions;
+        this.pathReactions = pathReactions;
+        this.pathPathways = pathPathways;
+        this.rollUpPaths = rollUpPaths;
+        this.rollUpTopLevelPathways = rollUpTopLevelPathways;
+        this.pathways = pathways;
+        this.topLevelPathways = topLevelPathways;
+    }
+
+    /**
+     * Follows the reactions to their pathways and the pathways to their top level pathways.
+     *
+     * @param reactions Identifiers of the reactions of the protein or proteoform, in order
+     */
+    static Closure of(int[] reactions, CsrGraph reactionPathways, CsrGraph pathwayTopLevelPathways) {
+        if (reactions.length == 0) {
+            return EMPTY;
+        }
+
+        int pathCount = 0;
+        int rollUpCount = 0;
+        for (int reaction : reactions) {
+            for (int p = reactionPathways.start(reaction), pEnd = reactionPathways.end(reaction); p < pEnd; p++) {
+                pathCount++;
+                rollUpCount += Math.max(1, pathwayTopLevelPathways.degree(reactionPathways.target(p)));
+            }
+        }
+
+        int[] pathReactions = new int[pathCount];
+        int[] pathPathways = new int[pathCount];
+        int[] rollUpPaths = new int[rollUpCount];
+        int[] rollUpTopLevelPathways = new int[rollUpCount];
+        int path = 0;
+        int rollUp = 0;
+        for (int reaction : reactions) {
+            for (int p = reactionPathways.start(reaction), pEnd = reactionPathways.end(reaction); p < pEnd; p++) {
+                int pathway = reactionPathways.target(p);
+                pathReactions[path] = reaction;
+                pathPathways[path] = pathway;
+                if (pathwayTopLevelPathways.degree(pathway) == 0) {
+                    rollUpPaths[rollUp] = path;
+                    rollUpTopLevelPathways[rollUp++] = pathway;
+                } else {
+                    for (int t = pathwayTopLevelPathways.start(pathway), tEnd = pathwayTopLevelPathways.end(pathway); t < tEnd; t++) {
+                        rollUpPaths[rollUp] = path;
+                        rollUpTopLevelPathways[rollUp++] = pathwayTopLevelPathways.target(t);
+                    }
+                }
+                path++;
+            }
+        }
+
+        return new Closure(reactions, pathReactions, pathPathways, rollUpPaths, rollUpTopLevelPathways,
+                Arrays.stream(pathPathways).sorted().distinct().toArray(),
+                Arrays.stream(rollUpTopLevelPathways).sorted().distinct().toArray());
+    }
+
+    /**
+     * @return The identifiers of the reactions
+     */
+    public int[] getReactions() {
+        return reactions;
+    }
+
+    /**
+     * @return The identifiers of the pathways, sorted and without repetitions
+     */
+    public int[] getPathways() {
+        return pathways;
+    }
+
+    /**
+     * @return The identifiers of the top level pathways of the roll-up, sorted and without repetitions
+     */
+    public int[] getTopLevelPathways() {
+        return topLevelPathways;
+    }
+
+    public int getPathCount() {
+        return pathReactions.length;
+    }
+
+    public int getPathReaction(int path) {
+        return pathReactions[path];
+    }
+
+    public int getPathPathway(int path) {
+        return pathPathways[path];
+    }
+
+    public int getRollUpCount() {
+        return rollUpPaths.length;
+    }
+
+    /**
+     * @return The index of the path rolled up by the entry
+     */
+    public int getRollUpPath(int rollUp) {
+        return rollUpPaths[rollUp];
+    }
+
+    public int getRollUpTopLevelPathway(int rollUp) {
+        return rollUpTopLevelPathways[rollUp];
+    }
+
+    /**
+     * @return Approximate number of bytes used by the closure, including the array headers
+     */
+    public long getSizeInBytes() {
+        return 16L + 7 * 16L + 4L * (reactions.length + pathReactions.length + pathPathways.length + rollUpPaths.length
+                + rollUpTopLevelPathways.length + pathways.length + topLevelPathways.length);
+    }
+}
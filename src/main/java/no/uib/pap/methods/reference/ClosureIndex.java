@@ -0,0 +1,114 @@
+package no.uib.pap.methods.reference;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableMap;
+import no.uib.pap.model.Proteoform;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The {@link Closure} of each protein and proteoform of a {@link MappingView}.
+ * <p>
+ * <p>With {@link Loading#EAGER} all the closures are computed when the index is created. With {@link Loading#LAZY}
+ * each closure is computed the first time it is requested and kept in a cache, which evicts the least recently used
+ * closures when their total size goes over the memory budget. Both are safe to use from several threads.</p>
+ */
+public final class ClosureIndex {
+
+    public enum Loading {
+        EAGER, LAZY
+    }
+
+    /**
+     * Memory budget of the lazy index, in bytes.
+     */
+    public static final long DEFAULT_MAX_BYTES = 64L * 1024L * 1024L;
+
+    private final CsrGraph proteinReactions;
+    private final CsrGraph reactionPathways;
+    private final CsrGraph pathwayTopLevelPathways;
+    private final ImmutableMap<Proteoform, int[]> proteoformReactions;
+
+    private final Closure[] proteinClosures;
+    private final Map<Proteoform, Closure> proteoformClosures;
+    private final LoadingCache<Integer, Closure> proteinCache;
+    private final LoadingCache<Proteoform, Closure> proteoformCache;
+
+    /**
+     * @param proteoformReactions Identifiers of the reactions of each proteoform, in order
+     * @param loading             When the closures are computed
+     * @param maxBytes            Memory budget of the closures of the lazy index, ignored by the eager index
+     */
+    ClosureIndex(CsrGraph proteinReactions, CsrGraph reactionPathways, CsrGraph pathwayTopLevelPathways,
+                 ImmutableMap<Proteoform, int[]> proteoformReactions, Loading loading, long maxBytes) {
+        this.proteinReactions = proteinReactions;
+        this.reactionPathways = reactionPathways;
+        this.pathwayTopLevelPathways = pathwayTopLevelPathways;
+        this.proteoformReactions = proteoformReactions;
+
+        if (loading == Loading.EAGER) {
+            proteinClosures = new Closure[proteinReactions.getSourceCount()];
+            for (int protein = 0; protein < proteinClosures.length; protein++) {
+                proteinClosures[protein] = computeClosure(protein);
+            }
+            Map<Proteoform, Closure> closures = new HashMap<>();
+            for (Proteoform proteoform : proteoformReactions.keySet()) {
+                closures.put(proteoform, computeClosure(proteoform));
+            }
+            proteoformClosures = closures;
+            proteinCache = null;
+            proteoformCache = null;
+        } else {
+            if (maxBytes < 0) {
+                throw new IllegalArgumentException("The memory budget must not be negative.");
+            }
+            proteinClosures = null;
+            proteoformClosures = null;
+            // Proteins and proteoforms share the budget
+            proteinCache = CacheBuilder.newBuilder()
+                    .maximumWeight(maxBytes / 2)
+                    .weigher((Integer protein, Closure closure) -> (int) Math.min(Integer.MAX_VALUE, closure.getSizeInBytes()))
+                    .build(CacheLoader.from(this::computeClosure));
+            proteoformCache = CacheBuilder.newBuilder()
+                    .maximumWeight(maxBytes / 2)
+                    .weigher((Proteoform proteoform, Closure closure) -> (int) Math.min(Integer.MAX_VALUE, closure.getSizeInBytes()))
+                    .build(CacheLoader.from(this::computeClosure));
+        }
+    }
+
+    private Closure computeClosure(int protein) {
+        int[] reactions = new int[proteinReactions.degree(protein)];
+        for (int r = proteinReactions.start(protein), i = 0; i < reactions.length; r++, i++) {
+            reactions[i] = proteinReactions.target(r);
+        }
+        return Closure.of(reactions, reactionPathways, pathwayTopLevelPathways);
+    }
+
+    private Closure computeClosure(Proteoform proteoform) {
+        int[] reactions = proteoformReactions.get(proteoform);
+        return reactions == null ? Closure.EMPTY : Closure.of(reactions, reactionPathways, pathwayTopLevelPathways);
+    }
+
+    /**
+     * @param protein Identifier of the protein
+     */
+    public Closure get(int protein) {
+        return proteinClosures != null ? proteinClosures[protein] : proteinCache.getUnchecked(protein);
+    }
+
+    /**
+     * @return The closure of the reference proteoform, empty if the proteoform is not in any reaction
+     */
+    public Closure get(Proteoform proteoform) {
+        if (proteoformClosures != null) {
+            return proteoformClosures.getOrDefault(proteoform, Closure.EMPTY);
+        }
+        if (!proteoformReactions.containsKey(proteoform)) {
+            return Closure.EMPTY;
+        }
+        return proteoformCache.getUnchecked(proteoform);
+    }
+}
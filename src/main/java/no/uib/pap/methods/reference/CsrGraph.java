@@ -0,0 +1,99 @@
+package no.uib.pap.methods.reference;
+
+import com.google.common.collect.Multimap;
+
+/**
+ * Directed graph between two sets of dense identifiers stored in compressed sparse row format.
+ * <p>
+ * <p>The targets of all the sources are stored one after the other in a single array, and the offsets array has the
+ * position where the targets of each source start. The targets of a source are traversed with a loop from
+ * {@link #start(int)} to {@link #end(int)}, reading contiguous memory and without creating objects:</p>
+ * <pre>
+ * for (int i = graph.start(source), end = graph.end(source); i &lt; end; i++) {
+ *     int target = graph.target(i);
+ * }
+ * </pre>
+ */
+public final class CsrGraph {
+
+    private final int[] offsets;
+    private final int[] targets;
+
+    private CsrGraph(int[] offsets, int[] targets) {
+        this.offsets = offsets;
+        this.targets = targets;
+    }
+
+    /**
+     * Creates the graph of a multimap, replacing the keys and values by their identifiers and keeping the order of the
+     * values of each key. Values that are not in the dictionary of values are left out.
+     *
+     * @param multimap Relation between names
+     * @param sources  Dictionary of the keys of the multimap
+     * @param targets  Dictionary of the values of the multimap
+     */
+    public static CsrGraph of(Multimap<String, String> multimap, IdDictionary sources, IdDictionary targets) {
+        int[] offsets = new int[sources.size() + 1];
+        for (int source = 0; source < sources.size(); source++) {
+            int degree = 0;
+            for (String value : multimap.get(sources.getName(source))) {
+                if (targets.getId(value) != IdDictionary.MISSING) {
+                    degree++;
+                }
+            }
+            offsets[source + 1] = offsets[source] + degree;
+        }
+        int[] edges = new int[offsets[sources.size()]];
+        for (int source = 0; source < sources.size(); source++) {
+            int i = offsets[source];
+            for (String value : multimap.get(sources.getName(source))) {
+                int target = targets.getId(value);
+                if (target != IdDictionary.MISSING) {
+                    edges[i++] = target;
+                }
+            }
+        }
+        return new CsrGraph(offsets, edges);
+    }
+
+    /**
+     * @return Position of the first target of the source
+     */
+    public int start(int source) {
+        return offsets[source];
+    }
+
+    /**
+     * @return Position after the last target of the source
+     */
+    public int end(int source) {
+        return offsets[source + 1];
+    }
+
+    /**
+     * @param position Position between {@link #start(int)} and {@link #end(int)} of a source
+     * @return The target at that position
+     */
+    public int target(int position) {
+        return targets[position];
+    }
+
+    public int degree(int source) {
+        return offsets[source + 1] - offsets[source];
+    }
+
+    public int getSourceCount() {
+        return offsets.length - 1;
+    }
+
+    public int getEdgeCount() {
+        return targets.length;
+    }
+
+    /**
+     * @return Approximate number of bytes used by the graph, including the array headers
+     */
+    public long getSizeInBytes() {
+        return 16L + 2 * 16L + 4L * offsets.length + 4L * targets.length;
+    }
+}
@@ -0,0 +1,46 @@
+package no.uib.pap.methods.reference;
+
+import com.google.common.collect.ImmutableMap;
+
+import java.util.Collection;
+import java.util.TreeSet;
+
+/**
+ * Assigns dense integer identifiers, from 0 to size - 1, to a set of names such as protein accessions or stable
+ * identifiers. The identifiers follow the natural order of the names.
+ */
+public final class IdDictionary {
+
+    /**
+     * Identifier returned for the names that are not in the dictionary.
+     */
+    public static final int MISSING = -1;
+
+    private final ImmutableMap<String, Integer> ids;
+    private final String[] names;
+
+    public IdDictionary(Collection<String> names) {
+        this.names = new TreeSet<>(names).toArray(new String[0]);
+        ImmutableMap.Builder<String, Integer> builder = ImmutableMap.builder();
+        for (int id = 0; id < this.names.length; id++) {
+            builder.put(this.names[id], id);
+        }
+        this.ids = builder.build();
+    }
+
+    /**
+     * @return The identifier of the name, or {@link #MISSING} if the name is not in the dictionary
+     */
+    public int getId(String name) {
+        Integer id = ids.get(name);
+        return id == null ? MISSING : id;
+    }
+
+    public String getName(int id) {
+        return names[id];
+    }
+
+    public int size() {
+        return names.length;
+    }
+}
@@ -0,0 +1,195 @@
+package no.uib.pap.methods.reference;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * Base pair intervals covered by the proteins of one chromosome, for window and region queries.
+ * <p>
+ * <p>The interval of a protein goes from its first to its last position in the {@link ChromosomeIndex}. The intervals
+ * are numbered by start and then by end, and grouped in buckets by their width, from 0 and then one bucket for each
+ * power of two. The widths of the intervals of a bucket are within a factor two of each other, so the intervals of a
+ * bucket that overlap the query [start, end] start in [start - widest, end], found by binary search on the starts of
+ * the bucket, and most of the intervals there overlap it. A query takes O(b log n + k log k) for b buckets and k
+ * overlapping intervals, also when a few intervals span most of the chromosome:</p>
+ * <pre>
+ * index.forEachOverlap(start, end, i -&gt; index.getProtein(i));
+ * </pre>
+ */
+public final class IntervalIndex {
+
+    static final IntervalIndex EMPTY = of(new long[0], new long[0], new String[0]);
+
+    private final long[] starts;
+    private final long[] ends;
+    private final String[] proteins;
+
+    // The intervals of each bucket sorted by start, from bucketOffsets[b] to bucketOffsets[b + 1]
+    private final int[] bucketOffsets;
+    private final long[] bucketWidths;
+    private final int[] bucketIntervals;
+    private final long[] bucketStarts;
+
+    private IntervalIndex(long[] starts, long[] ends, String[] proteins, int[] bucketOffsets, long[] bucketWidths,
+                          int[] bucketIntervals, long[] bucketStarts) {
+        this.starts = starts;
+        this.ends = ends;
+        this.proteins = proteins;
+        this.bucketOffsets = bucketOffsets;
+        this.bucketWidths = bucketWidths;
+        this.bucketIntervals = bucketIntervals;
+        this.bucketStarts = bucketStarts;
+    }
+
+    /**
+     * Creates the intervals of the proteins of the chromosome.
+     */
+    static IntervalIndex of(ChromosomeIndex chromosome) {
+        int proteinCount = chromosome.getProteinCount();
+        long[] first = new long[proteinCount];
+        long[] last = new long[proteinCount];
+        Arrays.fill(first, Long.MAX_VALUE);
+        Arrays.fill(last, Long.MIN_VALUE);
+        for (int position = 0; position < chromosome.size(); position++) {
+            long bp = chromosome.getPosition(position);
+            for (int i = chromosome.start(position); i < chromosome.end(position); i++) {
+                int protein = chromosome.getProteinId(i);
+                first[protein] = Math.min(first[protein], bp);
+                last[protein] = Math.max(last[protein], bp);
+            }
+        }
+
+        int[] order = IntStream.range(0, proteinCount).boxed()
+                .sorted(Comparator.comparingLong((Integer protein) -> first[protein]).thenComparingLong(protein -> last[protein]))
+                .mapToInt(Integer::intValue).toArray();
+        long[] starts = new long[proteinCount];
+        long[] ends = new long[proteinCount];
+        String[] proteins = new String[proteinCount];
+        for (int i = 0; i < proteinCount; i++) {
+            starts[i] = first[order[i]];
+            ends[i] = last[order[i]];
+            proteins[i] = chromosome.getProteinName(order[i]);
+        }
+        return of(starts, ends, proteins);
+    }
+
+    /*
+     * Groups the intervals, sorted by start, in the buckets of their width.
+     */
+    private static IntervalIndex of(long[] starts, long[] ends, String[] proteins) {
+        int[] counts = new int[Long.SIZE + 1];
+        for (int i = 0; i < starts.length; i++) {
+            counts[bucket(ends[i] - starts[i])]++;
+        }
+        int bucketCount = (int) Arrays.stream(counts).filter(count -> count > 0).count();
+        int[] bucketOffsets = new int[bucketCount + 1];
+        long[] bucketWidths = new long[bucketCount];
+        // Bucket of each width class, or -1 if no interval has it
+        int[] buckets = new int[counts.length];
+        Arrays.fill(buckets, -1);
+        for (int widthClass = 0, b = 0; widthClass < counts.length; widthClass++) {
+            if (counts[widthClass] > 0) {
+                buckets[widthClass] = b;
+                bucketOffsets[b + 1] = bucketOffsets[b] + counts[widthClass];
+                b++;
+            }
+        }
+
+        // The intervals are sorted by start, so each bucket is too
+        int[] bucketIntervals = new int[starts.length];
+        long[] bucketStarts = new long[starts.length];
+        int[] next = Arrays.copyOf(bucketOffsets, bucketCount);
+        for (int i = 0; i < starts.length; i++) {
+            int b = buckets[bucket(ends[i] - starts[i])];
+            bucketWidths[b] = Math.max(bucketWidths[b], ends[i] - starts[i]);
+            bucketIntervals[next[b]] = i;
+            bucketStarts[next[b]++] = starts[i];
+        }
+        return new IntervalIndex(starts, ends, proteins, bucketOffsets, bucketWidths, bucketIntervals, bucketStarts);
+    }
+
+    private static int bucket(long width) {
+        return Long.SIZE - Long.numberOfLeadingZeros(width);
+    }
+
+    /*
+     * First position of the bucket range with a start larger than the base pair, or not smaller if equal is true.
+     */
+    private int bound(int from, int to, long bp, boolean equal) {
+        while (from < to) {
+            int middle = (from + to) >>> 1;
+            if (bucketStarts[middle] < bp || (!equal && bucketStarts[middle] == bp)) {
+                from = middle + 1;
+            } else {
+                to = middle;
+            }
+        }
+        return from;
+    }
+
+    /**
+     * Calls the action with each interval that overlaps the query [start, end], in the order of the intervals.
+     */
+    public void forEachOverlap(long start, long end, IntConsumer action) {
+        overlaps(start, end, action);
+    }
+
+    /**
+     * Calls the action with each interval that overlaps the query [start, end], in the order of the intervals.
+     *
+     * @return Number of intervals compared with the query
+     */
+    int overlaps(long start, long end, IntConsumer action) {
+        int[] found = new int[0];
+        int foundCount = 0;
+        int compared = 0;
+        for (int b = 0; b < bucketWidths.length; b++) {
+            long width = bucketWidths[b];
+            long first = start < Long.MIN_VALUE + width ? Long.MIN_VALUE : start - width;
+            for (int j = bound(bucketOffsets[b], bucketOffsets[b + 1], first, true), to = bound(j, bucketOffsets[b + 1], end, false); j < to; j++) {
+                compared++;
+                int i = bucketIntervals[j];
+                if (ends[i] >= start) {
+                    if (foundCount == found.length) {
+                        found = Arrays.copyOf(found, Math.max(8, 2 * foundCount));
+                    }
+                    found[foundCount++] = i;
+                }
+            }
+        }
+        Arrays.sort(found, 0, foundCount);
+        for (int k = 0; k < foundCount; k++) {
+            action.accept(found[k]);
+        }
+        return compared;
+    }
+
+    public long getStart(int i) {
+        return starts[i];
+    }
+
+    public long getEnd(int i) {
+        return ends[i];
+    }
+
+    public String getProtein(int i) {
+        return proteins[i];
+    }
+
+    /**
+     * @return Number of intervals, one for each protein of the chromosome
+     */
+    public int size() {
+        return starts.length;
+    }
+
+    /**
+     * @return Approximate number of bytes used by the intervals, including the array headers, without the protein
+     * names that are shared with the chromosome index
+     */
+    public long getSizeInBytes() {
+        return 16L + 7 * 16L + (8L + 8L + 4L + 4L + 8L) * starts.length + (4L + 8L) * bucketWidths.length;
+    }
+}
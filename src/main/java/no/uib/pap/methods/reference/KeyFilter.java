@@ -0,0 +1,147 @@
+package no.uib.pap.methods.reference;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bloom filter of long keys, such as base pair positions or rsid numbers, checked before looking up a key in an index
+ * so that most of the keys that are not in the index skip the lookup.
+ * <p>
+ * <p>The filter is blocked: the bits of a key are all in one block of 512 bits, a cache line, chosen by the hash of
+ * the key, so a check reads one cache line instead of one for each bit. A blocked filter needs a few more bits per key
+ * than a plain one for the same false positive rate, which is accounted for when it is sized.</p>
+ * <p>
+ * <p>The filter counts the keys checked, the keys skipped and the false positives reported by the caller, so the
+ * skip rate of a workload can be monitored. The counters are safe to update from several threads.</p>
+ */
+public final class KeyFilter {
+
+    /**
+     * False positive rate of the filters of the chromosomes of a {@link ChrBpIndex}, unless another one is given.
+     */
+    public static final double DEFAULT_FALSE_POSITIVE_RATE = 0.01;
+
+    /**
+     * A filter that lets all the keys through, for a false positive rate of 1.
+     */
+    static final KeyFilter ALL = new KeyFilter(new long[0], 0, 0);
+
+    private static final int BLOCK_LONGS = 8;
+    private static final int BLOCK_BITS = BLOCK_LONGS * Long.SIZE;
+
+    // Extra bits per key of the blocked filter, to keep the false positive rate of the plain filter
+    private static final double BLOCKING_OVERHEAD = 1.2;
+
+    private final long[] bits;
+    private final int blockMask;
+    private final int hashes;
+
+    private final LongAdder checks = new LongAdder();
+    private final LongAdder skips = new LongAdder();
+    private final LongAdder falsePositives = new LongAdder();
+
+    private KeyFilter(long[] bits, int blocks, int hashes) {
+        this.bits = bits;
+        this.blockMask = blocks - 1;
+        this.hashes = hashes;
+    }
+
+    /**
+     * Creates an empty filter for the number of keys.
+     *
+     * @param keys              Number of keys that will be added
+     * @param falsePositiveRate Fraction of the keys not in the filter that will pass it, between 0 and 1 excluded,
+     *                          or 1 for a filter that lets all the keys through
+     */
+    static KeyFilter create(int keys, double falsePositiveRate) {
+        if (!(falsePositiveRate > 0 && falsePositiveRate <= 1)) {
+            throw new IllegalArgumentException("The false positive rate must be greater than 0 and at most 1.");
+        }
+        if (falsePositiveRate == 1) {
+            return ALL;
+        }
+        double bitsPerKey = -Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)) * BLOCKING_OVERHEAD;
+        int hashes = (int) Math.max(1, Math.min(16, Math.round(bitsPerKey / BLOCKING_OVERHEAD * Math.log(2))));
+        long minBlocks = (long) Math.ceil(Math.max(1, keys) * bitsPerKey / BLOCK_BITS);
+        int blocks = minBlocks <= 1 ? 1 : (int) Math.min(1 << 26, Long.highestOneBit(minBlocks - 1) << 1);
+        return new KeyFilter(new long[blocks * BLOCK_LONGS], blocks, hashes);
+    }
+
+    private static long mix(long key) {
+        key = (key ^ (key >>> 33)) * 0xff51afd7ed558ccdL;
+        key = (key ^ (key >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return key ^ (key >>> 33);
+    }
+
+    void add(long key) {
+        long hash = mix(key);
+        int block = ((int) (hash >>> 32) & blockMask) * BLOCK_LONGS;
+        int bit = (int) hash;
+        int step = (int) ((hash * 0x9E3779B97F4A7C15L) >>> 55) | 1;
+        for (int i = 0; i < hashes; i++, bit += step) {
+            int index = bit & (BLOCK_BITS - 1);
+            bits[block + (index >>> 6)] |= 1L << index;
+        }
+    }
+
+    /**
+     * @return False if the key is not in the filter, true if it may be
+     */
+    public boolean mightContain(long key) {
+        if (bits.length == 0) {
+            return true;
+        }
+        checks.increment();
+        long hash = mix(key);
+        int block = ((int) (hash >>> 32) & blockMask) * BLOCK_LONGS;
+        int bit = (int) hash;
+        int step = (int) ((hash * 0x9E3779B97F4A7C15L) >>> 55) | 1;
+        for (int i = 0; i < hashes; i++, bit += step) {
+            int index = bit & (BLOCK_BITS - 1);
+            if ((bits[block + (index >>> 6)] & (1L << index)) == 0) {
+                skips.increment();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Records a key that passed the filter but was not in the index.
+     */
+    public void recordFalsePositive() {
+        falsePositives.increment();
+    }
+
+    /**
+     * @return Number of keys checked, not counting the checks of a filter that lets all the keys through
+     */
+    public long getChecks() {
+        return checks.sum();
+    }
+
+    /**
+     * @return Number of keys that did not pass the filter, so their lookups were skipped
+     */
+    public long getSkips() {
+        return skips.sum();
+    }
+
+    public long getFalsePositives() {
+        return falsePositives.sum();
+    }
+
+    /**
+     * @return Fraction of the checked keys that did not pass the filter, 0 if no keys were checked
+     */
+    public double getSkipRate() {
+        long checked = getChecks();
+        return checked == 0 ? 0 : (double) getSkips() / checked;
+    }
+
+    /**
+     * @return Number of bytes of the bits of the filter
+     */
+    public long getSizeInBytes() {
+        return 8L * bits.length;
+    }
+}
@@ -0,0 +1,179 @@
+package no.uib.pap.methods.reference;
+
+import com.google.common.collect.ImmutableMap;
+import no.uib.pap.model.Mapping;
+import no.uib.pap.model.Pathway;
+import no.uib.pap.model.Proteoform;
+import no.uib.pap.model.Reaction;
+import org.apache.commons.lang3.SerializationUtils;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * Read-only view of the reference data of a {@link Mapping}, shared by all the searches that use that mapping.
+ * <p>
+ * <p>The pathways of the mapping are kept as serialized templates with no entities or reactions found. Each query gets
+ * its own pathway instances from {@link #newPathwayInstance(int)}, so the hits of a query never reach the pathways
+ * of the mapping or the ones of other queries, and several queries can run at the same time.</p>
+ * <p>
+ * <p>Proteins, reactions and pathways get dense integer identifiers when the view is created. The protein to reaction,
+ * reaction to pathway and pathway to top level pathway relations are stored with these identifiers as
+ * {@link CsrGraph}s, so the searches traverse them without hashing strings or creating objects. The
+ * {@link ClosureIndex} of the view has the reactions, pathways and top level pathways of each protein and proteoform,
+ * so a search gets them with one lookup.</p>
+ */
+public final class MappingView {
+
+    private static final Map<Mapping, MappingView> views = Collections.synchronizedMap(new WeakHashMap<>());
+
+    private final IdDictionary proteins;
+    private final IdDictionary reactions;
+    private final IdDictionary pathways;
+
+    private final CsrGraph proteinReactions;
+    private final CsrGraph reactionPathways;
+    private final CsrGraph pathwayTopLevelPathways;
+    private final ClosureIndex closures;
+
+    private final String[] reactionDisplayNames;
+    private final String[] pathwayDisplayNames;
+    private final byte[][] pathwayTemplates;
+
+    private MappingView(Mapping mapping, ClosureIndex.Loading loading, long maxClosureBytes) {
+
+        Set<String> proteinNames = new HashSet<>(mapping.getProteinsToReactions().keySet());
+        proteinNames.addAll(mapping.getProteinsToProteoforms().keySet());
+        for (Proteoform proteoform : mapping.getProteoformsToReactions().keySet()) {
+            proteinNames.add(proteoform.getUniProtAcc());
+        }
+        this.proteins = new IdDictionary(proteinNames);
+
+        Set<String> reactionNames = new HashSet<>(mapping.getReactions().keySet());
+        reactionNames.addAll(mapping.getProteinsToReactions().values());
+        reactionNames.addAll(mapping.getProteoformsToReactions().values());
+        reactionNames.addAll(mapping.getReactionsToPathways().keySet());
+        this.reactions = new IdDictionary(reactionNames);
+
+        Set<String> pathwayNames = new HashSet<>(mapping.getPathways().keySet());
+        pathwayNames.addAll(mapping.getReactionsToPathways().values());
+        pathwayNames.addAll(mapping.getPathwaysToTopLevelPathways().values());
+        this.pathways = new IdDictionary(pathwayNames);
+
+        this.proteinReactions = CsrGraph.of(mapping.getProteinsToReactions(), proteins, reactions);
+        this.reactionPathways = CsrGraph.of(mapping.getReactionsToPathways(), reactions, pathways);
+        this.pathwayTopLevelPathways = CsrGraph.of(mapping.getPathwaysToTopLevelPathways(), pathways, pathways);
+
+        ImmutableMap.Builder<Proteoform, int[]> proteoformReactions = ImmutableMap.builder();
+        for (Proteoform proteoform : mapping.getProteoformsToReactions().keySet()) {
+            proteoformReactions.put(proteoform, mapping.getProteoformsToReactions().get(proteoform).stream().mapToInt(reactions::getId).toArray());
+        }
+        this.closures = new ClosureIndex(proteinReactions, reactionPathways, pathwayTopLevelPathways, proteoformReactions.build(), loading, maxClosureBytes);
+
+        this.reactionDisplayNames = new String[reactions.size()];
+        for (int reaction = 0; reaction < reactions.size(); reaction++) {
+            Reaction instance = mapping.getReactions().get(reactions.getName(reaction));
+            reactionDisplayNames[reaction] = instance == null ? null : instance.getDisplayName();
+        }
+
+        this.pathwayDisplayNames = new String[pathways.size()];
+        this.pathwayTemplates = new byte[pathways.size()][];
+        for (int pathway = 0; pathway < pathways.size(); pathway++) {
+            Pathway instance = mapping.getPathways().get(pathways.getName(pathway));
+            if (instance != null) {
+                Pathway template = SerializationUtils.clone(instance);
+                template.getReactionsFound().clear();
+                template.getEntitiesFound().clear();
+                pathwayDisplayNames[pathway] = instance.getDisplayName();
+                pathwayTemplates[pathway] = SerializationUtils.serialize(template);
+            }
+        }
+    }
+
+    /**
+     * Gets the view of the mapping. The view is created on the first call and reused while the mapping is in use.
+     * A new view computes the closures lazily within {@link ClosureIndex#DEFAULT_MAX_BYTES}.
+     */
+    public static MappingView of(Mapping mapping) {
+        return of(mapping, ClosureIndex.Loading.LAZY, ClosureIndex.DEFAULT_MAX_BYTES);
+    }
+
+    /**
+     * Gets the view of the mapping. The closure settings are used only if this call creates the view.
+     *
+     * @param loading         When the closures of the proteins and proteoforms are computed
+     * @param maxClosureBytes Memory budget of the closures when they are computed lazily
+     */
+    public static MappingView of(Mapping mapping, ClosureIndex.Loading loading, long maxClosureBytes) {
+        return views.computeIfAbsent(mapping, key -> new MappingView(key, loading, maxClosureBytes));
+    }
+
+    public IdDictionary getProteins() {
+        return proteins;
+    }
+
+    public IdDictionary getReactions() {
+        return reactions;
+    }
+
+    public IdDictionary getPathways() {
+        return pathways;
+    }
+
+    /**
+     * @return The graph from each protein to the reactions where it participates
+     */
+    public CsrGraph getProteinReactions() {
+        return proteinReactions;
+    }
+
+    /**
+     * @return The graph from each reaction to the pathways that contain it
+     */
+    public CsrGraph getReactionPathways() {
+        return reactionPathways;
+    }
+
+    /**
+     * @return The graph from each pathway to its top level pathways, with no targets for the top level pathways
+     */
+    public CsrGraph getPathwayTopLevelPathways() {
+        return pathwayTopLevelPathways;
+    }
+
+    public ClosureIndex getClosures() {
+        return closures;
+    }
+
+    /**
+     * @return Approximate number of bytes used by the graphs of the view
+     */
+    public long getGraphSizeInBytes() {
+        return proteinReactions.getSizeInBytes() + reactionPathways.getSizeInBytes() + pathwayTopLevelPathways.getSizeInBytes();
+    }
+
+    public String getReactionDisplayName(int reaction) {
+        return reactionDisplayNames[reaction];
+    }
+
+    public String getPathwayDisplayName(int pathway) {
+        return pathwayDisplayNames[pathway];
+    }
+
+    /**
+     * Creates a new instance of the pathway, with no entities or reactions found, owned by the caller.
+     *
+     * @param pathway Identifier of the pathway
+     * @return The new pathway instance, or null if the pathway is not in the reference data
+     */
+    public Pathway newPathwayInstance(int pathway) {
+        byte[] template = pathwayTemplates[pathway];
+        if (template == null) {
+            return null;
+        }
+        return SerializationUtils.deserialize(template);
+    }
+}
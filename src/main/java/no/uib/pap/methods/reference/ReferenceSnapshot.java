@@ -0,0 +1,381 @@
+package no.uib.pap.methods.reference;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Binary file with the {@link ChromosomeIndex} of each chromosome and the {@link RsIdIndex}, ready to be memory mapped.
+ * <p>
+ * <p>The serialized chrBpToProteins and rsIdsToProteins tables are most of the resources, and reading them means
+ * inflating and deserializing millions of objects before the indices can be built. The snapshot stores the arrays of
+ * the indices instead, so opening it only maps the file: the indices read their arrays from the mapped buffers, the
+ * operating system loads the pages that the searches touch, and the page cache is shared by all the processes that
+ * open the same file.</p>
+ * <p>
+ * <p>The file starts with a header with a magic number, the {@link #VERSION} of the format and the number of sections,
+ * followed by a table with the kind, chromosome, offset, length and CRC32 checksum of each section. The header and the
+ * table are checked when the snapshot is opened, and each section is checked the first time it is used. All the
+ * numbers are little endian and the sections are aligned to 8 bytes.</p>
+ * <pre>
+ * ReferenceSnapshot.write(ChromosomeTableSource.chrBpFiles("resources"), ChromosomeTableSource.rsIdFiles("resources"), file);
+ * ReferenceSnapshot snapshot = ReferenceSnapshot.open(file);
+ * ChrBpIndex.of(mapping, snapshot);
+ * RsIdIndex.of(mapping, snapshot);
+ * </pre>
+ */
+public final class ReferenceSnapshot {
+
+    /**
+     * Version of the format of the file, increased with every change of the format.
+     */
+    public static final int VERSION = 1;
+
+    private static final long MAGIC = 0x3146455250415050L; // "PPAPREF1" in little endian
+    private static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+    private static final int HEADER_BYTES = 24;
+    private static final int TABLE_ENTRY_BYTES = 32;
+    private static final int CHUNK_BYTES = 1 << 20;
+
+    enum Section {
+        CHR_BP_POSITIONS, CHR_BP_OFFSETS, CHR_BP_PROTEINS, CHR_BP_PROTEIN_NAMES,
+        RSID_KEYS, RSID_STARTS, RSID_CHRS, RSID_PROTEINS, RSID_PROTEIN_NAMES
+    }
+
+    private final Path file;
+    private final ByteBuffer[] sections;
+    private final long[] checksums;
+    private final boolean[] verified;
+
+    private ReferenceSnapshot(Path file, ByteBuffer[] sections, long[] checksums) {
+        this.file = file;
+        this.sections = sections;
+        this.checksums = checksums;
+        this.verified = new boolean[sections.length];
+    }
+
+    private static int key(Section section, int chr) {
+        return section.ordinal() * (ChrBpIndex.CHROMOSOMES + 1) + chr;
+    }
+
+    /**
+     * Converts the serialized tables of a reference, as in the resources folder, to a snapshot. The tables are read
+     * on one thread per processor, at most one table per thread ahead of the one written, and the time and size of
+     * each one are printed at the end:
+     * <pre>
+     * java -cp ... no.uib.pap.methods.reference.ReferenceSnapshot resources reference.snapshot
+     * </pre>
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.out.println("Usage: ReferenceSnapshot <resources directory> <snapshot file>");
+            return;
+        }
+        try (TableLoader loader = new TableLoader(args[0], Runtime.getRuntime().availableProcessors())) {
+            loader.queueAll(TableLoader.chromosomeTables(TableLoader.CHR_BP_TABLE));
+            loader.queueAll(TableLoader.chromosomeTables(TableLoader.RSID_TABLE));
+            write(loader.chrBpTables(), loader.rsIdTables(), Paths.get(args[1]));
+            for (TableLoader.TableStats stats : loader.getStats()) {
+                System.out.println(stats);
+            }
+        }
+    }
+
+    /**
+     * Writes the snapshot of the tables. The file is written next to the target and moved in place at the end, so a
+     * process that opens the target never sees a partial file.
+     *
+     * @param chrBp Source of the chrBpToProteins table of each chromosome
+     * @param rsIds Source of the rsIdsToProteins table of each chromosome
+     * @param file  The snapshot file, replaced if it exists
+     */
+    public static void write(ChromosomeTableSource<Long> chrBp, ChromosomeTableSource<String> rsIds, Path file) throws IOException {
+        Path partial = file.resolveSibling(file.getFileName() + ".partial");
+        int sectionCount = 4 * ChrBpIndex.CHROMOSOMES + 5;
+        try (FileChannel channel = FileChannel.open(partial, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            Writer writer = new Writer(channel, HEADER_BYTES + (long) sectionCount * TABLE_ENTRY_BYTES);
+            for (int chr = 1; chr <= ChrBpIndex.CHROMOSOMES; chr++) {
+                ChromosomeIndex chromosome = ChromosomeIndex.of(chrBp.load(chr));
+                writer.writeLongs(Section.CHR_BP_POSITIONS, chr, chromosome.getPositions());
+                writer.writeInts(Section.CHR_BP_OFFSETS, chr, chromosome.getOffsets());
+                writer.writeInts(Section.CHR_BP_PROTEINS, chr, chromosome.getProteins());
+                writer.writeStrings(Section.CHR_BP_PROTEIN_NAMES, chr, chromosome.getProteinNames());
+            }
+            RsIdIndex rsIdIndex = new RsIdIndex(rsIds);
+            writer.writeLongs(Section.RSID_KEYS, 0, rsIdIndex.getKeys());
+            writer.writeInts(Section.RSID_STARTS, 0, rsIdIndex.getStarts());
+            writer.writeBytes(Section.RSID_CHRS, 0, rsIdIndex.getEntryChrs());
+            writer.writeInts(Section.RSID_PROTEINS, 0, rsIdIndex.getEntryProteins());
+            writer.writeStrings(Section.RSID_PROTEIN_NAMES, 0, rsIdIndex.getProteins());
+            writer.writeHeader();
+            channel.force(true);
+        }
+        Files.move(partial, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Maps the snapshot file. The mapping stays valid after the file is replaced or deleted.
+     *
+     * @throws IOException If the file cannot be read, is not a snapshot, has another version or a corrupted header
+     */
+    public static ReferenceSnapshot open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = read(channel, 0, HEADER_BYTES, file);
+            if (header.getLong(0) != MAGIC) {
+                throw new IOException(file + " is not a reference snapshot.");
+            }
+            if (header.getInt(8) != VERSION) {
+                throw new IOException(file + " has version " + header.getInt(8) + " of the snapshot format, expected " + VERSION + ".");
+            }
+            int sectionCount = header.getInt(12);
+            if (sectionCount < 0 || sectionCount > Section.values().length * (ChrBpIndex.CHROMOSOMES + 1)) {
+                throw new IOException(file + " has a corrupted header.");
+            }
+            ByteBuffer table = read(channel, HEADER_BYTES, sectionCount * TABLE_ENTRY_BYTES, file);
+            if (checksum(table.duplicate()) != header.getLong(16)) {
+                throw new IOException(file + " has a corrupted header.");
+            }
+
+            ByteBuffer[] sections = new ByteBuffer[Section.values().length * (ChrBpIndex.CHROMOSOMES + 1)];
+            long[] checksums = new long[sections.length];
+            for (int s = 0; s < sectionCount; s++) {
+                int entry = s * TABLE_ENTRY_BYTES;
+                int kind = table.getInt(entry);
+                int chr = table.getInt(entry + 4);
+                long offset = table.getLong(entry + 8);
+                long length = table.getLong(entry + 16);
+                if (kind < 0 || kind >= Section.values().length || chr < 0 || chr > ChrBpIndex.CHROMOSOMES
+                        || offset < 0 || length < 0 || length > Integer.MAX_VALUE || offset + length > channel.size()) {
+                    throw new IOException(file + " has a corrupted header.");
+                }
+                int key = key(Section.values()[kind], chr);
+                sections[key] = channel.map(FileChannel.MapMode.READ_ONLY, offset, length).order(ORDER);
+                checksums[key] = table.getLong(entry + 24);
+            }
+            return new ReferenceSnapshot(file, sections, checksums);
+        }
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length, Path file) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ORDER);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException(file + " is truncated.");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static long checksum(ByteBuffer bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        return crc.getValue();
+    }
+
+    /*
+     * Gets the section, checking its checksum the first time. Returns null if the snapshot does not have the section.
+     */
+    private ByteBuffer section(Section section, int chr) {
+        int key = key(section, chr);
+        ByteBuffer bytes = sections[key];
+        if (bytes == null) {
+            return null;
+        }
+        synchronized (verified) {
+            if (!verified[key]) {
+                if (checksum(bytes.duplicate()) != checksums[key]) {
+                    throw new IllegalStateException("The section " + section + " of chromosome " + chr + " of " + file + " is corrupted.");
+                }
+                verified[key] = true;
+            }
+        }
+        return bytes.duplicate().order(ORDER);
+    }
+
+    private static String[] decodeStrings(ByteBuffer bytes) {
+        int count = bytes.getInt(0);
+        String[] strings = new String[count];
+        int start = 4 + 4 * count;
+        for (int i = 0; i < count; i++) {
+            int end = bytes.getInt(4 + 4 * i);
+            byte[] utf8 = new byte[end - start];
+            ByteBuffer string = bytes.duplicate();
+            string.position(start);
+            string.get(utf8);
+            strings[i] = new String(utf8, StandardCharsets.UTF_8);
+            start = end;
+        }
+        return strings;
+    }
+
+    /**
+     * @param chr Number of the chromosome
+     * @return The index of the chromosome, reading its positions and proteins from the mapped file
+     */
+    public ChromosomeIndex getChromosome(int chr) {
+        if (chr < 1 || chr > ChrBpIndex.CHROMOSOMES || sections[key(Section.CHR_BP_POSITIONS, chr)] == null) {
+            return ChromosomeIndex.EMPTY;
+        }
+        return new ChromosomeIndex(
+                section(Section.CHR_BP_POSITIONS, chr).asLongBuffer(),
+                section(Section.CHR_BP_OFFSETS, chr).asIntBuffer(),
+                section(Section.CHR_BP_PROTEINS, chr).asIntBuffer(),
+                decodeStrings(section(Section.CHR_BP_PROTEIN_NAMES, chr)));
+    }
+
+    /**
+     * @return The index of the rsids, reading its hash table and entries from the mapped file
+     * @throws IllegalStateException If the snapshot does not have the sections of the rsids, or they are corrupted
+     */
+    public RsIdIndex getRsIds() {
+        for (Section section : new Section[]{Section.RSID_KEYS, Section.RSID_STARTS, Section.RSID_CHRS, Section.RSID_PROTEINS, Section.RSID_PROTEIN_NAMES}) {
+            if (sections[key(section, 0)] == null) {
+                throw new IllegalStateException("The section " + section + " of " + file + " is missing.");
+            }
+        }
+        return new RsIdIndex(
+                section(Section.RSID_KEYS, 0).asLongBuffer(),
+                section(Section.RSID_STARTS, 0).asIntBuffer(),
+                section(Section.RSID_CHRS, 0),
+                section(Section.RSID_PROTEINS, 0).asIntBuffer(),
+                decodeStrings(section(Section.RSID_PROTEIN_NAMES, 0)));
+    }
+
+    /*
+     * Writes the sections one after the other, and the header and the table of sections at the end.
+     */
+    private static final class Writer {
+
+        private final FileChannel channel;
+        private final ByteBuffer chunk = ByteBuffer.allocate(CHUNK_BYTES).order(ORDER);
+        private final List<long[]> table = new ArrayList<>();
+        private final long tableEnd;
+        private long position;
+        private CRC32 crc;
+        private long sectionStart;
+
+        Writer(FileChannel channel, long tableEnd) {
+            this.channel = channel;
+            this.tableEnd = tableEnd;
+            this.position = align(tableEnd);
+        }
+
+        private static long align(long position) {
+            return (position + 7) & ~7L;
+        }
+
+        private void begin() {
+            crc = new CRC32();
+            sectionStart = position;
+        }
+
+        private void flush() throws IOException {
+            chunk.flip();
+            crc.update(chunk.duplicate());
+            while (chunk.hasRemaining()) {
+                position += channel.write(chunk, position);
+            }
+            chunk.clear();
+        }
+
+        private void end(Section section, int chr) throws IOException {
+            flush();
+            table.add(new long[]{section.ordinal(), chr, sectionStart, position - sectionStart, crc.getValue()});
+            position = align(position);
+        }
+
+        void writeLongs(Section section, int chr, LongBuffer values) throws IOException {
+            begin();
+            while (values.hasRemaining()) {
+                if (chunk.remaining() < Long.BYTES) {
+                    flush();
+                }
+                chunk.putLong(values.get());
+            }
+            end(section, chr);
+        }
+
+        void writeInts(Section section, int chr, IntBuffer values) throws IOException {
+            begin();
+            while (values.hasRemaining()) {
+                if (chunk.remaining() < Integer.BYTES) {
+                    flush();
+                }
+                chunk.putInt(values.get());
+            }
+            end(section, chr);
+        }
+
+        void writeBytes(Section section, int chr, ByteBuffer values) throws IOException {
+            begin();
+            while (values.hasRemaining()) {
+                if (!chunk.hasRemaining()) {
+                    flush();
+                }
+                chunk.put(values.get());
+            }
+            end(section, chr);
+        }
+
+        /*
+         * The number of strings, the end of each string relative to the section, and the UTF-8 bytes of the strings.
+         */
+        void writeStrings(Section section, int chr, String[] strings) throws IOException {
+            byte[][] utf8 = new byte[strings.length][];
+            int[] values = new int[1 + strings.length];
+            values[0] = strings.length;
+            int end = 4 + 4 * strings.length;
+            for (int i = 0; i < strings.length; i++) {
+                utf8[i] = strings[i].getBytes(StandardCharsets.UTF_8);
+                end += utf8[i].length;
+                values[1 + i] = end;
+            }
+            begin();
+            for (int value : values) {
+                if (chunk.remaining() < Integer.BYTES) {
+                    flush();
+                }
+                chunk.putInt(value);
+            }
+            for (byte[] string : utf8) {
+                for (byte b : string) {
+                    if (!chunk.hasRemaining()) {
+                        flush();
+                    }
+                    chunk.put(b);
+                }
+            }
+            end(section, chr);
+        }
+
+        void writeHeader() throws IOException {
+            ByteBuffer entries = ByteBuffer.allocate((int) (tableEnd - HEADER_BYTES)).order(ORDER);
+            for (long[] entry : table) {
+                entries.putInt((int) entry[0]).putInt((int) entry[1]).putLong(entry[2]).putLong(entry[3]).putLong(entry[4]);
+            }
+            entries.flip();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ORDER);
+            header.putLong(MAGIC).putInt(VERSION).putInt(table.size()).putLong(checksum(entries.duplicate()));
+            header.flip();
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+            while (entries.hasRemaining()) {
+                channel.write(entries, HEADER_BYTES + entries.position());
+            }
+        }
+    }
+}
@@ -0,0 +1,375 @@
+package no.uib.pap.methods.reference;
+
+import com.google.common.collect.Multimap;
+import no.uib.pap.model.Mapping;
+
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Index of the rsids of all the chromosomes of a {@link Mapping}, from the number of the rsid to the chromosome and
+ * proteins of each of its entries.
+ * <p>
+ * <p>The rsids are kept as numbers in an open addressing hash table of primitive arrays, so one lookup resolves an
+ * rsid no matter the chromosome. The entries of an rsid are contiguous, ordered by chromosome and in the order of the
+ * mapping within each chromosome, and are traversed with:</p>
+ * <pre>
+ * for (int entry = index.find(rsid); entry != RsIdIndex.MISSING; entry = index.next(entry)) {
+ *     index.getChr(entry);
+ *     index.getProtein(entry);
+ * }
+ * </pre>
+ * <p>The identifiers of the mapping that are not of the form "rs" followed by digits are left out. The index covers
+ * all the chromosomes, so it stays in memory as a whole; the tables it is built from are read one at a time. The index
+ * of a {@link ReferenceSnapshot} reads the arrays from the mapped file instead.</p>
+ */
+public final class RsIdIndex {
+
+    public static final int MISSING = -1;
+
+    /**
+     * Chromosomes with rsids in the mapping.
+     */
+    public static final int CHROMOSOMES = 22;
+
+    /**
+     * False positive rate of the filter of the rsids, unless another one is given. A lookup in the hash table reads
+     * about one cache line, as a check of the filter does, so the filter does not make the misses cheaper and is off
+     * by default; it can be turned on to count the misses of a workload.
+     */
+    public static final double DEFAULT_FALSE_POSITIVE_RATE = 1;
+
+    private static final long EMPTY = -1L;
+    private static final int LAST = Integer.MIN_VALUE;
+
+    private static final Map<Mapping, RsIdIndex> indices = Collections.synchronizedMap(new WeakHashMap<>());
+
+    private final int shift;
+    private final LongBuffer keys;
+    private final IntBuffer starts;
+    private final ByteBuffer entryChrs;
+    private final IntBuffer entryProteins;
+    private final String[] proteins;
+
+    private final double falsePositiveRate;
+    private volatile KeyFilter filter;
+
+    /**
+     * @param keys The rsid in each slot of the hash table, a power of two of slots
+     */
+    RsIdIndex(LongBuffer keys, IntBuffer starts, ByteBuffer entryChrs, IntBuffer entryProteins, String[] proteins) {
+        this(keys, starts, entryChrs, entryProteins, proteins, DEFAULT_FALSE_POSITIVE_RATE);
+    }
+
+    RsIdIndex(LongBuffer keys, IntBuffer starts, ByteBuffer entryChrs, IntBuffer entryProteins, String[] proteins, double falsePositiveRate) {
+        if (!(falsePositiveRate > 0 && falsePositiveRate <= 1)) {
+            throw new IllegalArgumentException("The false positive rate must be greater than 0 and at most 1.");
+        }
+        this.falsePositiveRate = falsePositiveRate;
+        this.shift = 64 - Integer.numberOfTrailingZeros(keys.limit());
+        this.keys = keys;
+        this.starts = starts;
+        this.entryChrs = entryChrs;
+        this.entryProteins = entryProteins;
+        this.proteins = proteins;
+    }
+
+    RsIdIndex(ChromosomeTableSource<String> source) {
+        this(source, DEFAULT_FALSE_POSITIVE_RATE);
+    }
+
+    RsIdIndex(ChromosomeTableSource<String> source, double falsePositiveRate) {
+        this(build(source), falsePositiveRate);
+    }
+
+    private RsIdIndex(RsIdIndex built, double falsePositiveRate) {
+        this(built.keys, built.starts, built.entryChrs, built.entryProteins, built.proteins, falsePositiveRate);
+    }
+
+    private static RsIdIndex build(ChromosomeTableSource<String> source) {
+
+        // Reads each table once into primitive arrays, so only one table is in memory at a time when the source does
+        // not keep them: the rsids, the number of proteins of each rsid and the proteins of all the rsids in order
+        long[][] chrKeys = new long[CHROMOSOMES + 1][];
+        int[][] chrCounts = new int[CHROMOSOMES + 1][];
+        int[][] chrProteins = new int[CHROMOSOMES + 1][];
+        Map<String, Integer> proteinIds = new LinkedHashMap<>();
+        long maxKeys = 0;
+        int entries = 0;
+        for (int chr = 1; chr <= CHROMOSOMES; chr++) {
+            Multimap<String, String> rsidsToProteins = source.load(chr);
+            long[] keys = new long[rsidsToProteins.keySet().size()];
+            int[] counts = new int[keys.length];
+            int[] proteins = new int[rsidsToProteins.size()];
+            int k = 0;
+            int p = 0;
+            for (Map.Entry<String, Collection<String>> rsid : rsidsToProteins.asMap().entrySet()) {
+                long key = parseKey(rsid.getKey());
+                if (key == EMPTY) {
+                    continue;
+                }
+                keys[k] = key;
+                counts[k++] = rsid.getValue().size();
+                for (String protein : rsid.getValue()) {
+                    proteins[p++] = proteinIds.computeIfAbsent(protein, name -> proteinIds.size());
+                }
+            }
+            chrKeys[chr] = Arrays.copyOf(keys, k);
+            chrCounts[chr] = Arrays.copyOf(counts, k);
+            chrProteins[chr] = Arrays.copyOf(proteins, p);
+            maxKeys += k;
+            entries += p;
+        }
+
+        // At most half of the slots are used, so the probe sequences stay short
+        int capacity = Integer.highestOneBit((int) Math.max(2L, Math.min(1L << 29, maxKeys * 2L - 1L))) << 1;
+        int shift = 64 - Integer.numberOfTrailingZeros(capacity);
+        long[] keys = new long[capacity];
+        int[] starts = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+
+        // Counts the entries of each rsid
+        for (int chr = 1; chr <= CHROMOSOMES; chr++) {
+            for (int k = 0; k < chrKeys[chr].length; k++) {
+                starts[insert(keys, shift, chrKeys[chr][k])] += chrCounts[chr][k];
+            }
+        }
+
+        // Turns the counts into the end of the entries of each slot, and marks the last entry of each rsid
+        byte[] entryChrs = new byte[entries];
+        int[] entryProteins = new int[entries];
+        int end = 0;
+        for (int slot = 0; slot < capacity; slot++) {
+            int count = starts[slot];
+            end += count;
+            starts[slot] = end;
+            if (count > 0) {
+                entryProteins[end - 1] = LAST;
+            }
+        }
+
+        // Fills the entries backwards, which leaves the start of the entries of each slot
+        for (int chr = CHROMOSOMES; chr >= 1; chr--) {
+            int p = chrProteins[chr].length;
+            for (int k = chrKeys[chr].length - 1; k >= 0; k--) {
+                int slot = insert(keys, shift, chrKeys[chr][k]);
+                for (int i = 0; i < chrCounts[chr][k]; i++) {
+                    int entry = --starts[slot];
+                    entryChrs[entry] = (byte) chr;
+                    entryProteins[entry] |= chrProteins[chr][--p];
+                }
+            }
+            chrKeys[chr] = null;
+            chrCounts[chr] = null;
+            chrProteins[chr] = null;
+        }
+        return new RsIdIndex(LongBuffer.wrap(keys), IntBuffer.wrap(starts), ByteBuffer.wrap(entryChrs), IntBuffer.wrap(entryProteins),
+                proteinIds.keySet().toArray(new String[0]));
+    }
+
+    /*
+     * Reads the tables from the mapping. The index is a value of the weak map of indices, so it must not keep the
+     * mapping reachable.
+     */
+    private static ChromosomeTableSource<String> mappingSource(Mapping mapping) {
+        WeakReference<Mapping> reference = new WeakReference<>(mapping);
+        return chr -> {
+            Mapping source = reference.get();
+            if (source == null) {
+                throw new IllegalStateException("The mapping of the index is no longer in use.");
+            }
+            return source.getRsidsToProteins(chr);
+        };
+    }
+
+    /**
+     * Gets the index of the mapping. The index is created on the first call and reused while the mapping is in use.
+     * A new index reads the tables from the mapping.
+     */
+    public static RsIdIndex of(Mapping mapping) {
+        return indices.computeIfAbsent(mapping, key -> new RsIdIndex(mappingSource(key)));
+    }
+
+    /**
+     * Gets the index of the mapping. The source is used only if this call creates the index, so it must be given before
+     * the first search of the mapping. With {@link ChromosomeTableSource#rsIdFiles(String)} the tables are read from
+     * the files one chromosome at a time and only the index stays in memory.
+     */
+    public static RsIdIndex of(Mapping mapping, ChromosomeTableSource<String> source) {
+        return indices.computeIfAbsent(mapping, key -> new RsIdIndex(source));
+    }
+
+    /**
+     * Gets the index of the mapping, like {@link #of(Mapping, ChromosomeTableSource)}.
+     *
+     * @param falsePositiveRate False positive rate of the filter of the rsids, see {@link #getFilter()}
+     */
+    public static RsIdIndex of(Mapping mapping, ChromosomeTableSource<String> source, double falsePositiveRate) {
+        return indices.computeIfAbsent(mapping, key -> new RsIdIndex(source, falsePositiveRate));
+    }
+
+    /**
+     * Gets the index of the mapping. If this call creates the index, it reads the arrays from the mapped snapshot.
+     */
+    public static RsIdIndex of(Mapping mapping, ReferenceSnapshot snapshot) {
+        return indices.computeIfAbsent(mapping, key -> snapshot.getRsIds());
+    }
+
+    /**
+     * Gets the number of an rsid, without creating objects.
+     *
+     * @param rsid The identifier, like "rs12345"
+     * @return The number of the rsid, or -1 if it is not "rs" followed by digits or does not fit in a long
+     */
+    public static long parseKey(CharSequence rsid) {
+        if (rsid.length() < 3 || rsid.charAt(0) != 'r' || rsid.charAt(1) != 's') {
+            return EMPTY;
+        }
+        long key = 0;
+        for (int i = 2; i < rsid.length(); i++) {
+            char c = rsid.charAt(i);
+            if (c < '0' || c > '9' || key > (Long.MAX_VALUE - (c - '0')) / 10) {
+                return EMPTY;
+            }
+            key = key * 10 + (c - '0');
+        }
+        return key;
+    }
+
+    private static int hash(long key, int shift) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> shift);
+    }
+
+    /*
+     * Gets the slot of the key, taking an empty slot if the key is not in the table.
+     */
+    private static int insert(long[] keys, int shift, long key) {
+        int mask = keys.length - 1;
+        int slot = hash(key, shift);
+        while (keys[slot] != EMPTY && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        return slot;
+    }
+
+    private int slot(long key) {
+        int mask = keys.limit() - 1;
+        int slot = hash(key, shift);
+        long slotKey;
+        while ((slotKey = keys.get(slot)) != EMPTY) {
+            if (slotKey == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return MISSING;
+    }
+
+    /**
+     * @return The first entry of the rsid, or {@link #MISSING} if the rsid is not in the mapping
+     */
+    public int find(CharSequence rsid) {
+        long key = parseKey(rsid);
+        if (key == EMPTY) {
+            return MISSING;
+        }
+        KeyFilter filter = getFilter();
+        if (!filter.mightContain(key)) {
+            return MISSING;
+        }
+        int slot = slot(key);
+        if (slot == MISSING) {
+            filter.recordFalsePositive();
+            return MISSING;
+        }
+        return starts.get(slot);
+    }
+
+    /**
+     * Gets the filter of the rsids, checked by {@link #find(CharSequence)} before the hash table. The filter is created
+     * the first time it is requested, from the keys of the hash table.
+     */
+    public KeyFilter getFilter() {
+        KeyFilter result = filter;
+        if (result == null) {
+            synchronized (this) {
+                result = filter;
+                if (result == null) {
+                    int count = 0;
+                    for (int slot = 0; slot < keys.limit(); slot++) {
+                        count += keys.get(slot) == EMPTY ? 0 : 1;
+                    }
+                    result = KeyFilter.create(count, falsePositiveRate);
+                    if (result != KeyFilter.ALL) {
+                        for (int slot = 0; slot < keys.limit(); slot++) {
+                            long key = keys.get(slot);
+                            if (key != EMPTY) {
+                                result.add(key);
+                            }
+                        }
+                    }
+                    filter = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return The next entry of the same rsid, or {@link #MISSING} after the last one
+     */
+    public int next(int entry) {
+        return entryProteins.get(entry) < 0 ? MISSING : entry + 1;
+    }
+
+    public int getChr(int entry) {
+        return entryChrs.get(entry);
+    }
+
+    public String getProtein(int entry) {
+        return proteins[entryProteins.get(entry) & ~LAST];
+    }
+
+    /**
+     * @return Number of (rsid, protein) entries of the index
+     */
+    public int size() {
+        return entryProteins.limit();
+    }
+
+    /**
+     * @return Approximate number of bytes used by the index, without the protein names
+     */
+    public long getSizeInBytes() {
+        return 16L + 4 * 16L + 8L * keys.limit() + 4L * starts.limit() + entryChrs.limit() + 4L * entryProteins.limit();
+    }
+
+    LongBuffer getKeys() {
+        return keys.duplicate();
+    }
+
+    IntBuffer getStarts() {
+        return starts.duplicate();
+    }
+
+    ByteBuffer getEntryChrs() {
+        return entryChrs.duplicate();
+    }
+
+    IntBuffer getEntryProteins() {
+        return entryProteins.duplicate();
+    }
+
+    String[] getProteins() {
+        return proteins;
+    }
+}
@@ -0,0 +1,136 @@
+package no.uib.pap.methods.reference;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import no.uib.pap.model.Mapping;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A {@link ReferenceSnapshot} in a shared memory folder, attached read-only by all the processes of a host.
+ * <p>
+ * <p>The first process that attaches to the store of a resources folder writes the snapshot, while holding a lock
+ * on the store, and the others wait for it and map the same file. On Linux the default folder is /dev/shm, so the
+ * snapshot is kept in memory once for the whole host: the indices of each process read the mapped pages and only the
+ * protein names are copied to the heap of each process.</p>
+ * <p>
+ * <p>The name of the snapshot has a fingerprint of the names, sizes and modification times of the chromosome tables,
+ * so a changed resources folder gets a new snapshot instead of a stale one. The snapshots of older fingerprints are
+ * left in the folder, since other processes can still be using them.</p>
+ * <pre>
+ * SharedReferenceStore store = SharedReferenceStore.attach("resources");
+ * store.use(mapping);
+ * Search.searchWithRsId(input, mapping, false);
+ * </pre>
+ */
+public final class SharedReferenceStore {
+
+    /**
+     * Folder of the stores when it exists, a memory file system on Linux.
+     */
+    public static final Path SHARED_MEMORY = Paths.get("/dev/shm");
+
+    private static final Object LOCAL_LOCK = new Object();
+
+    private final Path file;
+    private final ReferenceSnapshot snapshot;
+
+    private SharedReferenceStore(Path file, ReferenceSnapshot snapshot) {
+        this.file = file;
+        this.snapshot = snapshot;
+    }
+
+    /**
+     * @return {@link #SHARED_MEMORY} if it exists, the temporary folder of the system if not
+     */
+    public static Path getDefaultDirectory() {
+        return Files.isDirectory(SHARED_MEMORY) ? SHARED_MEMORY : Paths.get(System.getProperty("java.io.tmpdir"));
+    }
+
+    /**
+     * Attaches to the store of the resources folder in the default folder, creating it if needed.
+     */
+    public static SharedReferenceStore attach(String resources) throws IOException {
+        return attach(resources, getDefaultDirectory());
+    }
+
+    /**
+     * Attaches to the store of the resources folder, creating it if needed. The tables are read on one thread per
+     * processor, at most one table per thread ahead of the one written, see {@link TableLoader#queueAll(java.util.Collection)}.
+     *
+     * @param resources Folder with the serialized chromosome tables
+     * @param directory Folder of the store
+     */
+    public static SharedReferenceStore attach(String resources, Path directory) throws IOException {
+        Path file = directory.resolve("pathwaymatcher-reference-" + fingerprint(resources) + ".snapshot");
+        try (TableLoader loader = new TableLoader(resources, Runtime.getRuntime().availableProcessors())) {
+            return attach(file, () -> {
+                loader.queueAll(TableLoader.chromosomeTables(TableLoader.CHR_BP_TABLE));
+                loader.queueAll(TableLoader.chromosomeTables(TableLoader.RSID_TABLE));
+                ReferenceSnapshot.write(loader.chrBpTables(), loader.rsIdTables(), file);
+            });
+        }
+    }
+
+    @FunctionalInterface
+    interface SnapshotWriter {
+        void write() throws IOException;
+    }
+
+    /**
+     * Maps the snapshot file, after writing it if it does not exist. The file lock keeps the other processes from
+     * writing the same snapshot, and the local lock does the same for the other threads of this process, which the
+     * file lock does not.
+     */
+    static SharedReferenceStore attach(Path file, SnapshotWriter writer) throws IOException {
+        Path lock = file.resolveSibling(file.getFileName() + ".lock");
+        synchronized (LOCAL_LOCK) {
+            try (FileChannel channel = FileChannel.open(lock, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                 FileLock ignored = channel.lock()) {
+                if (!Files.exists(file)) {
+                    writer.write();
+                }
+                return new SharedReferenceStore(file, ReferenceSnapshot.open(file));
+            }
+        }
+    }
+
+    static String fingerprint(String resources) {
+        Hasher hasher = Hashing.sha256().newHasher();
+        hasher.putInt(ReferenceSnapshot.VERSION);
+        for (String table : new String[]{TableLoader.CHR_BP_TABLE, TableLoader.RSID_TABLE}) {
+            for (String name : TableLoader.chromosomeTables(table)) {
+                File tableFile = new File(resources, name + ".gz");
+                hasher.putString(name, StandardCharsets.UTF_8);
+                hasher.putLong(tableFile.length());
+                hasher.putLong(tableFile.lastModified());
+            }
+        }
+        return hasher.hash().toString().substring(0, 16);
+    }
+
+    /**
+     * Makes the searches of the mapping use the indices of the store. It must be called before the first search of
+     * the mapping, see {@link ChrBpIndex#of(Mapping, ReferenceSnapshot)} and {@link RsIdIndex#of(Mapping, ReferenceSnapshot)}.
+     */
+    public void use(Mapping mapping) {
+        ChrBpIndex.of(mapping, snapshot);
+        RsIdIndex.of(mapping, snapshot);
+    }
+
+    public ReferenceSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+}
@@ -0,0 +1,318 @@
+package no.uib.pap.methods.reference;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.collect.Multimap;
+import com.google.common.io.CountingInputStream;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads the serialized tables of a resources folder concurrently, on a fixed number of threads.
+ * <p>
+ * <p>Each table is in its own gzipped file, so the tables can be inflated and deserialized independently. The tables
+ * are read in the order they are submitted, and {@link #get(String)} waits only for the table it asks for, so a caller
+ * can use the first tables while the next ones are being read. The time and the bytes of each table are kept in its
+ * {@link TableStats}.</p>
+ * <p>
+ * <p>The tables that are used once, like the chromosome tables that are indexed and dropped, are queued with
+ * {@link #queueAll(Collection)} instead of submitted: at most one queued table per thread is read ahead of the ones
+ * taken, and the next one is submitted each time one is taken, so the memory of the tables read but not taken yet is
+ * bounded by the number of threads instead of growing to all of them.</p>
+ * <pre>
+ * try (TableLoader loader = new TableLoader("resources", Runtime.getRuntime().availableProcessors())) {
+ *     loader.submitAll(TableLoader.REFERENCE_TABLES);
+ *     loader.queueAll(TableLoader.chromosomeTables(TableLoader.CHR_BP_TABLE));
+ *     ImmutableSetMultimap&lt;String, String&gt; reactionsToPathways = loader.get("reactionsToPathways");
+ *     ChrBpIndex.of(mapping, loader.chrBpTables(), maxBytes);
+ * }
+ * </pre>
+ */
+public final class TableLoader implements AutoCloseable {
+
+    /**
+     * The tables of the pathways and reactions of the proteins.
+     */
+    public static final List<String> REFERENCE_TABLES = ImmutableList.of(
+            "proteinsToReactions", "reactionsToPathways", "pathwaysToTopLevelPathways", "pathways", "reactions");
+
+    public static final String CHR_BP_TABLE = "chrBpToProteins";
+    public static final String RSID_TABLE = "rsIdsToProteins";
+
+    /**
+     * Time and size of the reading of one table.
+     */
+    public static final class TableStats {
+
+        private final String name;
+        private final long fileBytes;
+        private final long bytes;
+        private final long nanos;
+
+        TableStats(String name, long fileBytes, long bytes, long nanos) {
+            this.name = name;
+            this.fileBytes = fileBytes;
+            this.bytes = bytes;
+            this.nanos = nanos;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return Size of the gzipped file, 0 if there is no file for the table
+         */
+        public long getFileBytes() {
+            return fileBytes;
+        }
+
+        /**
+         * @return Size of the serialized table after inflating the file
+         */
+        public long getBytes() {
+            return bytes;
+        }
+
+        /**
+         * @return Time spent reading the table, from opening the file to the deserialized table
+         */
+        public long getNanos() {
+            return nanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s\t%d ms\t%d bytes\t%d inflated bytes", name, nanos / 1_000_000, fileBytes, bytes);
+        }
+    }
+
+    /*
+     * A table with the stats of its reading.
+     */
+    private static final class Table {
+
+        private final Object value;
+        private final TableStats stats;
+
+        Table(Object value, TableStats stats) {
+            this.value = value;
+            this.stats = stats;
+        }
+    }
+
+    private final String directory;
+    private final int threads;
+    private final ExecutorService executor;
+    private final Map<String, Future<Table>> tables = new LinkedHashMap<>();
+    // Queued tables that are not submitted yet, and the ones submitted from the queue that are not taken yet
+    private final Deque<String> queued = new ArrayDeque<>();
+    private final Set<String> readAhead = new HashSet<>();
+    private final Map<String, TableStats> stats = new LinkedHashMap<>();
+
+    /**
+     * @param directory Folder with the gzipped tables, named as the table with the .gz extension
+     * @param threads   Number of tables read at the same time, and of queued tables read ahead of the ones taken
+     */
+    public TableLoader(String directory, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("The number of threads must be at least 1.");
+        }
+        this.directory = directory;
+        this.threads = threads;
+        AtomicInteger count = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, task -> {
+            Thread thread = new Thread(task, "table-loader-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @return The names of the tables of all the chromosomes, from 1 to {@link ChrBpIndex#CHROMOSOMES}
+     */
+    public static List<String> chromosomeTables(String table) {
+        List<String> names = new ArrayList<>();
+        for (int chr = 1; chr <= ChrBpIndex.CHROMOSOMES; chr++) {
+            names.add(table + chr);
+        }
+        return names;
+    }
+
+    /**
+     * Reads a table on the calling thread.
+     *
+     * @return The deserialized table, or null if there is no file for the table
+     */
+    static Object readTable(File file) {
+        return read(file.getName(), file).value;
+    }
+
+    private static Table read(String name, File file) {
+        long start = System.nanoTime();
+        if (!file.exists()) {
+            return new Table(null, new TableStats(name, 0, 0, System.nanoTime() - start));
+        }
+        try (CountingInputStream inflated = new CountingInputStream(new GZIPInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16), 1 << 16));
+             ObjectInputStream objects = new ObjectInputStream(inflated)) {
+            Object value = objects.readObject();
+            return new Table(value, new TableStats(name, file.length(), inflated.getCount(), System.nanoTime() - start));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read " + file, e);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("Could not read " + file, e);
+        }
+    }
+
+    private File file(String name) {
+        return new File(directory, name + ".gz");
+    }
+
+    /**
+     * Starts reading the table, if it was not submitted before.
+     */
+    public synchronized void submit(String name) {
+        queued.remove(name);
+        if (!tables.containsKey(name)) {
+            tables.put(name, executor.submit(() -> read(name, file(name))));
+        }
+    }
+
+    public void submitAll(Collection<String> names) {
+        for (String name : names) {
+            submit(name);
+        }
+    }
+
+    /**
+     * Queues the tables to be read in order, reading at most one of them per thread ahead of the ones taken with
+     * {@link #take(String)}. A queued table that is asked for before its turn is submitted at once.
+     */
+    public synchronized void queueAll(Collection<String> names) {
+        for (String name : names) {
+            if (!tables.containsKey(name) && !queued.contains(name)) {
+                queued.add(name);
+            }
+        }
+        readAhead();
+    }
+
+    private synchronized void readAhead() {
+        while (readAhead.size() < threads && !queued.isEmpty()) {
+            String name = queued.peek();
+            submit(name);
+            readAhead.add(name);
+        }
+    }
+
+    /**
+     * @return Number of queued tables that are submitted and not taken yet
+     */
+    synchronized int getReadAheadCount() {
+        return readAhead.size();
+    }
+
+    private Table await(Future<Table> table) {
+        try {
+            return table.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while reading the tables.", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Gets the table, submitting it first if needed, and waits until it is read.
+     *
+     * @return The deserialized table, or null if there is no file for the table
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(String name) {
+        Future<Table> future;
+        synchronized (this) {
+            submit(name);
+            future = tables.get(name);
+        }
+        Table table = await(future);
+        synchronized (this) {
+            stats.put(name, table.stats);
+        }
+        return (T) table.value;
+    }
+
+    /**
+     * Gets the table like {@link #get(String)} and releases it, so the loader does not keep it in memory, and submits
+     * the next queued table. If the same table is taken again it is read again.
+     */
+    public <T> T take(String name) {
+        T table = get(name);
+        synchronized (this) {
+            tables.remove(name);
+            readAhead.remove(name);
+            readAhead();
+        }
+        return table;
+    }
+
+    private <K> ChromosomeTableSource<K> chromosomeSource(String table) {
+        return chr -> {
+            Multimap<K, String> value = take(table + chr);
+            return value == null ? ImmutableSetMultimap.of() : value;
+        };
+    }
+
+    /**
+     * @return A source that takes the chrBpToProteins tables from this loader
+     */
+    public ChromosomeTableSource<Long> chrBpTables() {
+        return chromosomeSource(CHR_BP_TABLE);
+    }
+
+    /**
+     * @return A source that takes the rsIdsToProteins tables from this loader
+     */
+    public ChromosomeTableSource<String> rsIdTables() {
+        return chromosomeSource(RSID_TABLE);
+    }
+
+    /**
+     * @return The stats of the tables that were gotten from this loader, in the order they were gotten
+     */
+    public synchronized List<TableStats> getStats() {
+        return new ArrayList<>(stats.values());
+    }
+
+    /**
+     * Stops the threads. The tables that are not read yet are cancelled.
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
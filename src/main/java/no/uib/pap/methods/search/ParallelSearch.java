@@ -0,0 +1,102 @@
+package no.uib.pap.methods.search;
+
+import no.uib.pap.model.InputType;
+import no.uib.pap.model.Mapping;
+import no.uib.pap.model.MatchType;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Consumer;
+
+/**
+ * Runs the searches of {@link Search} on a fork/join pool.
+ * <p>
+ * <p>The input rows are validated on the calling thread. The valid entities are split in chunks and each chunk is
+ * expanded to reactions and pathways in its own partial {@link SearchResult}. The partial results are merged in the
+ * order of the chunks, so the result is the same as the one of the sequential search.</p>
+ */
+public class ParallelSearch {
+
+    /**
+     * Number of input entities expanded by each fork/join task.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 1000;
+
+    public static SearchResult search(List<String> input, InputType inputType, boolean showTopLevelPathways, Mapping mapping) {
+        return search(input, inputType, showTopLevelPathways, mapping, MatchType.SUPERSET, 0L, "");
+    }
+
+    public static SearchResult search(List<String> input, InputType inputType, boolean showTopLevelPathways, Mapping mapping, MatchType matchType, Long margin, String fastaFile) {
+        return search(input, inputType, showTopLevelPathways, mapping, matchType, margin, fastaFile, ForkJoinPool.commonPool(), DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param pool      Pool where the chunks are expanded
+     * @param chunkSize Number of input entities in each chunk
+     */
+    public static SearchResult search(List<String> input, InputType inputType, boolean showTopLevelPathways, Mapping mapping, MatchType matchType, Long margin, String fastaFile, ForkJoinPool pool, int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("The chunk size must be positive.");
+        }
+        return Search.search(input, inputType, showTopLevelPathways, mapping, matchType, margin, fastaFile, pool, chunkSize);
+    }
+
+    /**
+     * Runs {@link Search#searchWithVcf(Path, Mapping, Boolean)} expanding each batch of variants on the pool.
+     *
+     * @param pool      Pool where the chunks are expanded
+     * @param chunkSize Number of variants in each chunk
+     */
+    public static SearchResult searchWithVcf(Path vcfFile, Mapping mapping, boolean showTopLevelPathways, ForkJoinPool pool, int chunkSize) throws IOException {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("The chunk size must be positive.");
+        }
+        return Search.searchWithVcf(vcfFile, mapping, showTopLevelPathways, pool, chunkSize);
+    }
+
+    /**
+     * Applies the segments to the result. Without a pool, or with a single segment, they are applied directly in order.
+     * Otherwise each segment fills a partial result in a fork/join task and the partial results are merged in order.
+     */
+    static void expand(SearchResult result, List<Consumer<SearchResult>> segments, ForkJoinPool pool) {
+        if (pool == null || segments.size() < 2) {
+            for (Consumer<SearchResult> segment : segments) {
+                segment.accept(result);
+            }
+            return;
+        }
+        result.merge(pool.invoke(new ExpandTask(segments, 0, segments.size())));
+    }
+
+    private static class ExpandTask extends RecursiveTask<SearchResult> {
+
+        private final List<Consumer<SearchResult>> segments;
+        private final int from;
+        private final int to;
+
+        ExpandTask(List<Consumer<SearchResult>> segments, int from, int to) {
+            this.segments = segments;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected SearchResult compute() {
+            if (to - from == 1) {
+                SearchResult partial = new SearchResult(InputType.UNKNOWN, false);
+                segments.get(from).accept(partial);
+                return partial;
+            }
+            int middle = (from + to) >>> 1;
+            ExpandTask left = new ExpandTask(segments, from, middle);
+            left.fork();
+            SearchResult right = new ExpandTask(segments, middle, to).compute();
+            SearchResult merged = left.join();
+            merged.merge(right);
+            return merged;
+        }
+    }
+}
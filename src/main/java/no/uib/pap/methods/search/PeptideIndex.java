@@ -0,0 +1,34 @@
+package no.uib.pap.methods.search;
+
+import org.apache.commons.lang3.tuple.Pair;
+
+import java.util.List;
+
+/**
+ * An index of the protein sequences of a FASTA file that finds the proteins that contain a peptide.
+ * <p>
+ * <p>The peptide mapping of {@link PeptideMatcher} uses an index of the type set with
+ * {@link PeptideMatcher#setPeptideIndexType(Type)}. The suffix array is kept on disk between processes, the FM-index
+ * is built in each one.</p>
+ */
+public interface PeptideIndex {
+
+    enum Type {
+        /**
+         * The FM-index of compomics utilities, which matches the peptides as set in the sequence matching preferences
+         * of the {@link PeptideMatcher}.
+         */
+        FM_INDEX,
+        /**
+         * The {@link SuffixArrayPeptideIndex}, which matches the exact peptide with I and L as the same amino acid,
+         * without the sequence factory of compomics utilities.
+         */
+        SUFFIX_ARRAY
+    }
+
+    /**
+     * @return The accession of each protein that contains the peptide and the position of the peptide in it, from 0,
+     * once for each occurrence
+     */
+    List<Pair<String, Integer>> getProteinMapping(String peptideSequence);
+}
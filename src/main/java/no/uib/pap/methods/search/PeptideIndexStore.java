@@ -0,0 +1,210 @@
+package no.uib.pap.methods.search;
+
+import com.google.common.hash.Hashing;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The peptide mapping indices built from FASTA files, kept on disk so that a FASTA file is indexed once for all the
+ * processes that search peptides with it.
+ * <p>
+ * <p>The name of the file of an index has a hash of the content of the FASTA file, so an edited FASTA file gets a new
+ * index instead of a stale one. The first process that needs the index of a FASTA file builds and writes it, while
+ * holding a lock on the file, and the others wait for it and read it. An index that can not be serialized, or a file
+ * that can not be read, for example one written by another version of the index class, is built again.</p>
+ * <p>
+ * <p>Only a folder that no other user can write to is used, as the files are deserialized, and only the class of the
+ * index, strings and arrays of them and of primitives are read from them. If the folder can not be used, the index is
+ * built in the process without it.</p>
+ */
+final class PeptideIndexStore {
+
+    private static final Object LOCAL_LOCK = new Object();
+
+    // Classes that the fields of the indices can have, besides the class of the index
+    private static final Set<Class<?>> FIELD_CLASSES = new HashSet<>(Arrays.asList(String.class, String[].class,
+            boolean[].class, byte[].class, char[].class, short[].class, int[].class, long[].class, float[].class, double[].class));
+
+    @FunctionalInterface
+    interface IndexBuilder<T> {
+        T build() throws IOException, ClassNotFoundException;
+    }
+
+    private PeptideIndexStore() {
+    }
+
+    /**
+     * @return The cache folder of the user, created with {@link #getOrBuild(Path, String, Class, IndexBuilder)} when it
+     * does not exist
+     */
+    static Path getDefaultDirectory() {
+        return Paths.get(System.getProperty("user.home"), ".cache", "pathwaymatcher");
+    }
+
+    /**
+     * Creates the folder, only for its owner, if it does not exist, and checks that no other user can write to it.
+     */
+    static void createPrivateDirectory(Path directory) throws IOException {
+        if (!directory.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+            Files.createDirectories(directory);
+            return;
+        }
+        if (!Files.isDirectory(directory)) {
+            Files.createDirectories(directory, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+        }
+        PosixFileAttributes attributes = Files.readAttributes(directory, PosixFileAttributes.class);
+        Set<PosixFilePermission> permissions = attributes.permissions();
+        if (!attributes.owner().getName().equals(System.getProperty("user.name"))
+                || permissions.contains(PosixFilePermission.GROUP_WRITE) || permissions.contains(PosixFilePermission.OTHERS_WRITE)) {
+            throw new IOException("The folder " + directory + " of the peptide indices can be written by other users.");
+        }
+    }
+
+    /**
+     * @return A hash of the content of the file
+     */
+    static String fingerprint(Path fastaFile) throws IOException {
+        return com.google.common.io.Files.asByteSource(fastaFile.toFile()).hash(Hashing.sha256()).toString().substring(0, 16);
+    }
+
+    static Path file(Path directory, String fingerprint) {
+        return directory.resolve("pathwaymatcher-peptide-index-" + fingerprint + ".ser");
+    }
+
+    /**
+     * Reads the index of the fingerprint from the folder, after building and writing it if the folder does not have
+     * it. The file lock keeps the other processes from building the same index, and the local lock does the same for
+     * the other threads of this process, which the file lock does not. The exceptions of the builder are thrown, and
+     * the ones of the folder only make the index be built without it.
+     *
+     * @param type The class of the index, the only one besides strings and arrays read from the file
+     */
+    static <T> T getOrBuild(Path directory, String fingerprint, Class<T> type, IndexBuilder<T> builder) throws IOException, ClassNotFoundException {
+        Path file = file(directory, fingerprint);
+        synchronized (LOCAL_LOCK) {
+            FileLock lock = lock(directory, file.resolveSibling(file.getFileName() + ".lock"));
+            if (lock == null) {
+                return builder.build();
+            }
+            try {
+                T index = read(file, type);
+                if (index == null) {
+                    index = builder.build();
+                    write(index, file);
+                }
+                return index;
+            } finally {
+                // Closing the channel releases the lock
+                lock.channel().close();
+            }
+        }
+    }
+
+    /**
+     * @return The lock of the file, or null if the folder or the file can not be used
+     */
+    private static FileLock lock(Path directory, Path lockFile) {
+        FileChannel channel = null;
+        try {
+            createPrivateDirectory(directory);
+            channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            return channel.lock();
+        } catch (IOException e) {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                    // The lock was not taken
+                }
+            }
+            return null;
+        }
+    }
+
+    /*
+     * Reads only the class of the index, and the strings and arrays of its fields, so a file with other classes is
+     * rejected before any of them is created.
+     */
+    private static final class IndexInputStream extends ObjectInputStream {
+
+        private final Class<?> type;
+
+        IndexInputStream(InputStream input, Class<?> type) throws IOException {
+            super(input);
+            this.type = type;
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass description) throws IOException, ClassNotFoundException {
+            Class<?> resolved = super.resolveClass(description);
+            if (resolved != type && !FIELD_CLASSES.contains(resolved)) {
+                throw new InvalidClassException(description.getName(), "Not a class of a peptide index.");
+            }
+            return resolved;
+        }
+    }
+
+    /**
+     * @return The index in the file, or null if there is none or it can not be read
+     */
+    static <T> T read(Path file, Class<T> type) {
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try (ObjectInputStream input = new IndexInputStream(new BufferedInputStream(Files.newInputStream(file)), type)) {
+            Object index = input.readObject();
+            return type.isInstance(index) ? type.cast(index) : null;
+        } catch (IOException | ClassNotFoundException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Writes the index if it can be serialized. It is written to a temporary file and moved, so a process that stops
+     * while writing does not leave a partial index.
+     *
+     * @return True if the index was written
+     */
+    static boolean write(Object index, Path file) {
+        if (!(index instanceof Serializable)) {
+            return false;
+        }
+        Path partial = file.resolveSibling(file.getFileName() + ".partial");
+        try {
+            try (ObjectOutputStream output = new ObjectOutputStream(new BufferedOutputStream(Files.newOutputStream(partial)))) {
+                output.writeObject(index);
+            }
+            Files.move(partial, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (IOException e) {
+            // An index with fields that can not be serialized, or that does not fit on the disk, is built again next time
+            try {
+                Files.deleteIfExists(partial);
+            } catch (IOException ignored) {
+                // Written again over it next time
+            }
+            return false;
+        }
+    }
+}
@@ -16,10 +16,14 @@ import org.apache.commons.lang3.tuple.Pair;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Set;
 
 public class PeptideMatcher {
@@ -108,10 +112,15 @@ public class PeptideMatcher {
 	private static SequenceFactory sequenceFactory = SequenceFactory.getInstance();
 
 	/**
-	 * The peptide mapper is an index that can retrieve the proteins in the sequence
-	 * factory that contain a given sequence.
+	 * The peptide mapper is an index that can retrieve the proteins of the fasta
+	 * file that contain a given sequence.
 	 */
-	private static FMIndex peptideMapper;
+	private static PeptideIndex peptideMapper;
+
+	/**
+	 * The type of index built for the next fasta file.
+	 */
+	private static PeptideIndex.Type peptideIndexType = PeptideIndex.Type.FM_INDEX;
 
 	/**
 	 * A waiting handler displays progress to the user and allows cancelling
@@ -132,25 +141,143 @@ public class PeptideMatcher {
 	 */
 	private static Double mzTolerance;
 
+	/**
+	 * Hash of the content of the FASTA file of the peptide mapper, null before the first one is loaded.
+	 */
+	private static String peptideMapperFingerprint;
+
+	/**
+	 * Path, size and modification time of the FASTA file of the peptide mapper, so
+	 * that the same file is not hashed again.
+	 */
+	private static String peptideMapperFile;
+
+	/**
+	 * Folder where the peptide mappers are kept between processes, or null to build them in each process.
+	 */
+	private static Path indexDirectory = PeptideIndexStore.getDefaultDirectory();
+
 	/**
 	 * Loads a protein sequence database file in the fasta format into the sequence
-	 * factory and peptide mapping index.
+	 * factory.
 	 *
 	 * @param fastaFile
 	 *            a file containing the protein sequences in the fasta format
 	 */
 	private static void loadFastaFile(File fastaFile) throws IOException, ClassNotFoundException {
 		sequenceFactory.loadFastaFile(fastaFile, waitingHandler);
-		peptideMapper = new FMIndex(waitingHandler, true, null, PeptideVariantsPreferences.getNoVariantPreferences());
 	}
 
-	public static Boolean initializePeptideMapper(String fastaFile) {
+	/**
+	 * The FM-index of the proteins in the sequence factory. The FM-index can not be
+	 * serialized, so it is built in each process.
+	 */
+	private static final class FMIndexPeptideIndex implements PeptideIndex {
+
+		private final FMIndex fmIndex;
+
+		FMIndexPeptideIndex(FMIndex fmIndex) {
+			this.fmIndex = fmIndex;
+		}
+
+		@Override
+		public List<Pair<String, Integer>> getProteinMapping(String peptideSequence) {
+			List<Pair<String, Integer>> mappings = new ArrayList<>();
+			for (PeptideProteinMapping peptideProteinMapping : fmIndex.getProteinMapping(peptideSequence,
+					sequenceMatchingPreferences)) {
+				mappings.add(
+						new MutablePair<>(peptideProteinMapping.getProteinAccession(), peptideProteinMapping.getIndex()));
+			}
+			return mappings;
+		}
+	}
+
+	private static PeptideIndex buildPeptideMapper(PeptideIndex.Type type, Path fastaFile) throws IOException {
+		if (type == PeptideIndex.Type.SUFFIX_ARRAY) {
+			return SuffixArrayPeptideIndex.of(fastaFile);
+		}
+		// peptideMapper = new FMIndex(waitingHandler, true, new PtmSettings(), new
+		// PeptideVariantsPreferences(), mzTolerance);
+		return new FMIndexPeptideIndex(
+				new FMIndex(waitingHandler, true, new PtmSettings(), new PeptideVariantsPreferences()));
+	}
+
+	/**
+	 * Builds an index of the fasta file, without keeping it as the peptide mapper.
+	 * The FM-index needs the fasta file in the sequence factory.
+	 */
+	static PeptideIndex buildPeptideIndex(PeptideIndex.Type type, Path fastaFile)
+			throws IOException, ClassNotFoundException {
+		if (type == PeptideIndex.Type.FM_INDEX) {
+			loadFastaFile(fastaFile.toFile());
+		}
+		return buildPeptideMapper(type, fastaFile);
+	}
+
+	/**
+	 * Sets the type of index used to map the peptides of the next fasta file loaded
+	 * with {@link #initializePeptideMapper(String)}, or of the same one again. By
+	 * default it is the FM-index of compomics utilities.
+	 */
+	public static synchronized void setPeptideIndexType(PeptideIndex.Type type) {
+		if (type == null) {
+			throw new IllegalArgumentException("The peptide index type must not be null.");
+		}
+		if (type != peptideIndexType) {
+			peptideIndexType = type;
+			peptideMapperFingerprint = null;
+			peptideMapperFile = null;
+		}
+	}
+
+	/**
+	 * Sets the folder where the peptide mappers are written after they are built and read by the next processes that
+	 * load the same FASTA file. By default it is the cache folder of the user, which is only used if no other user
+	 * can write to it.
+	 *
+	 * @param directory
+	 *            The folder, or null to build the peptide mapper in each process
+	 */
+	public static synchronized void setIndexDirectory(Path directory) {
+		indexDirectory = directory;
+	}
+
+	/**
+	 * Loads the FASTA file and its peptide mapper. The peptide mapper stays in memory, so the next calls with a file of
+	 * the same content return at once, and it is read from the index folder if another process already built it. The
+	 * content is only hashed again if the path, the size or the modification time of the file changed.
+	 */
+	public static synchronized Boolean initializePeptideMapper(String fastaFile) {
 
 		mzTolerance = 0.5;
 
 		try {
+			Path fastaPath = Paths.get(fastaFile);
+			String file = fastaPath.toAbsolutePath() + ":" + Files.size(fastaPath) + ":"
+					+ Files.getLastModifiedTime(fastaPath).toMillis();
+			if (file.equals(peptideMapperFile)) {
+				return true;
+			}
+			String fingerprint = PeptideIndexStore.fingerprint(fastaPath);
+			if (fingerprint.equals(peptideMapperFingerprint)) {
+				peptideMapperFile = file;
+				return true;
+			}
 			System.out.println("Loading protein sequences...");
-			loadFastaFile(new File(fastaFile));
+			PeptideIndex.Type type = peptideIndexType;
+			if (type == PeptideIndex.Type.FM_INDEX) {
+				loadFastaFile(fastaPath.toFile());
+			}
+			// Only the suffix array can be kept on disk
+			if (indexDirectory == null || type != PeptideIndex.Type.SUFFIX_ARRAY) {
+				peptideMapper = buildPeptideMapper(type, fastaPath);
+			} else {
+				String key = type.name().toLowerCase(Locale.ROOT) + "-" + fingerprint;
+				peptideMapper = PeptideIndexStore.getOrBuild(indexDirectory, key, SuffixArrayPeptideIndex.class,
+						() -> SuffixArrayPeptideIndex.of(fastaPath));
+			}
+			peptideMapperFingerprint = fingerprint;
+			peptideMapperFile = file;
 		} catch (ClassNotFoundException ex) {
 			System.out.println("Fasta file for peptide mapping was not found."); // TODO Send proper error
 			System.exit(1);
@@ -159,33 +286,18 @@ public class PeptideMatcher {
 			System.out.println(ex.getMessage());
 			System.exit(1);
 		}
-
-		// peptideMapper = new FMIndex(waitingHandler, true, new PtmSettings(), new
-		// PeptideVariantsPreferences(), mzTolerance);
-		peptideMapper = new FMIndex(waitingHandler, true, new PtmSettings(), new PeptideVariantsPreferences());
 		return true;
 	}
 
 	public static ArrayList<String> getPeptideMapping(String peptideSequence) {
 		ArrayList<String> uniprotList = new ArrayList<String>(8);
-		ArrayList<PeptideProteinMapping> peptideProteinMappings = new ArrayList<PeptideProteinMapping>();
-
-		peptideProteinMappings = peptideMapper.getProteinMapping(peptideSequence, sequenceMatchingPreferences);
-		for (PeptideProteinMapping peptideProteinMapping : peptideProteinMappings) {
-			uniprotList.add(peptideProteinMapping.getProteinAccession());
+		for (Pair<String, Integer> peptideProteinMapping : peptideMapper.getProteinMapping(peptideSequence)) {
+			uniprotList.add(peptideProteinMapping.getLeft());
 		}
 		return uniprotList;
 	}
 
 	public static ArrayList<Pair<String, Integer>> getPeptideMappingWithIndex(String peptideSequence) {
-		ArrayList<Pair<String, Integer>> uniprotList = new ArrayList<Pair<String, Integer>>();
-		ArrayList<PeptideProteinMapping> peptideProteinMappings = new ArrayList<PeptideProteinMapping>();
-
-		peptideProteinMappings = peptideMapper.getProteinMapping(peptideSequence, sequenceMatchingPreferences);
-		for (PeptideProteinMapping peptideProteinMapping : peptideProteinMappings) {
-			uniprotList.add(
-					new MutablePair<>(peptideProteinMapping.getProteinAccession(), peptideProteinMapping.getIndex()));
-		}
-		return uniprotList;
+		return new ArrayList<>(peptideMapper.getProteinMapping(peptideSequence));
 	}
 }
@@ -0,0 +1,117 @@
+package no.uib.pap.methods.search;
+
+import no.uib.pap.methods.matching.ProteoformMatchTable;
+import no.uib.pap.methods.reference.Closure;
+import no.uib.pap.methods.reference.MappingView;
+import no.uib.pap.model.Mapping;
+import no.uib.pap.model.Proteoform;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * The results of a proteoform search with every margin from 0 to a largest one, made by
+ * {@link Search#searchWithProteoformMargins(java.util.List, Mapping, Boolean, no.uib.pap.model.MatchType, long)}.
+ * <p>
+ * <p>The input proteoforms are matched once with the largest margin, keeping the smallest margin of each match. A hit
+ * proteoform is hit from the smallest margin of its matches, and a pathway from the smallest margin of its hit
+ * proteoforms, so the hits of all the margins are counted from one sorted array of margins each. The full result of
+ * a margin is searched from its matches when it is requested.</p>
+ */
+public final class ProteoformMarginSweep {
+
+    private final ProteoformMatchTable matches;
+    private final Mapping mapping;
+    private final Boolean topLevelPathways;
+    private final long maxMargin;
+    private final ForkJoinPool pool;
+    private final int chunkSize;
+
+    // The smallest margin of each hit proteoform and pathway, sorted
+    private final long[] hitProteoformMargins;
+    private final long[] hitPathwayMargins;
+
+    ProteoformMarginSweep(ProteoformMatchTable matches, Mapping mapping, Boolean topLevelPathways, long maxMargin, ForkJoinPool pool, int chunkSize) {
+        this.matches = matches;
+        this.mapping = mapping;
+        this.topLevelPathways = topLevelPathways;
+        this.maxMargin = maxMargin;
+        this.pool = pool;
+        this.chunkSize = chunkSize;
+
+        Map<Proteoform, Long> hitProteoforms = new HashMap<>();
+        for (int match = 0; match < matches.getMatchCount(); match++) {
+            Proteoform refProteoform = matches.getReference(match);
+            if (mapping.getProteoformsToReactions().get(refProteoform).size() > 0) {
+                hitProteoforms.merge(refProteoform, matches.getMargin(match), Math::min);
+            }
+        }
+        MappingView reference = MappingView.of(mapping);
+        Map<Integer, Long> hitPathways = new HashMap<>();
+        for (Map.Entry<Proteoform, Long> hitProteoform : hitProteoforms.entrySet()) {
+            Closure closure = reference.getClosures().get(hitProteoform.getKey());
+            for (int pathway : closure.getPathways()) {
+                hitPathways.merge(pathway, hitProteoform.getValue(), Math::min);
+            }
+        }
+        this.hitProteoformMargins = hitProteoforms.values().stream().mapToLong(Long::longValue).sorted().toArray();
+        this.hitPathwayMargins = hitPathways.values().stream().mapToLong(Long::longValue).sorted().toArray();
+    }
+
+    private static int countUpTo(long[] sortedMargins, long margin) {
+        int low = 0;
+        int high = sortedMargins.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (sortedMargins[middle] <= margin) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private void checkMargin(long margin) {
+        if (margin < 0 || margin > maxMargin) {
+            throw new IllegalArgumentException("The margin must be from 0 to " + maxMargin + ".");
+        }
+    }
+
+    public long getMaxMargin() {
+        return maxMargin;
+    }
+
+    /**
+     * @return The matches with the largest margin, with the smallest margin of each one
+     */
+    public ProteoformMatchTable getMatches() {
+        return matches;
+    }
+
+    /**
+     * @return Number of reference proteoforms with reactions that are matched with the margin
+     */
+    public int getHitProteoformCount(long margin) {
+        checkMargin(margin);
+        return countUpTo(hitProteoformMargins, margin);
+    }
+
+    /**
+     * @return Number of pathways of the reference proteoforms that are matched with the margin
+     */
+    public int getHitPathwayCount(long margin) {
+        checkMargin(margin);
+        return countUpTo(hitPathwayMargins, margin);
+    }
+
+    /**
+     * Gets the full result of the margin, the same as the one of
+     * {@link Search#searchWithProteoform(java.util.List, Mapping, Boolean, no.uib.pap.model.MatchType, Long)} with it.
+     */
+    public SearchResult getResult(long margin) {
+        checkMargin(margin);
+        return Search.searchWithProteoformMatches(matches.atMargin(margin), mapping, topLevelPathways, pool, chunkSize);
+    }
+}
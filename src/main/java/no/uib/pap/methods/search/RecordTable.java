@@ -0,0 +1,111 @@
+package no.uib.pap.methods.search;
+
+import no.uib.pap.methods.reference.Closure;
+import no.uib.pap.methods.reference.MappingView;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Records of a search result, stored with the identifiers of the {@link MappingView} and decoded to strings only when
+ * they are written.
+ * <p>
+ * <p>Each record has the input columns, shared by all the records of the same input entity, followed by the protein,
+ * reaction, pathway and top level pathway identifiers.</p>
+ */
+class RecordTable {
+
+    private String[][] prefixes = new String[16][];
+    private int[] proteins = new int[16];
+    private int[] reactions = new int[16];
+    private int[] pathways = new int[16];
+    private int[] topLevelPathways = new int[16];
+    private int size = 0;
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > proteins.length) {
+            int newLength = Math.max(capacity, proteins.length * 2);
+            prefixes = Arrays.copyOf(prefixes, newLength);
+            proteins = Arrays.copyOf(proteins, newLength);
+            reactions = Arrays.copyOf(reactions, newLength);
+            pathways = Arrays.copyOf(pathways, newLength);
+            topLevelPathways = Arrays.copyOf(topLevelPathways, newLength);
+        }
+    }
+
+    void add(String[] prefix, int protein, int reaction, int pathway, int topLevelPathway) {
+        ensureCapacity(size + 1);
+        prefixes[size] = prefix;
+        proteins[size] = protein;
+        reactions[size] = reaction;
+        pathways[size] = pathway;
+        topLevelPathways[size] = topLevelPathway;
+        size++;
+    }
+
+    /**
+     * Adds one record for each path of the closure, or for each entry of its roll-up to top level pathways.
+     */
+    void addClosure(String[] prefix, int protein, Closure closure, boolean showTopLevelPathways) {
+        if (showTopLevelPathways) {
+            ensureCapacity(size + closure.getRollUpCount());
+            for (int rollUp = 0; rollUp < closure.getRollUpCount(); rollUp++) {
+                int path = closure.getRollUpPath(rollUp);
+                add(prefix, protein, closure.getPathReaction(path), closure.getPathPathway(path), closure.getRollUpTopLevelPathway(rollUp));
+            }
+        } else {
+            ensureCapacity(size + closure.getPathCount());
+            for (int path = 0; path < closure.getPathCount(); path++) {
+                add(prefix, protein, closure.getPathReaction(path), closure.getPathPathway(path), closure.getPathPathway(path));
+            }
+        }
+    }
+
+    /**
+     * Appends the records of the other table after the records of this one.
+     */
+    void addAll(RecordTable other) {
+        ensureCapacity(size + other.size);
+        System.arraycopy(other.prefixes, 0, prefixes, size, other.size);
+        System.arraycopy(other.proteins, 0, proteins, size, other.size);
+        System.arraycopy(other.reactions, 0, reactions, size, other.size);
+        System.arraycopy(other.pathways, 0, pathways, size, other.size);
+        System.arraycopy(other.topLevelPathways, 0, topLevelPathways, size, other.size);
+        size += other.size;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Writes one line per record.
+     *
+     * @param showTopLevelPathways Adds the top level pathway columns
+     */
+    void write(BufferedWriter bw, String separator, MappingView reference, boolean showTopLevelPathways) throws IOException {
+        for (int r = 0; r < size; r++) {
+            for (String value : prefixes[r]) {
+                bw.write(value);
+                bw.write(separator);
+            }
+            bw.write(reference.getProteins().getName(proteins[r]));
+            bw.write(separator);
+            bw.write(reference.getReactions().getName(reactions[r]));
+            bw.write(separator);
+            bw.write(String.valueOf(reference.getReactionDisplayName(reactions[r])));
+            bw.write(separator);
+            bw.write(reference.getPathways().getName(pathways[r]));
+            bw.write(separator);
+            bw.write(String.valueOf(reference.getPathwayDisplayName(pathways[r])));
+            if (showTopLevelPathways) {
+                bw.write(separator);
+                bw.write(reference.getPathways().getName(topLevelPathways[r]));
+                bw.write(separator);
+                bw.write(String.valueOf(reference.getPathwayDisplayName(topLevelPathways[r])));
+            }
+            bw.newLine();
+        }
+    }
+}
@@ -1,13 +1,34 @@
 package no.uib.pap.methods.search;
 
+import com.google.common.collect.ImmutableTable;
 import com.google.common.collect.Lists;
+import com.google.common.collect.SortedSetMultimap;
+import com.google.common.collect.Table;
+import com.google.common.collect.TreeMultimap;
+import no.uib.pap.methods.matching.ProteoformIndex;
+import no.uib.pap.methods.matching.ProteoformMatchCache;
+import no.uib.pap.methods.matching.ProteoformMatchTable;
 import no.uib.pap.methods.matching.ProteoformMatching;
+import no.uib.pap.methods.reference.ChrBpIndex;
+import no.uib.pap.methods.reference.ChromosomeIndex;
+import no.uib.pap.methods.reference.IdDictionary;
+import no.uib.pap.methods.reference.IntervalIndex;
+import no.uib.pap.methods.reference.KeyFilter;
+import no.uib.pap.methods.reference.MappingView;
+import no.uib.pap.methods.reference.RsIdIndex;
 import no.uib.pap.model.*;
 import org.apache.commons.lang3.tuple.Pair;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.text.DecimalFormat;
 import java.text.ParseException;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import static no.uib.pap.methods.search.PeptideMatcher.*;
 import static no.uib.pap.model.Error.ERROR_INITIALIZING_PEPTIDE_MAPPER;
@@ -17,11 +38,36 @@ import static no.uib.pap.model.Warning.*;
 /**
  * Methods to get the reactions and pathways using a list of entities of the accepted input types.
  * <p>
- * <p>These methods must fill the number of reactions and entities found in each pathway in the structure passed as parameter.
- * They also must fill in the set for the hit proteins and hit pathways.</p>
+ * <p>These methods fill the reactions and entities found in each hit pathway of the result. The pathway instances of the
+ * result are created for each query from the {@link MappingView} of the mapping, so the mapping is only read and can be
+ * shared by concurrent searches. They also must fill in the set for the hit proteins and hit pathways.</p>
+ * <p>
+ * <p>From the proteins on, the expansion to reactions and pathways uses the integer identifiers of the
+ * {@link MappingView}, and the reactions and pathways of each protein or proteoform come from a single lookup in its
+ * {@link no.uib.pap.methods.reference.ClosureIndex}. The records keep the identifiers and are decoded when the result
+ * is written.</p>
+ * <p>
+ * <p>Each search validates the input rows sequentially and then expands the valid entities to reactions and pathways
+ * in segments. Without a pool the segments run one after the other on the calling thread; with a pool they run as
+ * fork/join tasks, see {@link ParallelSearch}.</p>
  */
 public class Search {
 
+    /**
+     * Number of variants of a vcf file looked up together by {@link #searchWithVcf(Path, Mapping, Boolean)}.
+     */
+    public static final int VCF_BATCH_SIZE = 1 << 18;
+
+    // Region of a chromosome in the form chr:start-end, with an optional "chr" prefix
+    private static final Pattern REGION = Pattern.compile("^(?:chr)?(\\d{1,2}):(\\d+)-(\\d+)$");
+
+    // Receives the warnings of the rows that are not searched, replaced by the tests to check them
+    static BiConsumer<Warning, Integer> warningHandler = Warning::sendWarning;
+
+    private static void sendWarning(Warning warning, int row) {
+        warningHandler.accept(warning, row);
+    }
+
     public static SearchResult search(List<String> input, InputType inputType, boolean showTopLevelPathways, Mapping mapping) {
         return Search.search(input, inputType, showTopLevelPathways, mapping, MatchType.SUPERSET, 0L, "");
     }
@@ -36,34 +82,42 @@ public class Search {
     }
 
     public static SearchResult search(List<String> input, InputType inputType, boolean showTopLevelPathways, Mapping mapping, MatchType matchType, Long margin, String fastaFile) {
+        return Search.search(input, inputType, showTopLevelPathways, mapping, matchType, margin, fastaFile, null, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Same as {@link #search(List, InputType, boolean, Mapping, MatchType, Long, String)}, expanding the input in
+     * chunks of chunkSize entities on the pool. A null pool runs the search on the calling thread.
+     */
+    static SearchResult search(List<String> input, InputType inputType, boolean showTopLevelPathways, Mapping mapping, MatchType matchType, Long margin, String fastaFile, ForkJoinPool pool, int chunkSize) {
         input.replaceAll(String::trim);
         input = Lists.transform(input, Search::removeUTF8BOM);
         switch (inputType) {
             case GENE:
             case GENES:
-                return Search.searchWithGene(input, mapping, showTopLevelPathways);
+                return Search.searchWithGene(input, mapping, showTopLevelPathways, pool, chunkSize);
             case ENSEMBL:
             case ENSEMBLS:
-                return Search.searchWithEnsembl(input, mapping, showTopLevelPathways);
+                return Search.searchWithEnsembl(input, mapping, showTopLevelPathways, pool, chunkSize);
             case UNIPROT:
             case UNIPROTS:
-                return Search.searchWithUniProt(input, mapping, showTopLevelPathways);
+                return Search.searchWithUniProt(input, mapping, showTopLevelPathways, pool, chunkSize);
             case PROTEOFORM:
             case PROTEOFORMS:
-                return Search.searchWithProteoform(input, mapping, showTopLevelPathways, matchType, margin);
+                return Search.searchWithProteoform(input, mapping, showTopLevelPathways, matchType, margin, pool, chunkSize);
             case RSID:
             case RSIDS:
-                return Search.searchWithRsId(input, mapping, showTopLevelPathways);
+                return Search.searchWithRsId(input, mapping, showTopLevelPathways, pool, chunkSize);
             case CHRBP:
             case CHRBPS:
             case VCF:
-                return Search.searchWithChrBp(input, mapping, showTopLevelPathways);
+                return Search.searchWithChrBp(input, mapping, showTopLevelPathways, pool, chunkSize);
             case PEPTIDE:
             case PEPTIDES:
-                return Search.searchWithPeptide(input, mapping, showTopLevelPathways, fastaFile);
+                return Search.searchWithPeptide(input, mapping, showTopLevelPathways, fastaFile, pool, chunkSize);
             case MODIFIEDPEPTIDE:
             case MODIFIEDPEPTIDES:
-                return Search.searchWithModifiedPeptide(input, mapping, showTopLevelPathways, matchType, margin, fastaFile);
+                return Search.searchWithModifiedPeptide(input, mapping, showTopLevelPathways, matchType, margin, fastaFile, pool, chunkSize);
             default:
                 System.out.println("Input inputType not supported.");
                 System.exit(1);
@@ -72,10 +126,46 @@ public class Search {
         return new SearchResult(InputType.UNKNOWN, false);
     }
 
+    /*
+     * Adds the hit pathways of all the reactions of the protein.
+     * Returns false if the protein does not participate in any reaction.
+     */
+    private static boolean addProteinHits(SearchResult result, MappingView reference, Boolean topLevelPathways, String protein, String... prefix) {
+        int proteinId = reference.getProteins().getId(protein);
+        if (proteinId == IdDictionary.MISSING || reference.getProteinReactions().degree(proteinId) == 0) {
+            return false;
+        }
+        result.addClosureHits(reference, prefix, proteinId, reference.getClosures().get(proteinId), new Proteoform(protein), topLevelPathways);
+        return true;
+    }
+
+    /*
+     * Adds the proteins at the position of the chromosome as matches of the base pair, and their pathways as hits.
+     */
+    private static void addChrBpHits(SearchResult result, MappingView reference, Boolean topLevelPathways, ChromosomeIndex chromosome, int position, int chr, Long bp) {
+        for (int i = chromosome.start(position); i < chromosome.end(position); i++) {
+            String protein = chromosome.getProtein(i);
+            result.getMatchedChrBp().put(chr, bp);
+            result.getInputProteins().add(protein);
+            result.getMatchedProteins().add(protein);
+
+            if (addProteinHits(result, reference, topLevelPathways, protein, String.valueOf(chr), String.valueOf(bp))) {
+                result.getHitProteins().add(protein);
+                result.getHitChrBp().put(chr, bp);
+            }
+        }
+    }
+
     // Fills the hitProteins set to call the next method
     public static SearchResult searchWithUniProt(List<String> input, Mapping mapping, Boolean topLevelPathways) {
+        return searchWithUniProt(input, mapping, topLevelPathways, null, Integer.MAX_VALUE);
+    }
+
+    static SearchResult searchWithUniProt(List<String> input, Mapping mapping, Boolean topLevelPathways, ForkJoinPool pool, int chunkSize) {
 
         SearchResult result = new SearchResult(InputType.UNIPROT, topLevelPathways);
+        MappingView reference = MappingView.of(mapping);
+        List<String> proteins = new ArrayList<>();
 
         int row = 0;
         for (String protein : input) {
@@ -90,42 +180,20 @@ public class Search {
             }
             result.getInputProteins().add(protein);
             result.getMatchedProteins().add(protein);
+            proteins.add(protein);
+        }
 
-            for (String reaction : mapping.getProteinsToReactions().get(protein)) {
-                result.getHitProteins().add(protein);
-
-                for (String pathwayStId : mapping.getReactionsToPathways().get(reaction)) {
-
-                    Pathway pathway = mapping.getPathways().get(pathwayStId);
-                    result.getHitPathways().add(mapping.getPathways().get(pathwayStId));
-                    pathway.getReactionsFound().add(reaction);
-                    pathway.getEntitiesFound().add(new Proteoform(protein));
-
-                    String[] values = new String[7];
-                    values[0] = protein;
-                    values[1] = reaction;
-                    values[2] = mapping.getReactions().get(reaction).getDisplayName();
-                    values[3] = pathwayStId;
-                    values[4] = pathway.getDisplayName();
-                    values[5] = pathwayStId;
-                    values[6] = pathway.getDisplayName();
-
-                    if (topLevelPathways) {
-                        if (mapping.getPathwaysToTopLevelPathways().get(pathwayStId).size() > 0) {
-                            for (String topLevelPathway : mapping.getPathwaysToTopLevelPathways().get(pathwayStId)) {
-                                values[5] = topLevelPathway;
-                                values[6] = mapping.getPathways().get(topLevelPathway).getDisplayName();
-                                result.addRecord(values);
-                            }
-                        } else {
-                            result.addRecord(values);
-                        }
-                    } else {
-                        result.addRecord(Arrays.copyOfRange(values, 0, 5));
+        List<Consumer<SearchResult>> segments = new ArrayList<>();
+        for (List<String> chunk : Lists.partition(proteins, chunkSize)) {
+            segments.add(partial -> {
+                for (String protein : chunk) {
+                    if (addProteinHits(partial, reference, topLevelPathways, protein)) {
+                        partial.getHitProteins().add(protein);
                     }
                 }
-            }
+            });
         }
+        ParallelSearch.expand(result, segments, pool);
 
         System.out.println("\nInput: " + result.getInputProteins().size() + " proteins");
         Double percentageProteins = (double) result.getMatchedProteins().size() * 100.0 / (double) result.getInputProteins().size();
@@ -147,55 +215,36 @@ public class Search {
      * @return
      */
     public static SearchResult searchWithGene(List<String> input, Mapping mapping, Boolean topLevelPathways) {
+        return searchWithGene(input, mapping, topLevelPathways, null, Integer.MAX_VALUE);
+    }
+
+    static SearchResult searchWithGene(List<String> input, Mapping mapping, Boolean topLevelPathways, ForkJoinPool pool, int chunkSize) {
 
         SearchResult result = new SearchResult(InputType.GENE, topLevelPathways);
+        MappingView reference = MappingView.of(mapping);
 
         for (String gene : input) {
             result.getInputGenes().add(gene);
+        }
 
-            for (String protein : mapping.getGenesToProteins().get(gene)) {
-                result.getMatchedProteins().add(protein);
-                result.getMatchedGenes().add(gene);
-                result.getInputProteins().add(protein);
-
-                for (String reaction : mapping.getProteinsToReactions().get(protein)) {
-                    result.getHitGenes().add(gene); // The genes that actually matched to some protein
-                    result.getHitProteins().add(protein);
-
-                    for (String pathwayStId : mapping.getReactionsToPathways().get(reaction)) {
-
-                        Pathway pathway = mapping.getPathways().get(pathwayStId);
-                        result.getHitPathways().add(mapping.getPathways().get(pathwayStId));
-                        pathway.getReactionsFound().add(reaction);
-                        pathway.getEntitiesFound().add(new Proteoform(protein));
-
-                        String[] values = new String[8];
-                        values[0] = gene;
-                        values[1] = protein;
-                        values[2] = reaction;
-                        values[3] = mapping.getReactions().get(reaction).getDisplayName();
-                        values[4] = pathwayStId;
-                        values[5] = pathway.getDisplayName();
-                        values[6] = pathwayStId;
-                        values[7] = pathway.getDisplayName();
-
-                        if (topLevelPathways) {
-                            if (mapping.getPathwaysToTopLevelPathways().get(pathwayStId).size() > 0) {
-                                for (String topLevelPathway : mapping.getPathwaysToTopLevelPathways().get(pathwayStId)) {
-                                    values[6] = topLevelPathway;
-                                    values[7] = mapping.getPathways().get(topLevelPathway).getDisplayName();
-                                    result.addRecord(values);
-                                }
-                            } else {
-                                result.addRecord(values);
-                            }
-                        } else {
-                            result.addRecord(Arrays.copyOfRange(values, 0, 6));
+        List<Consumer<SearchResult>> segments = new ArrayList<>();
+        for (List<String> chunk : Lists.partition(input, chunkSize)) {
+            segments.add(partial -> {
+                for (String gene : chunk) {
+                    for (String protein : mapping.getGenesToProteins().get(gene)) {
+                        partial.getMatchedProteins().add(protein);
+                        partial.getMatchedGenes().add(gene);
+                        partial.getInputProteins().add(protein);
+
+                        if (addProteinHits(partial, reference, topLevelPathways, protein, gene)) {
+                            partial.getHitGenes().add(gene); // The genes that actually matched to some protein
+                            partial.getHitProteins().add(protein);
                         }
                     }
                 }
-            }
+            });
         }
+        ParallelSearch.expand(result, segments, pool);
 
         System.out.println("\nInput: " + result.getInputGenes().size() + " genes");
         Double percentageGenes = (double) result.getMatchedGenes().size() * 100.0 / (double) input.size();
@@ -217,8 +266,14 @@ public class Search {
      * @return
      */
     public static SearchResult searchWithEnsembl(List<String> input, Mapping mapping, Boolean topLevelPathways) {
+        return searchWithEnsembl(input, mapping, topLevelPathways, null, Integer.MAX_VALUE);
+    }
+
+    static SearchResult searchWithEnsembl(List<String> input, Mapping mapping, Boolean topLevelPathways, ForkJoinPool pool, int chunkSize) {
 
         SearchResult result = new SearchResult(InputType.ENSEMBL, topLevelPathways);
+        MappingView reference = MappingView.of(mapping);
+        List<String> ensembls = new ArrayList<>();
         int contHitEnsemble = 0;
 
         int row = 0;
@@ -229,53 +284,31 @@ public class Search {
                 continue;
             }
             result.getInputEnsembl().add(ensembl);
+            ensembls.add(ensembl);
 
             if (mapping.getEnsemblToUniprot().get(ensembl).size() > 0) {
                 contHitEnsemble++;
             }
+        }
 
-            for (String protein : mapping.getEnsemblToUniprot().get(ensembl)) {
-                result.getInputProteins().add(protein);
-                result.getMatchedEnsembl().add(ensembl);
-                result.getMatchedProteins().add(protein);
-
-                for (String reaction : mapping.getProteinsToReactions().get(protein)) {
-                    result.getHitProteins().add(protein);
-                    result.getHitEnsembl().add(ensembl);
-                    for (String pathwayStId : mapping.getReactionsToPathways().get(reaction)) {
-
-                        Pathway pathway = mapping.getPathways().get(pathwayStId);
-                        result.getHitPathways().add(pathway);
-                        pathway.getReactionsFound().add(reaction);
-                        pathway.getEntitiesFound().add(new Proteoform(protein));
-
-                        String[] values = new String[8];
-                        values[0] = ensembl;
-                        values[1] = protein;
-                        values[2] = reaction;
-                        values[3] = mapping.getReactions().get(reaction).getDisplayName();
-                        values[4] = pathwayStId;
-                        values[5] = pathway.getDisplayName();
-                        values[6] = pathwayStId;
-                        values[7] = pathway.getDisplayName();
-
-                        if (topLevelPathways) {
-                            if (mapping.getPathwaysToTopLevelPathways().get(pathwayStId).size() > 0) {
-                                for (String topLevelPathway : mapping.getPathwaysToTopLevelPathways().get(pathwayStId)) {
-                                    values[6] = topLevelPathway;
-                                    values[7] = mapping.getPathways().get(topLevelPathway).getDisplayName();
-                                    result.addRecord(values);
-                                }
-                            } else {
-                                result.addRecord(values);
-                            }
-                        } else {
-                            result.addRecord(Arrays.copyOfRange(values, 0, 6));
+        List<Consumer<SearchResult>> segments = new ArrayList<>();
+        for (List<String> chunk : Lists.partition(ensembls, chunkSize)) {
+            segments.add(partial -> {
+                for (String ensembl : chunk) {
+                    for (String protein : mapping.getEnsemblToUniprot().get(ensembl)) {
+                        partial.getInputProteins().add(protein);
+                        partial.getMatchedEnsembl().add(ensembl);
+                        partial.getMatchedProteins().add(protein);
+
+                        if (addProteinHits(partial, reference, topLevelPathways, protein, ensembl)) {
+                            partial.getHitProteins().add(protein);
+                            partial.getHitEnsembl().add(ensembl);
                         }
                     }
                 }
-            }
+            });
         }
+        ParallelSearch.expand(result, segments, pool);
 
         System.out.println("\nInput: " + result.getInputProteins().size() + " proteins");
         Double percentageProteins = (double) contHitEnsemble * 100.0 / (double) result.getInputProteins().size();
@@ -298,8 +331,13 @@ public class Search {
      * @return Mapping from rsids to pathways, message errors
      */
     public static SearchResult searchWithRsId(List<String> input, Mapping mapping, Boolean topLevelPathways) {
+        return searchWithRsId(input, mapping, topLevelPathways, null, Integer.MAX_VALUE);
+    }
+
+    static SearchResult searchWithRsId(List<String> input, Mapping mapping, Boolean topLevelPathways, ForkJoinPool pool, int chunkSize) {
 
         SearchResult result = new SearchResult(InputType.RSID, topLevelPathways);
+        MappingView reference = MappingView.of(mapping);
 
         int row = 0;
         for (String rsid : input) {
@@ -315,52 +353,55 @@ public class Search {
             result.getInputRsid().add(rsid);
         }
 
-        for (int chr = 1; chr <= 22; chr++) {
-            for (String rsid : result.getInputRsid()) {
-                for (String protein : mapping.getRsidsToProteins(chr).get(rsid)) {
-                    result.getMatchedRsid().add(rsid);
-                    result.getInputProteins().add(protein);
-                    result.getMatchedProteins().add(protein);
-
-                    for (String reaction : mapping.getProteinsToReactions().get(protein)) {
-                        result.getHitProteins().add(protein);
-                        result.getHitRsid().add(rsid);
-
-                        for (String pathwayStId : mapping.getReactionsToPathways().get(reaction)) {
-
-                            Pathway pathway = mapping.getPathways().get(pathwayStId);
-                            result.getHitPathways().add(pathway);
-                            pathway.getReactionsFound().add(reaction);
-                            pathway.getEntitiesFound().add(new Proteoform(protein));
-
-                            String[] values = new String[8];
-                            values[0] = rsid;
-                            values[1] = protein;
-                            values[2] = reaction;
-                            values[3] = mapping.getReactions().get(reaction).getDisplayName();
-                            values[4] = pathwayStId;
-                            values[5] = pathway.getDisplayName();
-                            values[6] = pathwayStId;
-                            values[7] = pathway.getDisplayName();
-
-                            if (topLevelPathways) {
-                                if (mapping.getPathwaysToTopLevelPathways().get(pathwayStId).size() > 0) {
-                                    for (String topLevelPathway : mapping.getPathwaysToTopLevelPathways().get(pathwayStId)) {
-                                        values[6] = topLevelPathway;
-                                        values[7] = mapping.getPathways().get(topLevelPathway).getDisplayName();
-                                        result.addRecord(values);
-                                    }
-                                } else {
-                                    result.addRecord(values);
-                                }
-                            } else {
-                                result.addRecord(Arrays.copyOfRange(values, 0, 6));
-                            }
+        // Resolves each rsid with one lookup and groups its entries by chromosome, keeping the order of the rsids
+        List<String> rsids = new ArrayList<>(result.getInputRsid());
+        RsIdIndex rsIdIndex = RsIdIndex.of(mapping);
+        int[] chrSizes = new int[RsIdIndex.CHROMOSOMES + 1];
+        for (String rsid : rsids) {
+            for (int entry = rsIdIndex.find(rsid); entry != RsIdIndex.MISSING; entry = rsIdIndex.next(entry)) {
+                chrSizes[rsIdIndex.getChr(entry)]++;
+            }
+        }
+        int[][] chrRsids = new int[RsIdIndex.CHROMOSOMES + 1][];
+        int[][] chrEntries = new int[RsIdIndex.CHROMOSOMES + 1][];
+        for (int chr = 1; chr <= RsIdIndex.CHROMOSOMES; chr++) {
+            chrRsids[chr] = new int[chrSizes[chr]];
+            chrEntries[chr] = new int[chrSizes[chr]];
+            chrSizes[chr] = 0;
+        }
+        for (int i = 0; i < rsids.size(); i++) {
+            for (int entry = rsIdIndex.find(rsids.get(i)); entry != RsIdIndex.MISSING; entry = rsIdIndex.next(entry)) {
+                int chr = rsIdIndex.getChr(entry);
+                chrRsids[chr][chrSizes[chr]] = i;
+                chrEntries[chr][chrSizes[chr]++] = entry;
+            }
+        }
+
+        List<Consumer<SearchResult>> segments = new ArrayList<>();
+        for (int chr = 1; chr <= RsIdIndex.CHROMOSOMES; chr++) {
+            int[] rsidsOfChr = chrRsids[chr];
+            int[] entriesOfChr = chrEntries[chr];
+            for (int from = 0, to; from < entriesOfChr.length; from = to) {
+                to = (int) Math.min(entriesOfChr.length, (long) from + chunkSize);
+                int start = from;
+                int end = to;
+                segments.add(partial -> {
+                    for (int i = start; i < end; i++) {
+                        String rsid = rsids.get(rsidsOfChr[i]);
+                        String protein = rsIdIndex.getProtein(entriesOfChr[i]);
+                        partial.getMatchedRsid().add(rsid);
+                        partial.getInputProteins().add(protein);
+                        partial.getMatchedProteins().add(protein);
+
+                        if (addProteinHits(partial, reference, topLevelPathways, protein, rsid)) {
+                            partial.getHitProteins().add(protein);
+                            partial.getHitRsid().add(rsid);
                         }
                     }
-                }
+                });
             }
         }
+        ParallelSearch.expand(result, segments, pool);
 
         System.out.println("\nInput: " + result.getInputRsid().size() + " rsids");
         System.out.println("Found " + result.getHitProteins().size() + " proteins.");
@@ -383,8 +424,13 @@ public class Search {
      * @return Mapping from rsids to pathways, message errors
      */
     public static SearchResult searchWithChrBp(List<String> input, Mapping mapping, Boolean topLevelPathways) {
+        return searchWithChrBp(input, mapping, topLevelPathways, null, Integer.MAX_VALUE);
+    }
+
+    static SearchResult searchWithChrBp(List<String> input, Mapping mapping, Boolean topLevelPathways, ForkJoinPool pool, int chunkSize) {
 
         SearchResult result = new SearchResult(InputType.CHRBP, topLevelPathways);
+        MappingView reference = MappingView.of(mapping);
 
         Snp snp = null;
         int row = 0;
@@ -405,59 +451,126 @@ public class Search {
             result.getInputChrBp().put(snp.getChr(), snp.getBp());
         }
 
-        for (int chr : result.getInputChrBp().keySet()) {
-            for (Long bp : result.getInputChrBp().get(chr)) {
-                for (String protein : mapping.getChrBpToProteins(chr).get(bp)) {
-                    result.getMatchedChrBp().put(chr, bp);
-                    result.getInputProteins().add(protein);
-                    result.getMatchedProteins().add(protein);
-
-                    for (String reaction : mapping.getProteinsToReactions().get(protein)) {
-                        result.getHitProteins().add(protein);
-                        result.getHitChrBp().put(chr, bp);
-
-                        for (String pathwayStId : mapping.getReactionsToPathways().get(reaction)) {
-
-                            Pathway pathway = mapping.getPathways().get(pathwayStId);
-                            result.getHitPathways().add(pathway);
-                            pathway.getReactionsFound().add(reaction);
-                            pathway.getEntitiesFound().add(new Proteoform(protein));
-
-                            String[] values = new String[9];
-                            values[0] = String.valueOf(chr);
-                            values[1] = String.valueOf(bp);
-                            values[2] = protein;
-                            values[3] = reaction;
-                            values[4] = mapping.getReactions().get(reaction).getDisplayName();
-                            values[5] = pathwayStId;
-                            values[6] = pathway.getDisplayName();
-                            values[7] = pathwayStId;
-                            values[8] = pathway.getDisplayName();
-
-                            if (topLevelPathways) {
-                                if (mapping.getPathwaysToTopLevelPathways().get(pathwayStId).size() > 0) {
-                                    for (String topLevelPathway : mapping.getPathwaysToTopLevelPathways().get(pathwayStId)) {
-                                        values[7] = topLevelPathway;
-                                        values[8] = mapping.getPathways().get(topLevelPathway).getDisplayName();
-                                        result.addRecord(values);
-                                    }
-                                } else {
-                                    result.addRecord(values);
-                                }
+        ParallelSearch.expand(result, chrBpSegments(result.getInputChrBp(), ChrBpIndex.of(mapping), reference, topLevelPathways, chunkSize), pool);
+
+        System.out.println("\nInput: " + result.getInputChrBp().entries().size() + " snps");
+        System.out.println("Found " + result.getHitProteins().size() + " proteins.");
+        Double percentageSnps = (double) result.getMatchedChrBp().entries().size() * 100.0 / (double) result.getInputChrBp().entries().size();
+        System.out.println("Matched: " + result.getMatchedChrBp().entries().size() + " snps ("
+                + new DecimalFormat("#0.00").format(percentageSnps) + "%), "
+                + result.getHitProteins().size() + " proteins");
+
+        result.setStatus(new MessageStatus("Success", 0, 0, "", ""));
+
+        return result;
+    }
+
+    /*
+     * Creates the segments that look up the variants in the positions of their chromosomes.
+     * The base pairs of each chromosome come sorted from the multimap, so they can be merged with the sorted positions of
+     * the chromosome when that is cheaper than a binary search for each of them.
+     */
+    private static List<Consumer<SearchResult>> chrBpSegments(SortedSetMultimap<Integer, Long> variants, ChrBpIndex chrBpIndex, MappingView reference, Boolean topLevelPathways, int chunkSize) {
+        List<Consumer<SearchResult>> segments = new ArrayList<>();
+        for (int chr : variants.keySet()) {
+            ChromosomeIndex chromosome = chrBpIndex.get(chr);
+            List<Long> bps = new ArrayList<>(variants.get(chr));
+            boolean mergeJoin = chromosome.prefersMergeJoin(bps.size());
+            for (List<Long> chunk : Lists.partition(bps, chunkSize)) {
+                if (mergeJoin) {
+                    segments.add(partial -> {
+                        int position = chromosome.lowerBound(chunk.get(0));
+                        for (Long bp : chunk) {
+                            while (position < chromosome.size() && chromosome.getPosition(position) < bp) {
+                                position++;
+                            }
+                            if (position == chromosome.size()) {
+                                break;
+                            }
+                            if (chromosome.getPosition(position) == bp) {
+                                addChrBpHits(partial, reference, topLevelPathways, chromosome, position, chr, bp);
+                            }
+                        }
+                    });
+                } else {
+                    // Most variants are not in the reference, and the filter skips their binary search
+                    KeyFilter filter = chrBpIndex.getFilter(chr);
+                    segments.add(partial -> {
+                        for (Long bp : chunk) {
+                            if (!filter.mightContain(bp)) {
+                                continue;
+                            }
+                            int position = chromosome.find(bp);
+                            if (position != ChromosomeIndex.MISSING) {
+                                addChrBpHits(partial, reference, topLevelPathways, chromosome, position, chr, bp);
                             } else {
-                                result.addRecord(Arrays.copyOfRange(values, 0, 7));
+                                filter.recordFalsePositive();
                             }
                         }
-                    }
+                    });
                 }
             }
         }
+        return segments;
+    }
 
-        System.out.println("\nInput: " + result.getInputChrBp().entries().size() + " snps");
+    /**
+     * Maps the variants of a vcf file to protein to reaction to pathways, reading the file as a stream.
+     * Plain, gzip and bgzip files are accepted, see {@link VcfReader}.
+     * <p>
+     * <p>The variants are looked up in batches of {@link #VCF_BATCH_SIZE}, sorted by chromosome and base pair within each
+     * batch, so the memory used by the input does not depend on the size of the file. For the same reason, the input
+     * chr/bp set of the result is left empty, and the number of valid variant rows read, repeated ones included, is
+     * given by {@link SearchResult#getInputVariantCount()}. The variants already matched in a previous batch are not
+     * looked up again, so the records are the same as the ones of {@link #searchWithChrBp(List, Mapping, Boolean)} for
+     * the same variants.</p>
+     *
+     * @param vcfFile          Path to the vcf file
+     * @param mapping          Static structures for the pathway matching
+     * @param topLevelPathways Flag if top level pathways should be used
+     * @return Mapping from variants to pathways, message errors
+     */
+    public static SearchResult searchWithVcf(Path vcfFile, Mapping mapping, Boolean topLevelPathways) throws IOException {
+        return searchWithVcf(vcfFile, mapping, topLevelPathways, null, Integer.MAX_VALUE);
+    }
+
+    static SearchResult searchWithVcf(Path vcfFile, Mapping mapping, Boolean topLevelPathways, ForkJoinPool pool, int chunkSize) throws IOException {
+        return searchWithVcf(vcfFile, mapping, topLevelPathways, pool, chunkSize, VCF_BATCH_SIZE);
+    }
+
+    static SearchResult searchWithVcf(Path vcfFile, Mapping mapping, Boolean topLevelPathways, ForkJoinPool pool, int chunkSize, int batchSize) throws IOException {
+
+        SearchResult result = new SearchResult(InputType.VCF, topLevelPathways);
+        MappingView reference = MappingView.of(mapping);
+        ChrBpIndex chrBpIndex = ChrBpIndex.of(mapping);
+
+        long variants = 0;
+        TreeMultimap<Integer, Long> batch = TreeMultimap.create();
+        try (VcfReader reader = new VcfReader(vcfFile)) {
+            while (reader.next()) {
+                if (!reader.isValid()) {
+                    sendWarning(INVALID_ROW, reader.getRow());
+                    continue;
+                }
+                variants++;
+                // A variant matched in a previous batch would add its records again
+                if (!result.getMatchedChrBp().containsEntry(reader.getChr(), reader.getBp())) {
+                    batch.put(reader.getChr(), reader.getBp());
+                }
+                if (batch.size() == batchSize) {
+                    ParallelSearch.expand(result, chrBpSegments(batch, chrBpIndex, reference, topLevelPathways, chunkSize), pool);
+                    batch.clear();
+                }
+            }
+        }
+        ParallelSearch.expand(result, chrBpSegments(batch, chrBpIndex, reference, topLevelPathways, chunkSize), pool);
+        result.setInputVariantCount(variants);
+
+        System.out.println("\nInput: " + variants + " variants");
         System.out.println("Found " + result.getHitProteins().size() + " proteins.");
-        Double percentageSnps = (double) result.getMatchedChrBp().entries().size() * 100.0 / (double) result.getInputChrBp().entries().size();
+        Double percentageSnps = variants == 0 ? 0.0 : (double) result.getMatchedChrBp().entries().size() * 100.0 / (double) variants;
         System.out.println("Matched: " + result.getMatchedChrBp().entries().size() + " snps ("
-                + new DecimalFormat("#0.00").format(percentageSnps) + "%), "
+                + new DecimalFormat("#0.00").format(percentageSnps) + "% of the variant rows), "
                 + result.getHitProteins().size() + " proteins");
 
         result.setStatus(new MessageStatus("Success", 0, 0, "", ""));
@@ -465,6 +578,124 @@ public class Search {
         return result;
     }
 
+    /**
+     * Maps variants to the proteins whose base pair interval in the reference is within a window of the variant.
+     * The interval of a protein in a chromosome goes from its first to its last base pair position in the reference.
+     * <p>
+     * <p>Each line is a [chr, bp] variant or a vcf record, matched against [bp - window, bp + window], or a region in the
+     * form chr:start-end, matched against [start, end]. A repeated variant or region is searched once, while a variant
+     * and regions with the same start are all searched. A region with its start after its end is an invalid row. The
+     * regions are kept apart from the variants in the result, as chr:start-end, and written with start-end in the
+     * BASE_PAIR column.</p>
+     *
+     * @param input            One variant or region per line
+     * @param mapping          Static structures for the pathway matching
+     * @param topLevelPathways Flag if top level pathways should be used
+     * @param window           Number of base pairs around each variant, not negative
+     * @return Mapping from variants and regions to pathways, message errors
+     */
+    public static SearchResult searchWithChrBpWindow(List<String> input, Mapping mapping, Boolean topLevelPathways, long window) {
+        return searchWithChrBpWindow(input, mapping, topLevelPathways, window, null, Integer.MAX_VALUE);
+    }
+
+    static SearchResult searchWithChrBpWindow(List<String> input, Mapping mapping, Boolean topLevelPathways, long window, ForkJoinPool pool, int chunkSize) {
+
+        if (window < 0) {
+            throw new IllegalArgumentException("The window must not be negative.");
+        }
+
+        SearchResult result = new SearchResult(InputType.CHRBP, topLevelPathways);
+        MappingView reference = MappingView.of(mapping);
+
+        // Start, end, base pair and 1 for regions or 0 for variants, of each query by chromosome
+        Map<Integer, List<long[]>> queries = new TreeMap<>();
+        Set<List<Long>> searched = new HashSet<>();
+        int row = 0;
+        for (String line : input) {
+            row++;
+            if (line.isEmpty()) {
+                sendWarning(EMPTY_ROW, row);
+                continue;
+            }
+            if (line.startsWith("#")) {
+                continue;
+            }
+            Matcher region = REGION.matcher(line);
+            if (region.matches()) {
+                try {
+                    int chr = Integer.parseInt(region.group(1));
+                    long start = Long.parseLong(region.group(2));
+                    long end = Long.parseLong(region.group(3));
+                    if (start > end) {
+                        sendWarning(INVALID_ROW, row);
+                    } else if (searched.add(Arrays.asList((long) chr, start, end, 1L))) {
+                        result.getInputRegions().add(chr + ":" + start + "-" + end);
+                        queries.computeIfAbsent(chr, key -> new ArrayList<>()).add(new long[]{start, end, start, 1L});
+                    }
+                } catch (NumberFormatException e) {
+                    sendWarning(INVALID_ROW, row);
+                }
+                continue;
+            }
+            if (!matches_ChrBp(line) && !matches_Vcf_Record(line)) {
+                sendWarning(INVALID_ROW, row);
+                continue;
+            }
+            Snp snp = getSnpFromChrBp(line);
+            if (searched.add(Arrays.asList((long) snp.getChr(), snp.getBp(), snp.getBp(), 0L))) {
+                result.getInputChrBp().put(snp.getChr(), snp.getBp());
+                queries.computeIfAbsent(snp.getChr(), key -> new ArrayList<>()).add(new long[]{snp.getBp() - window, snp.getBp() + window, snp.getBp(), 0L});
+            }
+        }
+
+        List<Consumer<SearchResult>> segments = new ArrayList<>();
+        ChrBpIndex chrBpIndex = ChrBpIndex.of(mapping);
+        for (Map.Entry<Integer, List<long[]>> entry : queries.entrySet()) {
+            int chr = entry.getKey();
+            IntervalIndex intervals = chrBpIndex.getIntervals(chr);
+            for (List<long[]> chunk : Lists.partition(entry.getValue(), chunkSize)) {
+                segments.add(partial -> {
+                    for (long[] query : chunk) {
+                        Long bp = query[2];
+                        boolean isRegion = query[3] == 1L;
+                        String label = isRegion ? query[0] + "-" + query[1] : String.valueOf(bp);
+                        String region = chr + ":" + label;
+                        intervals.forEachOverlap(query[0], query[1], i -> {
+                            String protein = intervals.getProtein(i);
+                            if (isRegion) {
+                                partial.getMatchedRegions().add(region);
+                            } else {
+                                partial.getMatchedChrBp().put(chr, bp);
+                            }
+                            partial.getInputProteins().add(protein);
+                            partial.getMatchedProteins().add(protein);
+
+                            if (addProteinHits(partial, reference, topLevelPathways, protein, String.valueOf(chr), label)) {
+                                partial.getHitProteins().add(protein);
+                                if (isRegion) {
+                                    partial.getHitRegions().add(region);
+                                } else {
+                                    partial.getHitChrBp().put(chr, bp);
+                                }
+                            }
+                        });
+                    }
+                });
+            }
+        }
+        ParallelSearch.expand(result, segments, pool);
+
+        System.out.println("\nInput: " + result.getInputChrBp().entries().size() + " variants and "
+                + result.getInputRegions().size() + " regions");
+        System.out.println("Found " + result.getHitProteins().size() + " proteins.");
+        System.out.println("Matched: " + result.getMatchedChrBp().entries().size() + " variants and "
+                + result.getMatchedRegions().size() + " regions");
+
+        result.setStatus(new MessageStatus("Success", 0, 0, "", ""));
+
+        return result;
+    }
+
     /*
      * Get the snp instance from a line with chromosome and base pair.
      * This method expects the line to be validated already
@@ -484,18 +715,95 @@ public class Search {
                                                     Boolean topLevelPathways,
                                                     MatchType matchType,
                                                     Long margin) {
+        return searchWithProteoform(input, mapping, topLevelPathways, matchType, margin, null, Integer.MAX_VALUE);
+    }
 
-        SearchResult result = new SearchResult(InputType.PROTEOFORM, topLevelPathways);
-        ProteoformMatching matcher = ProteoformMatching.getInstance(matchType);
-        assert matcher != null;
+    static SearchResult searchWithProteoform(List<String> input,
+                                             Mapping mapping,
+                                             Boolean topLevelPathways,
+                                             MatchType matchType,
+                                             Long margin,
+                                             ForkJoinPool pool,
+                                             int chunkSize) {
+
+        // For each proteoform in the input we try to find matches in the reference proteoforms
+        List<Proteoform> inputProteoforms = new ArrayList<>(parseProteoforms(input));
+        ProteoformMatchTable matches = ProteoformMatchCache.of(mapping).matchAll(inputProteoforms, matchType, margin, pool);
+        return searchWithProteoformMatches(matches, mapping, topLevelPathways, pool, chunkSize);
+    }
+
+    /**
+     * Searches the proteoforms with several match types and margins, parsing the input and finding the candidates of
+     * each proteoform once for all of them, instead of searching once for each.
+     *
+     * @param margins Margins of at least 0
+     * @return The result of each match type and margin, in the order of the arguments
+     */
+    public static ImmutableTable<MatchType, Long, SearchResult> searchWithProteoform(List<String> input,
+                                                                                     Mapping mapping,
+                                                                                     Boolean topLevelPathways,
+                                                                                     Set<MatchType> matchTypes,
+                                                                                     List<Long> margins) {
+        return searchWithProteoform(input, mapping, topLevelPathways, matchTypes, margins, null, Integer.MAX_VALUE);
+    }
+
+    static ImmutableTable<MatchType, Long, SearchResult> searchWithProteoform(List<String> input,
+                                                                              Mapping mapping,
+                                                                              Boolean topLevelPathways,
+                                                                              Set<MatchType> matchTypes,
+                                                                              List<Long> margins,
+                                                                              ForkJoinPool pool,
+                                                                              int chunkSize) {
+
+        List<Proteoform> inputProteoforms = new ArrayList<>(parseProteoforms(input));
+        ImmutableTable<MatchType, Long, ProteoformMatchTable> matches = ProteoformMatching.matchAll(inputProteoforms, ProteoformIndex.of(mapping), matchTypes, margins, pool);
+        ImmutableTable.Builder<MatchType, Long, SearchResult> results = ImmutableTable.builder();
+        for (Table.Cell<MatchType, Long, ProteoformMatchTable> cell : matches.cellSet()) {
+            results.put(cell.getRowKey(), cell.getColumnKey(), searchWithProteoformMatches(cell.getValue(), mapping, topLevelPathways, pool, chunkSize));
+        }
+        return results.build();
+    }
+
+    /**
+     * Searches the proteoforms with every margin from 0 to a largest one in one pass, finding for each input and
+     * reference proteoform the smallest margin with which they match.
+     *
+     * @param maxMargin Largest margin, at least 0
+     * @return The number of hits of each margin and the full result of any margin
+     */
+    public static ProteoformMarginSweep searchWithProteoformMargins(List<String> input,
+                                                                    Mapping mapping,
+                                                                    Boolean topLevelPathways,
+                                                                    MatchType matchType,
+                                                                    long maxMargin) {
+        return searchWithProteoformMargins(input, mapping, topLevelPathways, matchType, maxMargin, null, Integer.MAX_VALUE);
+    }
 
+    static ProteoformMarginSweep searchWithProteoformMargins(List<String> input,
+                                                             Mapping mapping,
+                                                             Boolean topLevelPathways,
+                                                             MatchType matchType,
+                                                             long maxMargin,
+                                                             ForkJoinPool pool,
+                                                             int chunkSize) {
+
+        List<Proteoform> inputProteoforms = new ArrayList<>(parseProteoforms(input));
+        ProteoformMatchTable matches = ProteoformMatching.sweep(inputProteoforms, ProteoformIndex.of(mapping), matchType, maxMargin, pool);
+        return new ProteoformMarginSweep(matches, mapping, topLevelPathways, maxMargin, pool, chunkSize);
+    }
+
+    /*
+     * Parses the valid rows into a set like the input proteoforms of the result, so they are matched in its order.
+     */
+    private static Set<Proteoform> parseProteoforms(List<String> input) {
+        Set<Proteoform> proteoforms = new HashSet<>();
         int row = 0;
         for (String line : input) {
             row++;
             if (matches_Proteoform_Simple(line)) {
                 try {
                     Proteoform proteoform = ProteoformFormat.SIMPLE.getProteoform(line, row);
-                    result.getInputProteoforms().add(proteoform);
+                    proteoforms.add(proteoform);
                 } catch (ParseException e) {
                     sendWarning(INVALID_ROW, row);
                 }
@@ -506,61 +814,55 @@ public class Search {
                     sendWarning(INVALID_ROW, row);
             }
         }
+        return proteoforms;
+    }
 
-        // For each proteoform in the input we try to find matches in the reference proteoforms
-        for (Proteoform inputProteoform : result.getInputProteoforms()) {
-            result.getInputProteins().add(inputProteoform.getUniProtAcc());
-
-            for (Proteoform refProteoform : mapping.getProteinsToProteoforms().get(inputProteoform.getUniProtAcc())) {
-                if (matcher.matches(inputProteoform, refProteoform, margin)) {
-                    result.getMatchedProteoforms().add(inputProteoform);
-                    result.getMatchedProteins().add(inputProteoform.getUniProtAcc());
-                    if (mapping.getProteoformsToReactions().get(refProteoform).size() > 0) {
-                        result.getHitProteoforms().add(refProteoform);
-                        result.getHitProteins().add(refProteoform.getUniProtAcc());
-                    }
-                }
-            }
+    static SearchResult searchWithProteoformMatches(ProteoformMatchTable matches,
+                                                    Mapping mapping,
+                                                    Boolean topLevelPathways,
+                                                    ForkJoinPool pool,
+                                                    int chunkSize) {
+
+        SearchResult result = new SearchResult(InputType.PROTEOFORM, topLevelPathways);
+        MappingView reference = MappingView.of(mapping);
+        for (int i = 0; i < matches.size(); i++) {
+            result.getInputProteoforms().add(matches.getInput(i));
         }
 
-        for (Proteoform hitProteoform : result.getHitProteoforms()) {
-            for (String reaction : mapping.getProteoformsToReactions().get(hitProteoform)) {
-                result.getHitProteoforms().add(hitProteoform);
-                result.getHitProteins().add(hitProteoform.getUniProtAcc());
-
-                for (String pathwayStId : mapping.getReactionsToPathways().get(reaction)) {
-
-                    Pathway pathway = mapping.getPathways().get(pathwayStId);
-                    result.getHitPathways().add(pathway);
-                    pathway.getReactionsFound().add(reaction);
-                    pathway.getEntitiesFound().add(hitProteoform);
-
-                    String[] values = new String[8];
-                    values[0] = hitProteoform.toString(ProteoformFormat.SIMPLE);
-                    values[1] = hitProteoform.getUniProtAcc();
-                    values[2] = reaction;
-                    values[3] = mapping.getReactions().get(reaction).getDisplayName();
-                    values[4] = pathwayStId;
-                    values[5] = pathway.getDisplayName();
-                    values[6] = pathwayStId;
-                    values[7] = pathway.getDisplayName();
-
-                    if (topLevelPathways) {
-                        if (mapping.getPathwaysToTopLevelPathways().get(pathwayStId).size() > 0) {
-                            for (String topLevelPathway : mapping.getPathwaysToTopLevelPathways().get(pathwayStId)) {
-                                values[6] = topLevelPathway;
-                                values[7] = mapping.getPathways().get(topLevelPathway).getDisplayName();
-                                result.addRecord(values);
-                            }
-                        } else {
-                            result.addRecord(values);
+        List<Consumer<SearchResult>> segments = new ArrayList<>();
+        for (int first = 0; first < matches.size(); first += chunkSize) {
+            int from = first;
+            int to = (int) Math.min((long) first + chunkSize, matches.size());
+            segments.add(partial -> {
+                for (int i = from; i < to; i++) {
+                    Proteoform inputProteoform = matches.getInput(i);
+                    partial.getInputProteins().add(inputProteoform.getUniProtAcc());
+
+                    for (int match = matches.start(i); match < matches.end(i); match++) {
+                        Proteoform refProteoform = matches.getReference(match);
+                        partial.getMatchedProteoforms().add(inputProteoform);
+                        partial.getMatchedProteins().add(inputProteoform.getUniProtAcc());
+                        if (mapping.getProteoformsToReactions().get(refProteoform).size() > 0) {
+                            partial.getHitProteoforms().add(refProteoform);
+                            partial.getHitProteins().add(refProteoform.getUniProtAcc());
                         }
-                    } else {
-                        result.addRecord(Arrays.copyOfRange(values, 0, 6));
                     }
                 }
-            }
+            });
         }
+        ParallelSearch.expand(result, segments, pool);
+
+        segments = new ArrayList<>();
+        for (List<Proteoform> chunk : Lists.partition(new ArrayList<>(result.getHitProteoforms()), chunkSize)) {
+            segments.add(partial -> {
+                for (Proteoform hitProteoform : chunk) {
+                    int protein = reference.getProteins().getId(hitProteoform.getUniProtAcc());
+                    String[] prefix = {hitProteoform.toString(ProteoformFormat.SIMPLE)};
+                    partial.addClosureHits(reference, prefix, protein, reference.getClosures().get(hitProteoform), hitProteoform, topLevelPathways);
+                }
+            });
+        }
+        ParallelSearch.expand(result, segments, pool);
 
         System.out.println("\nInput: " + result.getInputProteoforms().size() + " proteoforms, " + result.getInputProteins().size() + " proteins");
         Double percentageProteoforms = (double) result.getMatchedProteoforms().size() * 100.0 / (double) result.getInputProteoforms().size();
@@ -577,6 +879,15 @@ public class Search {
                                                  Mapping mapping,
                                                  Boolean topLevelPathways,
                                                  String fastaFile) {
+        return searchWithPeptide(input, mapping, topLevelPathways, fastaFile, null, Integer.MAX_VALUE);
+    }
+
+    static SearchResult searchWithPeptide(List<String> input,
+                                          Mapping mapping,
+                                          Boolean topLevelPathways,
+                                          String fastaFile,
+                                          ForkJoinPool pool,
+                                          int chunkSize) {
 
         SearchResult result = new SearchResult(InputType.PEPTIDE, topLevelPathways);
 
@@ -602,7 +913,7 @@ public class Search {
             }
         }
 
-        return searchWithUniProt(new ArrayList<>(result.getMatchedProteins()), mapping, topLevelPathways);
+        return searchWithUniProt(new ArrayList<>(result.getMatchedProteins()), mapping, topLevelPathways, pool, chunkSize);
     }
 
     public static SearchResult searchWithModifiedPeptide(List<String> input,
@@ -611,6 +922,17 @@ public class Search {
                                                          MatchType matchType,
                                                          Long margin,
                                                          String fastaFile) {
+        return searchWithModifiedPeptide(input, mapping, topLevelPathways, matchType, margin, fastaFile, null, Integer.MAX_VALUE);
+    }
+
+    static SearchResult searchWithModifiedPeptide(List<String> input,
+                                                  Mapping mapping,
+                                                  Boolean topLevelPathways,
+                                                  MatchType matchType,
+                                                  Long margin,
+                                                  String fastaFile,
+                                                  ForkJoinPool pool,
+                                                  int chunkSize) {
 
         List<String> correctedInput = new ArrayList<>();
 
@@ -650,6 +972,6 @@ public class Search {
             }
         }
 
-        return searchWithProteoform(correctedInput, mapping, topLevelPathways, matchType, margin);
+        return searchWithProteoform(correctedInput, mapping, topLevelPathways, matchType, margin, pool, chunkSize);
     }
 }
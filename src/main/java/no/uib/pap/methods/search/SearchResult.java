@@ -1,6 +1,9 @@
 package no.uib.pap.methods.search;
 
 import com.google.common.collect.TreeMultimap;
+import no.uib.pap.methods.reference.Closure;
+import no.uib.pap.methods.reference.IdDictionary;
+import no.uib.pap.methods.reference.MappingView;
 import no.uib.pap.model.*;
 
 import java.awt.*;
@@ -13,8 +16,8 @@ import static no.uib.pap.model.Error.ERROR_WITH_OUTPUT_FILE;
 import static no.uib.pap.model.Error.sendError;
 
 public class SearchResult {
-    private Set<Pathway> hitPathways = new TreeSet<>();
-    private Set<Proteoform> hitProteoforms = new HashSet<>(); // Reference proteoforms that match input proteoforms
+    private Set<Pathway> hitPathways = new TreeSet<>(); // Pathway instances of this result, see hitPathwaysById
+    private Set<Proteoform> hitProteoforms = new LinkedHashSet<>(); // Reference proteoforms that match input proteoforms, in the order they were found
 
     private Set<String> inputProteins = new HashSet<>(); // Valid input protein accessions. These may not be in the reference data
     private Set<String> matchedProteins = new TreeSet<>(); // Proteins that are selected to search and exist in the reference data
@@ -35,13 +38,24 @@ public class SearchResult {
     private TreeMultimap<Integer, Long> hitChrBp = TreeMultimap.create();
     private TreeMultimap<Integer, Long> inputChrBp = TreeMultimap.create();
     private TreeMultimap<Integer, Long> matchedChrBp = TreeMultimap.create();
+    private long inputVariantCount; // Valid variant rows of a vcf file, which are streamed instead of kept in inputChrBp
+
+    private Set<String> hitRegions = new HashSet<>(); // Regions chr:start-end of a window search, apart from the variants
+    private Set<String> inputRegions = new HashSet<>();
+    private Set<String> matchedRegions = new HashSet<>();
 
 
     private Set<Proteoform> inputProteoforms = new HashSet<>(); // These may not be in the reference data
     private Set<Proteoform> matchedProteoforms = new HashSet<>(); // Proteoforms in the input that had a matched reference proteoform
 
     private List<String> headers = new ArrayList<>();
-    private List<String[]> records = new ArrayList<>();
+    private RecordTable records = new RecordTable();
+    private boolean showTopLevelPathways;
+
+    // Overlay of the hit pathways for this query, indexed by the pathway identifiers of the reference. The pathways of
+    // the Mapping are never modified, each result owns the instances where the reactions and entities found are added.
+    private MappingView reference;
+    private Pathway[] hitPathwaysById;
 
     MessageStatus status;
 
@@ -77,8 +91,80 @@ public class SearchResult {
         return matchedProteoforms;
     }
 
-    void addRecord(String[] record) {
-        this.records.add(record);
+    private void useReference(MappingView reference) {
+        if (this.reference == null) {
+            this.reference = reference;
+            this.hitPathwaysById = new Pathway[reference.getPathways().size()];
+        }
+    }
+
+    void addPathwayHit(MappingView reference, int pathwayId, String reaction, Proteoform entity) {
+        useReference(reference);
+        Pathway pathway = hitPathwaysById[pathwayId];
+        if (pathway == null) {
+            pathway = reference.newPathwayInstance(pathwayId);
+            hitPathwaysById[pathwayId] = pathway;
+            hitPathways.add(pathway);
+        }
+        pathway.getReactionsFound().add(reaction);
+        pathway.getEntitiesFound().add(entity);
+    }
+
+    /**
+     * Adds the pathways of the closure as hits of the entity, and the records of the closure with the prefix.
+     *
+     * @param showTopLevelPathways Adds one record for each top level pathway of the roll-up instead of one for each path
+     */
+    void addClosureHits(MappingView reference, String[] prefix, int protein, Closure closure, Proteoform entity, boolean showTopLevelPathways) {
+        for (int path = 0; path < closure.getPathCount(); path++) {
+            addPathwayHit(reference, closure.getPathPathway(path), reference.getReactions().getName(closure.getPathReaction(path)), entity);
+        }
+        records.addClosure(prefix, protein, closure, showTopLevelPathways);
+    }
+
+    /**
+     * Appends a partial result of the same search. The records of the other result go after the records of this one.
+     */
+    void merge(SearchResult other) {
+        if (other.reference != null) {
+            useReference(other.reference);
+            for (int pathwayId = 0; pathwayId < hitPathwaysById.length; pathwayId++) {
+                Pathway otherPathway = other.hitPathwaysById[pathwayId];
+                if (otherPathway == null) {
+                    continue;
+                }
+                Pathway pathway = hitPathwaysById[pathwayId];
+                if (pathway == null) {
+                    hitPathwaysById[pathwayId] = otherPathway;
+                    hitPathways.add(otherPathway);
+                } else {
+                    pathway.getReactionsFound().addAll(otherPathway.getReactionsFound());
+                    pathway.getEntitiesFound().addAll(otherPathway.getEntitiesFound());
+                }
+            }
+        }
+        hitProteoforms.addAll(other.hitProteoforms);
+        inputProteins.addAll(other.inputProteins);
+        matchedProteins.addAll(other.matchedProteins);
+        hitProteins.addAll(other.hitProteins);
+        inputEnsembl.addAll(other.inputEnsembl);
+        matchedEnsembl.addAll(other.matchedEnsembl);
+        hitEnsembl.addAll(other.hitEnsembl);
+        matchedGenes.addAll(other.matchedGenes);
+        hitGenes.addAll(other.hitGenes);
+        inputGenes.addAll(other.inputGenes);
+        hitRsid.addAll(other.hitRsid);
+        inputRsid.addAll(other.inputRsid);
+        matchedRsid.addAll(other.matchedRsid);
+        hitChrBp.putAll(other.hitChrBp);
+        inputChrBp.putAll(other.inputChrBp);
+        matchedChrBp.putAll(other.matchedChrBp);
+        hitRegions.addAll(other.hitRegions);
+        inputRegions.addAll(other.inputRegions);
+        matchedRegions.addAll(other.matchedRegions);
+        inputProteoforms.addAll(other.inputProteoforms);
+        matchedProteoforms.addAll(other.matchedProteoforms);
+        records.addAll(other.records);
     }
 
     public Set<String> getInputGenes() {
@@ -113,6 +199,30 @@ public class SearchResult {
         return matchedChrBp;
     }
 
+    Set<String> getHitRegions() {
+        return hitRegions;
+    }
+
+    Set<String> getInputRegions() {
+        return inputRegions;
+    }
+
+    Set<String> getMatchedRegions() {
+        return matchedRegions;
+    }
+
+    /**
+     * @return Number of valid variant rows of the vcf file of the search, repeated ones included, or 0 for the other
+     * input types
+     */
+    public long getInputVariantCount() {
+        return inputVariantCount;
+    }
+
+    void setInputVariantCount(long inputVariantCount) {
+        this.inputVariantCount = inputVariantCount;
+    }
+
     public Set<String> getInputEnsembl() {
         return inputEnsembl;
     }
@@ -131,6 +241,8 @@ public class SearchResult {
 
     SearchResult(InputType inputType, boolean showTopLevelPathways) {
 
+        this.showTopLevelPathways = showTopLevelPathways;
+
         switch (inputType) {
             case PROTEOFORMS:
             case PROTEOFORM:
@@ -178,14 +290,8 @@ public class SearchResult {
             }
             bw.newLine();
 
-            for (String[] r : records) {
-                for (int i = 0; i < r.length; i++) {
-                    if (i > 0) {
-                        bw.write(separator);
-                    }
-                    bw.write(r[i]);
-                }
-                bw.newLine();
+            if (records.size() > 0) {
+                records.write(bw, separator, reference, showTopLevelPathways);
             }
         } catch (IOException ex) {
             sendError(ERROR_WITH_OUTPUT_FILE);
@@ -206,21 +312,15 @@ public class SearchResult {
     }
 
     public boolean containsPathwayByStid(String pathway_stid) {
-        for(Pathway pathway : this.hitPathways) {
-            if(pathway.getStId().equals(pathway_stid)) {
-                return true;
-            }
-        }
-        return false;
+        return getHitPathwayByStid(pathway_stid) != null;
     }
 
     public Pathway getHitPathwayByStid(String stid){
-        for(Pathway pathway : this.hitPathways) {
-            if(pathway.getStId().equals(stid)) {
-                return pathway;
-            }
+        if (reference == null) {
+            return null;
         }
-        return null;
+        int pathwayId = reference.getPathways().getId(stid);
+        return pathwayId == IdDictionary.MISSING ? null : hitPathwaysById[pathwayId];
     }
 
 }
@@ -0,0 +1,265 @@
+package no.uib.pap.methods.search;
+
+import org.apache.commons.lang3.tuple.MutablePair;
+import org.apache.commons.lang3.tuple.Pair;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A {@link PeptideIndex} made of the sorted suffixes of the protein sequences of a FASTA file, read without the
+ * sequence factory of compomics utilities.
+ * <p>
+ * <p>The sequences are kept one after the other, each one followed by a separator, and the suffixes are sorted by
+ * prefix doubling in time O(n log n). The suffixes that start with a peptide are next to each other, so they are found
+ * with two binary searches, and the protein of each one with a binary search of the start of the sequences. I and L
+ * are the same amino acid for the index, as they have the same mass, and the letters of the peptides and the
+ * sequences are compared in upper case.</p>
+ */
+public final class SuffixArrayPeptideIndex implements PeptideIndex, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final byte SEPARATOR = 0;
+
+    private final String[] accessions;
+    // Position of the first residue of each protein in the residues
+    private final int[] proteinStarts;
+    private final byte[] residues;
+    // Positions of the suffixes of the residues in sorted order
+    private final int[] suffixes;
+
+    private SuffixArrayPeptideIndex(String[] accessions, int[] proteinStarts, byte[] residues) {
+        this.accessions = accessions;
+        this.proteinStarts = proteinStarts;
+        this.residues = residues;
+        this.suffixes = sortSuffixes(residues);
+    }
+
+    /**
+     * Reads the protein sequences of the FASTA file and indexes them.
+     */
+    public static SuffixArrayPeptideIndex of(Path fastaFile) throws IOException {
+        List<String> accessions = new ArrayList<>();
+        List<Integer> proteinStarts = new ArrayList<>();
+        ByteArrayOutputStream residues = new ByteArrayOutputStream();
+        try (BufferedReader reader = Files.newBufferedReader(fastaFile, StandardCharsets.ISO_8859_1)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(">")) {
+                    if (!accessions.isEmpty()) {
+                        residues.write(SEPARATOR);
+                    }
+                    accessions.add(getAccession(line));
+                    proteinStarts.add(residues.size());
+                } else if (!accessions.isEmpty()) {
+                    for (int i = 0; i < line.length(); i++) {
+                        if (!Character.isWhitespace(line.charAt(i))) {
+                            residues.write(encode(line.charAt(i)));
+                        }
+                    }
+                }
+            }
+        }
+        if (!accessions.isEmpty()) {
+            residues.write(SEPARATOR);
+        }
+        return new SuffixArrayPeptideIndex(accessions.toArray(new String[0]),
+                proteinStarts.stream().mapToInt(Integer::intValue).toArray(), residues.toByteArray());
+    }
+
+    /**
+     * Gets the accession of a FASTA header line, the second field of the UniProt headers such as
+     * ">sp|P01308|INS_HUMAN Insulin" and the first word of the others.
+     */
+    static String getAccession(String header) {
+        String description = header.substring(1).trim();
+        if (description.startsWith("sp|") || description.startsWith("tr|")) {
+            int end = description.indexOf('|', 3);
+            return description.substring(3, end < 0 ? description.length() : end);
+        }
+        int end = 0;
+        while (end < description.length() && !Character.isWhitespace(description.charAt(end))) {
+            end++;
+        }
+        return description.substring(0, end);
+    }
+
+    private static byte encode(char residue) {
+        char upper = Character.toUpperCase(residue);
+        return (byte) (upper == 'I' ? 'L' : upper);
+    }
+
+    /*
+     * Sorts the suffixes by their first k residues for k = 1, 2, 4... until no two suffixes have the same rank. Each
+     * round sorts them by the rank of their second half, which is the order of the previous round shifted by k, and
+     * then by the rank of their first half with a stable counting sort.
+     */
+    static int[] sortSuffixes(byte[] text) {
+        int n = text.length;
+        int[] suffixes = new int[n];
+        int[] rank = new int[n];
+        int[] order = new int[n];
+        int[] counts = new int[Math.max(256, n) + 1];
+        if (n == 0) {
+            return suffixes;
+        }
+
+        for (byte residue : text) {
+            counts[(residue & 0xFF) + 1]++;
+        }
+        for (int i = 1; i < counts.length; i++) {
+            counts[i] += counts[i - 1];
+        }
+        for (int i = 0; i < n; i++) {
+            suffixes[counts[text[i] & 0xFF]++] = i;
+        }
+        int classes = 1;
+        rank[suffixes[0]] = 0;
+        for (int i = 1; i < n; i++) {
+            if (text[suffixes[i]] != text[suffixes[i - 1]]) {
+                classes++;
+            }
+            rank[suffixes[i]] = classes - 1;
+        }
+
+        for (int k = 1; classes < n; k <<= 1) {
+            // The suffixes without a second half come first
+            int position = 0;
+            for (int i = n - k; i < n; i++) {
+                order[position++] = i;
+            }
+            for (int i = 0; i < n; i++) {
+                if (suffixes[i] >= k) {
+                    order[position++] = suffixes[i] - k;
+                }
+            }
+
+            Arrays.fill(counts, 0, classes + 1, 0);
+            for (int i = 0; i < n; i++) {
+                counts[rank[i] + 1]++;
+            }
+            for (int i = 1; i <= classes; i++) {
+                counts[i] += counts[i - 1];
+            }
+            for (int i = 0; i < n; i++) {
+                suffixes[counts[rank[order[i]]]++] = order[i];
+            }
+
+            // The order is not needed any more, so it takes the new ranks
+            int[] newRank = order;
+            classes = 1;
+            newRank[suffixes[0]] = 0;
+            for (int i = 1; i < n; i++) {
+                int current = suffixes[i];
+                int previous = suffixes[i - 1];
+                if (rank[current] != rank[previous] || secondRank(rank, current + k) != secondRank(rank, previous + k)) {
+                    classes++;
+                }
+                newRank[current] = classes - 1;
+            }
+            order = rank;
+            rank = newRank;
+        }
+        return suffixes;
+    }
+
+    private static int secondRank(int[] rank, int position) {
+        return position < rank.length ? rank[position] : -1;
+    }
+
+    /*
+     * Compares the peptide with the start of the suffix, 0 if the suffix starts with the peptide.
+     */
+    private int compare(byte[] peptide, int suffix) {
+        for (int i = 0; i < peptide.length; i++) {
+            if (suffix + i == residues.length) {
+                return 1;
+            }
+            int difference = (peptide[i] & 0xFF) - (residues[suffix + i] & 0xFF);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return 0;
+    }
+
+    /*
+     * Index of the first suffix that is not smaller than the peptide, or that is larger if after is true.
+     */
+    private int bound(byte[] peptide, boolean after) {
+        int low = 0;
+        int high = suffixes.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            int comparison = compare(peptide, suffixes[middle]);
+            if (comparison > 0 || (after && comparison == 0)) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return The accession of each protein that contains the peptide and the position of the peptide in it, from 0,
+     * sorted by the order of the proteins in the FASTA file and then by position
+     */
+    @Override
+    public List<Pair<String, Integer>> getProteinMapping(String peptideSequence) {
+        byte[] peptide = new byte[peptideSequence.length()];
+        for (int i = 0; i < peptide.length; i++) {
+            peptide[i] = encode(peptideSequence.charAt(i));
+            if (peptide[i] == SEPARATOR) {
+                return Collections.emptyList();
+            }
+        }
+        if (peptide.length == 0) {
+            return Collections.emptyList();
+        }
+
+        int[] positions = Arrays.copyOfRange(suffixes, bound(peptide, false), bound(peptide, true));
+        Arrays.sort(positions);
+        List<Pair<String, Integer>> mappings = new ArrayList<>(positions.length);
+        for (int position : positions) {
+            int protein = Arrays.binarySearch(proteinStarts, position);
+            if (protein < 0) {
+                protein = -protein - 2;
+            }
+            mappings.add(new MutablePair<>(accessions[protein], position - proteinStarts[protein]));
+        }
+        return mappings;
+    }
+
+    public int getProteinCount() {
+        return accessions.length;
+    }
+
+    /**
+     * @return Number of residues of all the proteins
+     */
+    public int getResidueCount() {
+        return residues.length - accessions.length;
+    }
+
+    /**
+     * @return Approximate number of bytes used by the index, including the array headers and the accessions
+     */
+    public long getSizeInBytes() {
+        long size = 16L + 4 * 16L + 1L * residues.length + 4L * suffixes.length + 4L * proteinStarts.length + 4L * accessions.length;
+        for (String accession : accessions) {
+            size += 40L + accession.length();
+        }
+        return size;
+    }
+}
@@ -0,0 +1,206 @@
+package no.uib.pap.methods.search;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads the chromosome and position of the records of a vcf file, one record at a time.
+ * <p>
+ * <p>Plain files are memory mapped in windows of at most {@link #MAPPED_WINDOW} bytes. Gzip and block gzip (bgzip)
+ * files are recognized by their first bytes and inflated through a fixed size buffer. The bytes are parsed as they
+ * come, without creating a string for each line, so the memory used does not depend on the size of the file.</p>
+ * <p>
+ * <p>The header lines, which start with '#', are skipped. The CHROM column must be a number, optionally with the
+ * "chr" prefix, and the POS column must be a number. Other lines are returned as invalid records, so the caller can
+ * report their rows.</p>
+ */
+public final class VcfReader implements Closeable {
+
+    static final int MAPPED_WINDOW = 1 << 30;
+    private static final int GZIP_BUFFER = 1 << 20;
+
+    private enum State {
+        LINE_START, CHROM, POS, SKIP_LINE
+    }
+
+    private final FileChannel channel;
+    private final InputStream inflater;
+    private final byte[] inflated;
+    private long mappedUntil = 0;
+    private ByteBuffer buffer;
+
+    private State state = State.LINE_START;
+    private int prefixLength;
+    private int chrDigits;
+    private int chr;
+    private int posDigits;
+    private long bp;
+    private boolean valid;
+
+    private int row = 0;
+
+    public VcfReader(Path file) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        ByteBuffer magic = ByteBuffer.allocate(2);
+        channel.read(magic, 0);
+        if (magic.position() == 2 && (magic.get(0) & 0xff) == 0x1f && (magic.get(1) & 0xff) == 0x8b) {
+            // GZIPInputStream reads all the members of the file, and a bgzip file is a sequence of gzip members
+            this.inflater = new GZIPInputStream(new BufferedInputStream(Channels.newInputStream(channel), GZIP_BUFFER), GZIP_BUFFER);
+            this.inflated = new byte[GZIP_BUFFER];
+            this.buffer = ByteBuffer.wrap(inflated, 0, 0);
+        } else {
+            this.inflater = null;
+            this.inflated = null;
+            this.buffer = ByteBuffer.allocate(0);
+        }
+    }
+
+    /*
+     * Gets the next bytes of the file. Returns false at the end of the file.
+     */
+    private boolean fill() throws IOException {
+        if (inflater != null) {
+            int read = inflater.read(inflated);
+            if (read < 0) {
+                return false;
+            }
+            buffer = ByteBuffer.wrap(inflated, 0, read);
+            return true;
+        }
+        long size = channel.size();
+        if (mappedUntil >= size) {
+            return false;
+        }
+        long length = Math.min(MAPPED_WINDOW, size - mappedUntil);
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, mappedUntil, length);
+        mappedUntil += length;
+        return true;
+    }
+
+    /**
+     * Moves to the next record, valid or not.
+     *
+     * @return False at the end of the file
+     */
+    public boolean next() throws IOException {
+        while (true) {
+            while (buffer.hasRemaining()) {
+                if (accept(buffer.get())) {
+                    return true;
+                }
+            }
+            if (!fill()) {
+                // A last line without a line break
+                return state != State.LINE_START && accept((byte) '\n');
+            }
+        }
+    }
+
+    /*
+     * Parses one byte. Returns true when the byte completes a record.
+     */
+    private boolean accept(byte b) {
+        switch (state) {
+            case LINE_START:
+                row++;
+                if (b == '\n' || b == '\r') {
+                    state = b == '\n' ? State.LINE_START : State.SKIP_LINE;
+                    return false;
+                }
+                if (b == '#') {
+                    state = State.SKIP_LINE;
+                    return false;
+                }
+                prefixLength = 0;
+                chrDigits = 0;
+                chr = 0;
+                state = State.CHROM;
+                return accept(b);
+            case CHROM:
+                if (b >= '0' && b <= '9' && (prefixLength == 0 || prefixLength == 3) && chrDigits < 2) {
+                    chr = chr * 10 + (b - '0');
+                    chrDigits++;
+                    return false;
+                }
+                if (chrDigits == 0 && isChrPrefix(b, prefixLength)) {
+                    prefixLength++;
+                    return false;
+                }
+                if (b == '\t' || b == ' ') {
+                    posDigits = 0;
+                    bp = 0;
+                    state = State.POS;
+                    return false;
+                }
+                return endInvalid(b);
+            case POS:
+                if (b >= '0' && b <= '9' && bp <= (Long.MAX_VALUE - 9) / 10) {
+                    bp = bp * 10 + (b - '0');
+                    posDigits++;
+                    return false;
+                }
+                if (b == '\t' || b == ' ' || b == '\r' || b == '\n') {
+                    if (chrDigits == 0 || posDigits == 0) {
+                        return endInvalid(b);
+                    }
+                    valid = true;
+                    state = b == '\n' ? State.LINE_START : State.SKIP_LINE;
+                    return true;
+                }
+                return endInvalid(b);
+            default:
+                if (b == '\n') {
+                    state = State.LINE_START;
+                }
+                return false;
+        }
+    }
+
+    private static boolean isChrPrefix(byte b, int index) {
+        return (index == 0 && b == 'c') || (index == 1 && b == 'h') || (index == 2 && b == 'r');
+    }
+
+    private boolean endInvalid(byte b) {
+        valid = false;
+        state = b == '\n' ? State.LINE_START : State.SKIP_LINE;
+        return true;
+    }
+
+    /**
+     * @return True if the current record has a numeric chromosome and position
+     */
+    public boolean isValid() {
+        return valid;
+    }
+
+    public int getChr() {
+        return chr;
+    }
+
+    public long getBp() {
+        return bp;
+    }
+
+    /**
+     * @return Line number of the current record, starting at 1
+     */
+    public int getRow() {
+        return row;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (inflater != null) {
+            inflater.close();
+        }
+        channel.close();
+    }
+}
@@ -0,0 +1,169 @@
+package no.uib.pap.methods.matching;
+
+import no.uib.pap.model.InputType;
+import no.uib.pap.model.Mapping;
+import no.uib.pap.model.MatchType;
+import no.uib.pap.model.Proteoform;
+import no.uib.pap.model.ProteoformFormat;
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PackedProteoformTest {
+
+    private static Mapping mapping;
+
+    @BeforeAll
+    static void loadStaticMapping() {
+        mapping = new Mapping(InputType.PROTEOFORM, true);
+    }
+
+    // Types of the proteoforms packed without an index, shared so that any two of them compare
+    private static final PtmTypes types = new PtmTypes();
+
+    private static PackedProteoform pack(Proteoform proteoform) {
+        return PackedProteoform.of(proteoform, types::add);
+    }
+
+    // Changes the coordinates and PTMs of a reference proteoform, to get inputs that match it in some ways and not others
+    static Proteoform mutate(Proteoform proteoform, Random random) {
+        Proteoform mutated = new Proteoform(proteoform.getUniProtAccWithIsoform());
+        for (Pair<String, Long> ptm : proteoform.getPtms()) {
+            switch (random.nextInt(6)) {
+                case 0:
+                    break;
+                case 1:
+                    mutated.addPtm(ptm.getKey(), random.nextBoolean() ? null : -1L);
+                    break;
+                case 2:
+                    mutated.addPtm(ptm.getKey(), ptm.getValue() == null ? null : Math.max(1, ptm.getValue() + random.nextInt(7) - 3));
+                    break;
+                case 3:
+                    mutated.addPtm("00046", ptm.getValue());
+                    break;
+                default:
+                    mutated.addPtm(ptm.getKey(), ptm.getValue());
+            }
+        }
+        if (random.nextInt(4) == 0) {
+            mutated.addPtm("00048", (long) random.nextInt(500));
+        }
+        return mutated;
+    }
+
+    @Test
+    void sameAsProteoformsTest() {
+        Random random = new Random(7);
+        List<Proteoform> references = new ArrayList<>(mapping.getProteinsToProteoforms().values());
+        List<Proteoform> inputs = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            Proteoform reference = references.get(random.nextInt(references.size()));
+            inputs.add(random.nextInt(5) == 0 ? reference : mutate(reference, random));
+        }
+        for (MatchType matchType : MatchType.values()) {
+            ProteoformMatching matcher = ProteoformMatching.getInstance(matchType);
+            for (long margin = 0; margin <= 3; margin++) {
+                int matched = 0;
+                for (Proteoform input : inputs) {
+                    PackedProteoform packedInput = ProteoformIndex.of(mapping).pack(input);
+                    assertTrue(packedInput.isPacked(), input.toString());
+                    for (PackedProteoform reference : ProteoformIndex.of(mapping).get(input.getUniProtAcc())) {
+                        boolean expected = matcher.matches(input, reference.getProteoform(), margin);
+                        assertEquals(expected, matcher.matches(packedInput, reference, margin), matchType + " " + margin + " " + input + " " + reference.getProteoform());
+                        matched += expected ? 1 : 0;
+                    }
+                }
+                assertTrue(matched > 0, matchType + " " + margin);
+            }
+        }
+    }
+
+    @Test
+    void duplicatesTest() throws ParseException {
+        ProteoformFormat pf = ProteoformFormat.SIMPLE;
+        PackedProteoform iP = pack(pf.getProteoform("A2RUS2;00046:472,00046:472,00048:490"));
+        PackedProteoform rP = pack(pf.getProteoform("A2RUS2;00046:472,00048:490,00048:490"));
+        assertTrue(ProteoformMatching.getInstance(MatchType.STRICT).matches(iP, rP, 0L));
+
+        rP = pack(pf.getProteoform("A2RUS2;00046:472,00048:490,00048:491"));
+        assertFalse(ProteoformMatching.getInstance(MatchType.STRICT).matches(iP, rP, 0L));
+        assertTrue(ProteoformMatching.getInstance(MatchType.SUPERSET).matches(iP, rP, 1L));
+    }
+
+    @Test
+    void notPackedTest() throws ParseException {
+        Proteoform large = ProteoformFormat.SIMPLE.getProteoform("A2RUS2;00046:8589934592");
+        PackedProteoform iP = pack(large);
+        assertFalse(iP.isPacked());
+        assertSame(large, iP.getProteoform());
+
+        PackedProteoform rP = pack(ProteoformFormat.SIMPLE.getProteoform("A2RUS2;00046:8589934590"));
+        ProteoformMatching matcher = ProteoformMatching.getInstance(MatchType.SUBSET);
+        assertFalse(matcher.matches(iP, rP, 0L));
+        assertTrue(matcher.matches(iP, rP, 2L));
+    }
+
+    @Test
+    void manyPtmsTest() {
+        Random random = new Random(3);
+        String[] types = {"00046", "00047", "00048"};
+        for (int i = 0; i < 500; i++) {
+            Proteoform iP = new Proteoform("P68431");
+            Proteoform rP = new Proteoform("P68431");
+            for (int ptm = random.nextInt(200); ptm > 0; ptm--) {
+                iP.addPtm(types[random.nextInt(types.length)], (long) random.nextInt(2000));
+            }
+            for (int ptm = random.nextInt(8); ptm > 0; ptm--) {
+                rP.addPtm(types[random.nextInt(types.length)], random.nextInt(50) == 0 ? null : (long) random.nextInt(2000));
+            }
+            for (MatchType matchType : MatchType.values()) {
+                ProteoformMatching matcher = ProteoformMatching.getInstance(matchType);
+                for (long margin : new long[]{0, 2, 10}) {
+                    assertEquals(matcher.matches(iP, rP, margin), matcher.matches(pack(iP), pack(rP), margin), matchType + " " + margin);
+                    assertEquals(matcher.matches(rP, iP, margin), matcher.matches(pack(rP), pack(iP), margin), matchType + " " + margin);
+                }
+            }
+        }
+    }
+
+    @Test
+    void unknownTypesTest() throws ParseException {
+        ProteoformIndex index = ProteoformIndex.of(mapping);
+        int typeCount = index.getTypeCount();
+        PackedProteoform input = index.pack(ProteoformFormat.SIMPLE.getProteoform("P01308;99991:31,99992:43,00798:43"));
+        assertTrue(input.isPacked());
+        assertEquals(PtmTypes.UNKNOWN, PackedProteoform.type(input.getPtms()[0]));
+        assertEquals(PtmTypes.UNKNOWN, PackedProteoform.type(input.getPtms()[1]));
+        assertNotEquals(PtmTypes.UNKNOWN, PackedProteoform.type(input.getPtms()[2]));
+        // The types of the inputs are not kept
+        assertEquals(typeCount, index.getTypeCount());
+
+        for (MatchType matchType : MatchType.values()) {
+            ProteoformMatching matcher = ProteoformMatching.getInstance(matchType);
+            for (PackedProteoform reference : index.get("P01308")) {
+                assertEquals(matcher.matches(input.getProteoform(), reference.getProteoform(), 0L), matcher.matches(input, reference, 0L), matchType + " " + reference.getProteoform());
+            }
+        }
+    }
+
+    @Test
+    void lowerBoundTest() {
+        long[] sorted = {1, 3, 3, 5, 8, 13, 21};
+        for (int from = 0; from <= sorted.length; from++) {
+            for (long key = 0; key <= 22; key++) {
+                int expected = from;
+                while (expected < sorted.length && sorted[expected] < key) {
+                    expected++;
+                }
+                assertEquals(expected, PackedProteoform.lowerBound(sorted, from, key));
+            }
+        }
+    }
+}
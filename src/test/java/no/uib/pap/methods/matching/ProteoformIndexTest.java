@@ -0,0 +1,87 @@
+package no.uib.pap.methods.matching;
+
+import no.uib.pap.model.InputType;
+import no.uib.pap.model.Mapping;
+import no.uib.pap.model.MatchType;
+import no.uib.pap.model.Proteoform;
+import no.uib.pap.model.ProteoformFormat;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProteoformIndexTest {
+
+    private static Mapping mapping;
+    private static ProteoformIndex index;
+
+    @BeforeAll
+    static void loadStaticMapping() {
+        mapping = new Mapping(InputType.PROTEOFORM, true);
+        index = ProteoformIndex.of(mapping);
+    }
+
+    private static List<Proteoform> matches(ProteoformMatching matcher, PackedProteoform input, Iterable<PackedProteoform> references, Long margin) {
+        List<Proteoform> matches = new ArrayList<>();
+        for (PackedProteoform reference : references) {
+            if (matcher.matches(input, reference, margin)) {
+                matches.add(reference.getProteoform());
+            }
+        }
+        return matches;
+    }
+
+    @Test
+    void candidatesTest() {
+        Random random = new Random(11);
+        List<Proteoform> references = new ArrayList<>(mapping.getProteinsToProteoforms().values());
+        List<PackedProteoform> inputs = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            Proteoform reference = references.get(random.nextInt(references.size()));
+            inputs.add(index.pack(random.nextInt(5) == 0 ? reference : PackedProteoformTest.mutate(reference, random)));
+        }
+        for (MatchType matchType : MatchType.values()) {
+            ProteoformMatching matcher = ProteoformMatching.getInstance(matchType);
+            for (long margin : new long[]{0, 1, 3, 20}) {
+                long candidates = 0;
+                long proteoforms = 0;
+                for (PackedProteoform input : inputs) {
+                    List<PackedProteoform> all = Arrays.asList(index.get(input.getProteoform().getUniProtAcc()));
+                    List<PackedProteoform> pruned = index.getCandidates(input, matchType, margin);
+                    assertEquals(matches(matcher, input, all, margin), matches(matcher, input, pruned, margin), matchType + " " + margin + " " + input.getProteoform());
+                    candidates += pruned.size();
+                    proteoforms += all.size();
+                }
+                if (margin == 0) {
+                    assertTrue(candidates < proteoforms, matchType.toString());
+                }
+            }
+        }
+    }
+
+    @Test
+    void histoneTest() throws ParseException {
+        // Histone H3.1
+        String histone = "P68431";
+        Proteoform reference = mapping.getProteinsToProteoforms().get(histone).stream()
+                .filter(proteoform -> proteoform.getPtms().size() > 1)
+                .findFirst().get();
+        PackedProteoform input = index.pack(reference);
+
+        List<PackedProteoform> candidates = index.getCandidates(input, MatchType.STRICT, 0L);
+        assertTrue(candidates.stream().map(PackedProteoform::getProteoform).collect(Collectors.toList()).contains(reference));
+        assertTrue(candidates.size() < index.get(histone).length);
+
+        // Any proteoform of the isoform can have the PTMs of an input without PTMs
+        PackedProteoform unmodified = index.pack(ProteoformFormat.SIMPLE.getProteoform(reference.getUniProtAccWithIsoform() + ";"));
+        assertEquals(mapping.getProteinsToProteoforms().get(histone).stream().filter(proteoform -> proteoform.getUniProtAccWithIsoform().equals(reference.getUniProtAccWithIsoform())).count(),
+                index.getCandidates(unmodified, MatchType.SUBSET, 0L).size());
+    }
+}
@@ -0,0 +1,104 @@
+package no.uib.pap.methods.matching;
+
+import no.uib.pap.model.InputType;
+import no.uib.pap.model.Mapping;
+import no.uib.pap.model.MatchType;
+import no.uib.pap.model.Proteoform;
+import no.uib.pap.model.ProteoformFormat;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProteoformMatchCacheTest {
+
+    private static Mapping mapping;
+    private static ProteoformIndex index;
+    private static List<Proteoform> inputs;
+
+    @BeforeAll
+    static void loadStaticMapping() {
+        mapping = new Mapping(InputType.PROTEOFORM, true);
+        index = ProteoformIndex.of(mapping);
+
+        Random random = new Random(23);
+        List<Proteoform> references = new ArrayList<>(mapping.getProteinsToProteoforms().values());
+        inputs = new ArrayList<>();
+        for (int i = 0; i < 800; i++) {
+            Proteoform reference = references.get(random.nextInt(references.size()));
+            inputs.add(random.nextInt(3) == 0 ? reference : PackedProteoformTest.mutate(reference, random));
+        }
+    }
+
+    private static void assertSameMatches(ProteoformMatchTable expected, ProteoformMatchTable table) {
+        assertEquals(expected.size(), table.size());
+        for (int input = 0; input < expected.size(); input++) {
+            assertSame(expected.getInput(input), table.getInput(input));
+            assertEquals(expected.end(input) - expected.start(input), table.end(input) - table.start(input));
+            for (int match = expected.start(input); match < expected.end(input); match++) {
+                assertSame(expected.getReference(match), table.getReference(match - expected.start(input) + table.start(input)));
+            }
+        }
+    }
+
+    @Test
+    void matchAllTest() {
+        for (MatchType matchType : MatchType.values()) {
+            ProteoformMatchCache cache = new ProteoformMatchCache(index, 10_000);
+            ProteoformMatchTable expected = ProteoformMatching.matchAll(inputs, index, matchType, 2L, null);
+            assertSameMatches(expected, cache.matchAll(inputs, matchType, 2L, null));
+            assertEquals(0, cache.getStats().hitCount());
+            long entries = cache.size();
+
+            // The second time all the inputs are in the cache
+            assertSameMatches(expected, cache.matchAll(inputs, matchType, 2L, null));
+            assertEquals(inputs.size(), cache.getStats().hitCount());
+            assertEquals(entries, cache.size());
+
+            // Other margins have their own entries
+            assertSameMatches(ProteoformMatching.matchAll(inputs, index, matchType, 0L, null), cache.matchAll(inputs, matchType, 0L, null));
+            assertEquals(inputs.size(), cache.getStats().hitCount());
+        }
+    }
+
+    @Test
+    void normalizedTest() throws ParseException {
+        ProteoformMatchCache cache = new ProteoformMatchCache(index, 100);
+        Proteoform input = ProteoformFormat.SIMPLE.getProteoform("P01308;00798:31,00798:43,00087:96");
+        Proteoform reordered = ProteoformFormat.SIMPLE.getProteoform("P01308;00087:96,00798:43,00798:31");
+        List<Proteoform> matches = cache.getMatches(input, MatchType.ONE, 0L);
+        assertFalse(matches.isEmpty());
+        assertEquals(matches, cache.getMatches(reordered, MatchType.ONE, 0L));
+        assertEquals(1, cache.getStats().hitCount());
+        assertEquals(1, cache.getStats().missCount());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void evictionTest() {
+        ProteoformMatchCache cache = new ProteoformMatchCache(index, 50);
+        assertSameMatches(ProteoformMatching.matchAll(inputs, index, MatchType.ONE, 1L, null), cache.matchAll(inputs, MatchType.ONE, 1L, null));
+        assertTrue(cache.size() <= 50);
+        assertTrue(cache.getStats().evictionCount() > 0);
+        assertThrows(IllegalArgumentException.class, () -> new ProteoformMatchCache(index, -1));
+    }
+
+    @Test
+    void invalidateTest() {
+        ProteoformMatchCache cache = ProteoformMatchCache.of(mapping);
+        assertSame(cache, ProteoformMatchCache.of(mapping));
+        cache.matchAll(inputs.subList(0, 10), MatchType.SUPERSET, 0L, null);
+        assertTrue(cache.size() > 0);
+
+        ProteoformMatchCache.invalidate(mapping);
+        assertEquals(0, cache.size());
+        ProteoformMatchCache reloaded = ProteoformMatchCache.of(mapping);
+        assertNotSame(cache, reloaded);
+        assertEquals(0, reloaded.size());
+    }
+}
@@ -0,0 +1,120 @@
+package no.uib.pap.methods.matching;
+
+import no.uib.pap.model.InputType;
+import no.uib.pap.model.Mapping;
+import no.uib.pap.model.MatchType;
+import no.uib.pap.model.Proteoform;
+import no.uib.pap.model.ProteoformFormat;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProteoformMatchTableTest {
+
+    private static Mapping mapping;
+    private static ProteoformIndex index;
+    private static List<Proteoform> inputs;
+
+    @BeforeAll
+    static void loadStaticMapping() {
+        mapping = new Mapping(InputType.PROTEOFORM, true);
+        index = ProteoformIndex.of(mapping);
+
+        // Inputs of the same accessions spread over the list, so that the groups are not contiguous
+        Random random = new Random(5);
+        List<Proteoform> references = new ArrayList<>(mapping.getProteinsToProteoforms().values());
+        inputs = new ArrayList<>();
+        for (int i = 0; i < 1500; i++) {
+            Proteoform reference = references.get(random.nextInt(references.size()));
+            inputs.add(random.nextInt(3) == 0 ? reference : PackedProteoformTest.mutate(reference, random));
+            if (i % 7 == 0) {
+                inputs.add(inputs.get(random.nextInt(inputs.size())));
+            }
+        }
+    }
+
+    private static void assertMatches(ProteoformMatchTable table, MatchType matchType, long margin) {
+        ProteoformMatching matcher = ProteoformMatching.getInstance(matchType);
+        assertEquals(inputs.size(), table.size());
+        int count = 0;
+        for (int input = 0; input < inputs.size(); input++) {
+            assertSame(inputs.get(input), table.getInput(input));
+            List<Proteoform> expected = new ArrayList<>();
+            for (PackedProteoform reference : index.get(inputs.get(input).getUniProtAcc())) {
+                if (matcher.matches(inputs.get(input), reference.getProteoform(), margin)) {
+                    expected.add(reference.getProteoform());
+                }
+            }
+            List<Proteoform> matches = new ArrayList<>();
+            for (int match = table.start(input); match < table.end(input); match++) {
+                matches.add(table.getReference(match));
+            }
+            assertEquals(expected, matches, matchType + " " + margin + " " + inputs.get(input));
+            count += matches.size();
+        }
+        assertEquals(count, table.getMatchCount());
+    }
+
+    @Test
+    void matchAllTest() {
+        for (MatchType matchType : MatchType.values()) {
+            for (long margin : new long[]{0, 2}) {
+                assertMatches(ProteoformMatching.matchAll(inputs, index, matchType, margin, null), matchType, margin);
+            }
+        }
+    }
+
+    @Test
+    void parallelTest() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (MatchType matchType : Arrays.asList(MatchType.SUPERSET, MatchType.SUBSET_NO_TYPES, MatchType.STRICT)) {
+                assertMatches(ProteoformMatching.matchAll(inputs, index, matchType, 1L, pool), matchType, 1L);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void emptyTest() {
+        ProteoformMatchTable table = ProteoformMatching.matchAll(new ArrayList<>(), index, MatchType.ONE, 0L, null);
+        assertEquals(0, table.size());
+        assertEquals(0, table.getMatchCount());
+    }
+
+    @Test
+    void sweepTest() {
+        for (MatchType matchType : MatchType.values()) {
+            ProteoformMatchTable sweep = ProteoformMatching.sweep(inputs, index, matchType, 8, null);
+            assertTrue(sweep.isSweep());
+            for (long margin = 0; margin <= 8; margin++) {
+                ProteoformMatchTable table = sweep.atMargin(margin);
+                assertMatches(table, matchType, margin);
+                for (int match = 0; match < table.getMatchCount(); match++) {
+                    assertTrue(table.getMargin(match) <= margin);
+                }
+            }
+        }
+        assertFalse(ProteoformMatching.matchAll(inputs, index, MatchType.ONE, 0L, null).isSweep());
+        assertThrows(IllegalArgumentException.class, () -> ProteoformMatching.sweep(inputs, index, MatchType.ONE, -1, null));
+    }
+
+    @Test
+    void minimalMarginTest() throws ParseException {
+        PackedProteoform input = index.pack(ProteoformFormat.SIMPLE.getProteoform("P01308;00798:31,00798:43"));
+        PackedProteoform reference = index.pack(ProteoformFormat.SIMPLE.getProteoform("P01308;00798:34,00798:43"));
+        assertEquals(3, ProteoformMatching.getInstance(MatchType.SUPERSET).getMinimalMargin(input, reference, 10));
+        assertEquals(-1, ProteoformMatching.getInstance(MatchType.SUPERSET).getMinimalMargin(input, reference, 2));
+        assertEquals(0, ProteoformMatching.getInstance(MatchType.ONE).getMinimalMargin(input, reference, 10));
+        assertEquals(-1, ProteoformMatching.getInstance(MatchType.STRICT).getMinimalMargin(input, reference, 10));
+    }
+}
@@ -0,0 +1,93 @@
+package no.uib.pap.methods.matching;
+
+import no.uib.pap.model.InputType;
+import no.uib.pap.model.Mapping;
+import no.uib.pap.model.MatchType;
+import no.uib.pap.model.Proteoform;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the matching of every reference proteoform of a protein against every other one of the same protein with
+ * the {@link Proteoform}s and with the {@link PackedProteoform}s of the {@link ProteoformIndex}, for each match type.
+ * The number of pairs is printed when the benchmark starts.
+ * <p>
+ * <p>Run with the test classpath: java no.uib.pap.methods.matching.ProteoformMatchingBenchmark</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ProteoformMatchingBenchmark {
+
+    @Param({"SUPERSET", "SUPERSET_NO_TYPES", "SUBSET", "ONE", "STRICT"})
+    public MatchType matchType;
+
+    @Param({"0", "5"})
+    public long margin;
+
+    private ProteoformMatching matcher;
+    private List<Proteoform[]> proteins;
+    private List<PackedProteoform[]> packedProteins;
+
+    @Setup
+    public void setUp() {
+        Mapping mapping = new Mapping(InputType.PROTEOFORM, true);
+        ProteoformIndex index = ProteoformIndex.of(mapping);
+        matcher = ProteoformMatching.getInstance(matchType);
+        proteins = new ArrayList<>();
+        packedProteins = new ArrayList<>();
+        long pairs = 0;
+        for (String protein : mapping.getProteinsToProteoforms().keySet()) {
+            proteins.add(mapping.getProteinsToProteoforms().get(protein).toArray(new Proteoform[0]));
+            packedProteins.add(index.get(protein));
+            pairs += (long) index.get(protein).length * index.get(protein).length;
+        }
+
+        System.out.println();
+        System.out.println("Proteins: " + proteins.size() + ", pairs: " + pairs);
+    }
+
+    @Benchmark
+    public long matchProteoforms() {
+        long matches = 0;
+        for (Proteoform[] proteoforms : proteins) {
+            for (Proteoform iP : proteoforms) {
+                for (Proteoform rP : proteoforms) {
+                    if (matcher.matches(iP, rP, margin)) {
+                        matches++;
+                    }
+                }
+            }
+        }
+        return matches;
+    }
+
+    @Benchmark
+    public long matchPackedProteoforms() {
+        long matches = 0;
+        Long boxedMargin = margin;
+        for (PackedProteoform[] proteoforms : packedProteins) {
+            for (PackedProteoform iP : proteoforms) {
+                for (PackedProteoform rP : proteoforms) {
+                    if (matcher.matches(iP, rP, boxedMargin)) {
+                        matches++;
+                    }
+                }
+            }
+        }
+        return matches;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ProteoformMatchingBenchmark.class.getSimpleName()).build()).run();
+    }
+}
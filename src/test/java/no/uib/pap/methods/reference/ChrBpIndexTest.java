@@ -0,0 +1,192 @@
+package no.uib.pap.methods.reference;
+
+import no.uib.pap.model.InputType;
+import no.uib.pap.model.Mapping;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChrBpIndexTest {
+
+    private static Mapping mapping;
+    private static ChrBpIndex index;
+
+    @BeforeAll
+    static void loadStaticMapping() {
+        mapping = new Mapping(InputType.CHRBP, true);
+        index = ChrBpIndex.of(mapping);
+    }
+
+    @Test
+    void sameIndexTest() {
+        assertSame(index, ChrBpIndex.of(mapping));
+        assertSame(index.get(11), index.get(11));
+    }
+
+    @Test
+    void findTest() {
+        ChromosomeIndex chromosome = index.get(11);
+        int position = chromosome.find(2176042L);
+        assertNotEquals(ChromosomeIndex.MISSING, position);
+        assertEquals(2176042L, chromosome.getPosition(position));
+
+        Set<String> proteins = new LinkedHashSet<>();
+        for (int i = chromosome.start(position); i < chromosome.end(position); i++) {
+            proteins.add(chromosome.getProtein(i));
+        }
+        assertEquals(mapping.getChrBpToProteins(11).get(2176042L), proteins);
+        assertTrue(proteins.contains("P01308"));
+
+        assertEquals(ChromosomeIndex.MISSING, chromosome.find(-1L));
+    }
+
+    @Test
+    void sortedPositionsTest() {
+        ChromosomeIndex chromosome = index.get(21);
+        assertEquals(mapping.getChrBpToProteins(21).keySet().size(), chromosome.size());
+        for (int position = 1; position < chromosome.size(); position++) {
+            assertTrue(chromosome.getPosition(position - 1) < chromosome.getPosition(position));
+        }
+    }
+
+    @Test
+    void unknownChromosomeTest() {
+        assertEquals(0, index.get(23).size());
+        assertEquals(ChromosomeIndex.MISSING, index.get(0).find(2176042L));
+    }
+
+    @Test
+    void lowerBoundTest() {
+        ChromosomeIndex chromosome = index.get(11);
+        int position = chromosome.find(2176042L);
+        assertEquals(position, chromosome.lowerBound(2176042L));
+        assertEquals(position + 1, chromosome.lowerBound(2176043L));
+        assertEquals(0, chromosome.lowerBound(-1L));
+        assertEquals(chromosome.size(), chromosome.lowerBound(Long.MAX_VALUE));
+    }
+
+    @Test
+    void prefersMergeJoinTest() {
+        ChromosomeIndex chromosome = index.get(11);
+        assertFalse(chromosome.prefersMergeJoin(4));
+        assertTrue(chromosome.prefersMergeJoin(chromosome.size()));
+    }
+
+    @Test
+    void intervalsTest() {
+        ChromosomeIndex chromosome = index.get(11);
+        IntervalIndex intervals = index.getIntervals(11);
+        assertSame(intervals, index.getIntervals(11));
+        assertEquals(0, index.getIntervals(23).size());
+
+        for (int i = 1; i < intervals.size(); i++) {
+            assertTrue(intervals.getStart(i - 1) <= intervals.getStart(i));
+            assertTrue(intervals.getStart(i) <= intervals.getEnd(i));
+        }
+
+        // Every protein at a position is found by a query of that position, and only overlapping intervals are found
+        long bp = chromosome.getPosition(chromosome.find(2176042L));
+        Set<String> proteins = new LinkedHashSet<>();
+        intervals.forEachOverlap(bp, bp, i -> {
+            assertTrue(intervals.getStart(i) <= bp);
+            assertTrue(intervals.getEnd(i) >= bp);
+            proteins.add(intervals.getProtein(i));
+        });
+        assertTrue(proteins.containsAll(mapping.getChrBpToProteins(11).get(2176042L)));
+    }
+
+    @Test
+    void evictionTest() {
+        ChromosomeTableSource<Long> files = ChromosomeTableSource.chrBpFiles("resources");
+        ChrBpIndex unlimited = new ChrBpIndex(files, Long.MAX_VALUE);
+        long budget = unlimited.get(21).getSizeInBytes() + unlimited.get(22).getSizeInBytes();
+
+        ChrBpIndex limited = new ChrBpIndex(files, budget);
+        assertFalse(limited.isLoaded(21));
+        limited.get(21);
+        limited.get(22);
+        assertTrue(limited.isLoaded(21));
+        assertTrue(limited.isLoaded(22));
+
+        limited.get(20);
+        assertFalse(limited.isLoaded(21));
+        assertTrue(limited.getLoadedSizeInBytes() <= budget);
+
+        // An evicted chromosome is loaded again
+        int position = limited.get(21).find(unlimited.get(21).getPosition(0));
+        assertEquals(0, position);
+    }
+
+    @Test
+    void budgetWithIntervalsAndFiltersTest() {
+        ChromosomeTableSource<Long> files = ChromosomeTableSource.chrBpFiles("resources");
+        ChrBpIndex unlimited = new ChrBpIndex(files, Long.MAX_VALUE);
+        long budget = unlimited.get(21).getSizeInBytes() + unlimited.get(22).getSizeInBytes();
+
+        // The intervals and the filter of a chromosome count against the budget, and are evicted with it
+        ChrBpIndex limited = new ChrBpIndex(files, budget);
+        limited.get(21);
+        limited.get(22);
+        long size = limited.getLoadedSizeInBytes();
+        limited.getIntervals(22);
+        limited.getFilter(22);
+        assertFalse(limited.isLoaded(21));
+        assertTrue(limited.isLoaded(22));
+        assertTrue(limited.getLoadedSizeInBytes() > size - unlimited.get(21).getSizeInBytes());
+        assertTrue(limited.getLoadedSizeInBytes() <= budget);
+
+        // The filter counts of an evicted chromosome are kept
+        limited.getFilter(22).mightContain(-1L);
+        long checks = limited.getFilterChecks();
+        limited.get(20);
+        limited.get(21);
+        assertFalse(limited.isLoaded(22));
+        assertEquals(checks, limited.getFilterChecks());
+    }
+
+    @Test
+    void defaultsTest() {
+        ChrBpIndex unlimited = new ChrBpIndex(ChromosomeTableSource.chrBpFiles("resources"), Long.MAX_VALUE);
+        long budget = unlimited.get(21).getSizeInBytes() + unlimited.get(22).getSizeInBytes() - 1;
+        assertThrows(IllegalArgumentException.class, () -> ChrBpIndex.setDefaults(null, -1));
+        ChrBpIndex.setDefaults(ChromosomeTableSource.chrBpFiles("resources"), budget);
+        try {
+            // The index of a mapping without base pair tables reads them from the files of the defaults
+            ChrBpIndex fromFiles = ChrBpIndex.of(new Mapping(InputType.UNIPROT, true));
+            assertEquals(index.get(21).size(), fromFiles.get(21).size());
+            fromFiles.get(22);
+            assertFalse(fromFiles.isLoaded(21));
+            assertTrue(fromFiles.getLoadedSizeInBytes() <= budget);
+        } finally {
+            ChrBpIndex.setDefaults(null, Long.MAX_VALUE);
+        }
+    }
+
+    @Test
+    void filesSourceTest() {
+        ChromosomeIndex fromFiles = new ChrBpIndex(ChromosomeTableSource.chrBpFiles("resources"), Long.MAX_VALUE).get(11);
+        ChromosomeIndex fromMapping = index.get(11);
+        assertEquals(fromMapping.size(), fromFiles.size());
+        int position = fromFiles.find(2176042L);
+        assertEquals(fromMapping.getProtein(fromMapping.start(fromMapping.find(2176042L))), fromFiles.getProtein(fromFiles.start(position)));
+    }
+
+    @Test
+    void filterTest() {
+        KeyFilter filter = index.getFilter(21);
+        ChromosomeIndex chromosome = index.get(21);
+        for (int position = 0; position < chromosome.size(); position++) {
+            assertTrue(filter.mightContain(chromosome.getPosition(position)));
+        }
+        long skips = filter.getSkips();
+        assertFalse(filter.mightContain(-1L) && filter.mightContain(-2L) && filter.mightContain(-3L));
+        assertTrue(filter.getSkips() > skips);
+        assertTrue(index.getFilterSkips() >= filter.getSkips());
+        assertSame(filter, index.getFilter(21));
+        assertThrows(IllegalArgumentException.class, () -> new ChrBpIndex(ChromosomeTableSource.chrBpFiles("resources"), Long.MAX_VALUE, 0));
+    }
+}
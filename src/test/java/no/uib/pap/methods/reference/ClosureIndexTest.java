@@ -0,0 +1,98 @@
+package no.uib.pap.methods.reference;
+
+import com.google.common.collect.ImmutableMap;
+import no.uib.pap.model.InputType;
+import no.uib.pap.model.Mapping;
+import no.uib.pap.model.Proteoform;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ClosureIndexTest {
+
+    private static Mapping mapping;
+    private static MappingView reference;
+    private static ImmutableMap<Proteoform, int[]> proteoformReactions;
+
+    @BeforeAll
+    static void loadStaticMapping() {
+        mapping = new Mapping(InputType.UNIPROT, true);
+        reference = MappingView.of(mapping);
+        ImmutableMap.Builder<Proteoform, int[]> builder = ImmutableMap.builder();
+        for (Proteoform proteoform : mapping.getProteoformsToReactions().keySet()) {
+            builder.put(proteoform, mapping.getProteoformsToReactions().get(proteoform).stream().mapToInt(reference.getReactions()::getId).toArray());
+        }
+        proteoformReactions = builder.build();
+    }
+
+    private static ClosureIndex newIndex(ClosureIndex.Loading loading, long maxBytes) {
+        return new ClosureIndex(reference.getProteinReactions(), reference.getReactionPathways(), reference.getPathwayTopLevelPathways(), proteoformReactions, loading, maxBytes);
+    }
+
+    @Test
+    void proteinClosureTest() {
+        Closure closure = reference.getClosures().get(reference.getProteins().getId("P01308"));
+
+        Set<String> reactions = new HashSet<>();
+        for (int reaction : closure.getReactions()) {
+            reactions.add(reference.getReactions().getName(reaction));
+        }
+        assertEquals(mapping.getProteinsToReactions().get("P01308"), reactions);
+
+        Set<String> pathways = new HashSet<>();
+        for (int pathway : closure.getPathways()) {
+            pathways.add(reference.getPathways().getName(pathway));
+        }
+        Set<String> expectedPathways = new HashSet<>();
+        Set<String> expectedTopLevelPathways = new HashSet<>();
+        for (String reaction : mapping.getProteinsToReactions().get("P01308")) {
+            for (String pathway : mapping.getReactionsToPathways().get(reaction)) {
+                expectedPathways.add(pathway);
+                if (mapping.getPathwaysToTopLevelPathways().get(pathway).isEmpty()) {
+                    expectedTopLevelPathways.add(pathway);
+                } else {
+                    expectedTopLevelPathways.addAll(mapping.getPathwaysToTopLevelPathways().get(pathway));
+                }
+            }
+        }
+        assertEquals(expectedPathways, pathways);
+        assertTrue(pathways.contains("R-HSA-392499"));
+
+        Set<String> topLevelPathways = new HashSet<>();
+        for (int pathway : closure.getTopLevelPathways()) {
+            topLevelPathways.add(reference.getPathways().getName(pathway));
+        }
+        assertEquals(expectedTopLevelPathways, topLevelPathways);
+    }
+
+    @Test
+    void proteoformClosureTest() {
+        Proteoform proteoform = mapping.getProteinsToProteoforms().get("P01308").iterator().next();
+        Closure closure = reference.getClosures().get(proteoform);
+        assertEquals(mapping.getProteoformsToReactions().get(proteoform).size(), closure.getReactions().length);
+        assertEquals(0, reference.getClosures().get(new Proteoform("blabla")).getPathCount());
+    }
+
+    @Test
+    void eagerEqualsLazyTest() {
+        ClosureIndex eager = newIndex(ClosureIndex.Loading.EAGER, 0L);
+        ClosureIndex lazy = newIndex(ClosureIndex.Loading.LAZY, 0L);
+        for (int protein = 0; protein < reference.getProteins().size(); protein++) {
+            Closure expected = eager.get(protein);
+            Closure actual = lazy.get(protein);
+            assertEquals(expected.getPathCount(), actual.getPathCount());
+            assertEquals(expected.getRollUpCount(), actual.getRollUpCount());
+            assertArrayEquals(expected.getPathways(), actual.getPathways());
+            assertArrayEquals(expected.getTopLevelPathways(), actual.getTopLevelPathways());
+        }
+    }
+
+    @Test
+    void negativeBudgetTest() {
+        assertThrows(IllegalArgumentException.class, () -> newIndex(ClosureIndex.Loading.LAZY, -1L));
+    }
+}
@@ -0,0 +1,35 @@
+package no.uib.pap.methods.reference;
+
+import com.google.common.collect.ImmutableSetMultimap;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class CsrGraphTest {
+
+    @Test
+    void ofTest() {
+        ImmutableSetMultimap<String, String> multimap = ImmutableSetMultimap.<String, String>builder()
+                .putAll("a", "y", "x")
+                .put("c", "z")
+                .put("c", "unknown")
+                .build();
+        IdDictionary sources = new IdDictionary(Arrays.asList("a", "b", "c"));
+        IdDictionary targets = new IdDictionary(Arrays.asList("x", "y", "z"));
+
+        CsrGraph graph = CsrGraph.of(multimap, sources, targets);
+
+        assertEquals(3, graph.getSourceCount());
+        assertEquals(3, graph.getEdgeCount());
+        assertEquals(2, graph.degree(sources.getId("a")));
+        assertEquals(0, graph.degree(sources.getId("b")));
+        assertEquals(1, graph.degree(sources.getId("c")));
+
+        int a = sources.getId("a");
+        assertEquals(targets.getId("y"), graph.target(graph.start(a)));
+        assertEquals(targets.getId("x"), graph.target(graph.start(a) + 1));
+        assertEquals(targets.getId("z"), graph.target(graph.start(sources.getId("c"))));
+    }
+}
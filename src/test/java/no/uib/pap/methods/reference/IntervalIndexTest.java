@@ -0,0 +1,84 @@
+package no.uib.pap.methods.reference;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.Multimap;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IntervalIndexTest {
+
+    // Every interval that overlaps the query, in the order of the intervals
+    private static List<Integer> scan(IntervalIndex index, long start, long end) {
+        List<Integer> overlaps = new ArrayList<>();
+        for (int i = 0; i < index.size(); i++) {
+            if (index.getStart(i) <= end && index.getEnd(i) >= start) {
+                overlaps.add(i);
+            }
+        }
+        return overlaps;
+    }
+
+    private static List<Integer> query(IntervalIndex index, long start, long end) {
+        List<Integer> overlaps = new ArrayList<>();
+        index.forEachOverlap(start, end, overlaps::add);
+        return overlaps;
+    }
+
+    @Test
+    void randomTest() {
+        Random random = new Random(5);
+        Multimap<Long, String> chrBpToProteins = ArrayListMultimap.create();
+        for (int protein = 0; protein < 500; protein++) {
+            long start = random.nextInt(1_000_000);
+            // Mostly short intervals, and a few wide ones
+            long width = random.nextInt(10) == 0 ? random.nextInt(1_000_000) : random.nextInt(2_000);
+            for (int position = random.nextInt(3); position >= 0; position--) {
+                chrBpToProteins.put(start + (long) (random.nextDouble() * width), "P" + protein);
+            }
+            chrBpToProteins.put(start, "P" + protein);
+            chrBpToProteins.put(start + width, "P" + protein);
+        }
+        IntervalIndex index = IntervalIndex.of(ChromosomeIndex.of(chrBpToProteins));
+        assertEquals(500, index.size());
+
+        for (int i = 0; i < 2000; i++) {
+            long start = random.nextInt(1_100_000) - 50_000;
+            long end = start + (i % 2 == 0 ? 0 : random.nextInt(20_000));
+            assertEquals(scan(index, start, end), query(index, start, end), start + "-" + end);
+        }
+        assertEquals(scan(index, Long.MIN_VALUE, Long.MAX_VALUE), query(index, Long.MIN_VALUE, Long.MAX_VALUE));
+    }
+
+    @Test
+    void wideIntervalTest() {
+        // One protein spans the chromosome, the others are short and apart
+        Multimap<Long, String> chrBpToProteins = ArrayListMultimap.create();
+        chrBpToProteins.put(1L, "WIDE");
+        chrBpToProteins.put(100_000_000L, "WIDE");
+        for (int protein = 0; protein < 10_000; protein++) {
+            chrBpToProteins.put(protein * 10_000L + 10, "P" + protein);
+            chrBpToProteins.put(protein * 10_000L + 500, "P" + protein);
+        }
+        IntervalIndex index = IntervalIndex.of(ChromosomeIndex.of(chrBpToProteins));
+
+        for (long bp = 50_000_000L; bp < 60_000_000L; bp += 1_237) {
+            List<Integer> overlaps = new ArrayList<>();
+            int compared = index.overlaps(bp, bp, overlaps::add);
+            assertEquals(scan(index, bp, bp), overlaps);
+            assertEquals("WIDE", index.getProtein(overlaps.get(0)));
+            // The wide interval does not make the query compare the intervals before the base pair
+            assertTrue(compared <= 3, bp + ": " + compared);
+        }
+    }
+
+    @Test
+    void emptyTest() {
+        assertEquals(0, IntervalIndex.EMPTY.size());
+        assertTrue(query(IntervalIndex.EMPTY, 0, Long.MAX_VALUE).isEmpty());
+    }
+}
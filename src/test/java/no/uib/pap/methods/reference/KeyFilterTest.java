@@ -0,0 +1,65 @@
+package no.uib.pap.methods.reference;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KeyFilterTest {
+
+    @Test
+    void noFalseNegativesTest() {
+        KeyFilter filter = KeyFilter.create(100_000, 0.01);
+        for (long key = 0; key < 100_000; key++) {
+            filter.add(key * 7919);
+        }
+        for (long key = 0; key < 100_000; key++) {
+            assertTrue(filter.mightContain(key * 7919));
+        }
+        assertEquals(100_000, filter.getChecks());
+        assertEquals(0, filter.getSkips());
+    }
+
+    @Test
+    void falsePositiveRateTest() {
+        Random random = new Random(42);
+        for (double rate : new double[]{0.1, 0.01, 0.001}) {
+            KeyFilter filter = KeyFilter.create(200_000, rate);
+            for (int i = 0; i < 200_000; i++) {
+                filter.add(random.nextInt(Integer.MAX_VALUE));
+            }
+            int passed = 0;
+            int checked = 0;
+            for (int i = 0; i < 200_000; i++) {
+                // Negative keys are never added
+                if (filter.mightContain(-1L - random.nextInt(Integer.MAX_VALUE))) {
+                    passed++;
+                }
+                checked++;
+            }
+            assertTrue((double) passed / checked < rate * 1.5, "Rate " + rate + " gave " + (double) passed / checked);
+            assertEquals(1.0 - (double) passed / checked, filter.getSkipRate(), 1e-9);
+        }
+    }
+
+    @Test
+    void allTest() {
+        KeyFilter filter = KeyFilter.create(1000, 1);
+        assertTrue(filter.mightContain(12345L));
+        assertEquals(0, filter.getChecks());
+        assertEquals(0, filter.getSizeInBytes());
+        assertThrows(IllegalArgumentException.class, () -> KeyFilter.create(1000, 0));
+        assertThrows(IllegalArgumentException.class, () -> KeyFilter.create(1000, 1.5));
+    }
+
+    @Test
+    void countersTest() {
+        KeyFilter filter = KeyFilter.create(10, 0.01);
+        filter.add(1L);
+        assertTrue(filter.mightContain(1L));
+        filter.recordFalsePositive();
+        assertEquals(1, filter.getChecks());
+        assertEquals(1, filter.getFalsePositives());
+    }
+}
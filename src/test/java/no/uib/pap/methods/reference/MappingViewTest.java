@@ -0,0 +1,68 @@
+package no.uib.pap.methods.reference;
+
+import no.uib.pap.model.InputType;
+import no.uib.pap.model.Mapping;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MappingViewTest {
+
+    private static Mapping mapping;
+    private static MappingView reference;
+
+    @BeforeAll
+    static void loadStaticMapping() {
+        mapping = new Mapping(InputType.UNIPROT, true);
+        reference = MappingView.of(mapping);
+    }
+
+    @Test
+    void sameViewTest() {
+        assertSame(reference, MappingView.of(mapping));
+    }
+
+    @Test
+    void dictionaryTest() {
+        int protein = reference.getProteins().getId("P01308");
+        assertNotEquals(IdDictionary.MISSING, protein);
+        assertEquals("P01308", reference.getProteins().getName(protein));
+        assertEquals(IdDictionary.MISSING, reference.getProteins().getId("blabla"));
+        assertEquals(mapping.getPathways().size(), reference.getPathways().size());
+    }
+
+    @Test
+    void proteinReactionsTest() {
+        Set<String> reactions = new HashSet<>();
+        CsrGraph graph = reference.getProteinReactions();
+        int protein = reference.getProteins().getId("P01308");
+        for (int i = graph.start(protein); i < graph.end(protein); i++) {
+            reactions.add(reference.getReactions().getName(graph.target(i)));
+        }
+        assertEquals(mapping.getProteinsToReactions().get("P01308"), reactions);
+    }
+
+    @Test
+    void reactionPathwaysTest() {
+        Set<String> pathways = new HashSet<>();
+        CsrGraph graph = reference.getReactionPathways();
+        int reaction = reference.getReactions().getId("R-HSA-6809011");
+        for (int i = graph.start(reaction); i < graph.end(reaction); i++) {
+            pathways.add(reference.getPathways().getName(graph.target(i)));
+        }
+        assertEquals(mapping.getReactionsToPathways().get("R-HSA-6809011"), pathways);
+        assertTrue(pathways.contains("R-HSA-392499"));
+    }
+
+    @Test
+    void newPathwayInstanceTest() {
+        int pathway = reference.getPathways().getId("R-HSA-392499");
+        assertNotSame(reference.newPathwayInstance(pathway), reference.newPathwayInstance(pathway));
+        assertEquals("R-HSA-392499", reference.newPathwayInstance(pathway).getStId());
+        assertEquals(0, reference.newPathwayInstance(pathway).getEntitiesFound().size());
+    }
+}
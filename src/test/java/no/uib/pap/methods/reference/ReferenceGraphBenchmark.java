@@ -0,0 +1,73 @@
+package no.uib.pap.methods.reference;
+
+import com.google.common.collect.ImmutableSetMultimap;
+import no.uib.pap.model.InputType;
+import no.uib.pap.model.Mapping;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the traversal of all the protein to reaction to pathway paths of the reference data in the multimaps of the
+ * {@link Mapping} and in the {@link CsrGraph}s of the {@link MappingView}. The size of the graphs is printed when the
+ * benchmark starts.
+ * <p>
+ * <p>Run with the test classpath: java no.uib.pap.methods.reference.ReferenceGraphBenchmark</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ReferenceGraphBenchmark {
+
+    private ImmutableSetMultimap<String, String> proteinsToReactions;
+    private ImmutableSetMultimap<String, String> reactionsToPathways;
+    private MappingView reference;
+
+    @Setup
+    public void setUp() {
+        Mapping mapping = new Mapping(InputType.UNIPROT, true);
+        proteinsToReactions = mapping.getProteinsToReactions();
+        reactionsToPathways = mapping.getReactionsToPathways();
+        reference = MappingView.of(mapping);
+
+        System.out.println();
+        System.out.println("Protein to reaction graph: " + reference.getProteinReactions().getEdgeCount() + " edges, " + reference.getProteinReactions().getSizeInBytes() + " bytes");
+        System.out.println("Reaction to pathway graph: " + reference.getReactionPathways().getEdgeCount() + " edges, " + reference.getReactionPathways().getSizeInBytes() + " bytes");
+        System.out.println("Pathway to top level pathway graph: " + reference.getPathwayTopLevelPathways().getEdgeCount() + " edges, " + reference.getPathwayTopLevelPathways().getSizeInBytes() + " bytes");
+        System.out.println("Total: " + reference.getGraphSizeInBytes() + " bytes");
+    }
+
+    @Benchmark
+    public long traverseMultimaps() {
+        long paths = 0;
+        for (String protein : proteinsToReactions.keySet()) {
+            for (String reaction : proteinsToReactions.get(protein)) {
+                paths += reactionsToPathways.get(reaction).size();
+            }
+        }
+        return paths;
+    }
+
+    @Benchmark
+    public long traverseCsrGraphs() {
+        CsrGraph proteinReactions = reference.getProteinReactions();
+        CsrGraph reactionPathways = reference.getReactionPathways();
+        long paths = 0;
+        for (int protein = 0; protein < proteinReactions.getSourceCount(); protein++) {
+            for (int r = proteinReactions.start(protein), rEnd = proteinReactions.end(protein); r < rEnd; r++) {
+                paths += reactionPathways.degree(proteinReactions.target(r));
+            }
+        }
+        return paths;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ReferenceGraphBenchmark.class.getSimpleName()).build()).run();
+    }
+}
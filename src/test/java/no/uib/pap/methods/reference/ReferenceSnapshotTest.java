@@ -0,0 +1,173 @@
+package no.uib.pap.methods.reference;
+
+import com.google.common.collect.ImmutableSetMultimap;
+import no.uib.pap.methods.search.Search;
+import no.uib.pap.methods.search.SearchResult;
+import no.uib.pap.model.InputType;
+import no.uib.pap.model.Mapping;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReferenceSnapshotTest {
+
+    private static Mapping mapping;
+    private static Path file;
+    private static ReferenceSnapshot snapshot;
+
+    @BeforeAll
+    static void writeSnapshot() throws IOException {
+        mapping = new Mapping(InputType.RSID, true);
+        file = Files.createTempFile("reference", ".snapshot");
+
+        // Only two chromosomes, to keep the test short
+        ChromosomeTableSource<Long> chrBp = chr -> chr >= 21 ? mapping.getChrBpToProteins(chr) : ImmutableSetMultimap.of();
+        ChromosomeTableSource<String> rsIds = chr -> chr >= 21 ? mapping.getRsidsToProteins(chr) : ImmutableSetMultimap.of();
+        ReferenceSnapshot.write(chrBp, rsIds, file);
+        snapshot = ReferenceSnapshot.open(file);
+    }
+
+    @AfterAll
+    static void deleteSnapshot() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    private static Path copy() throws IOException {
+        Path copy = Files.createTempFile("reference", ".snapshot");
+        Files.copy(file, copy, StandardCopyOption.REPLACE_EXISTING);
+        return copy;
+    }
+
+    private static void overwrite(Path path, long position, byte value) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{value}), position);
+        }
+    }
+
+    @Test
+    void chromosomeTest() {
+        ChromosomeIndex expected = ChromosomeIndex.of(mapping.getChrBpToProteins(22));
+        ChromosomeIndex actual = snapshot.getChromosome(22);
+        assertEquals(expected.size(), actual.size());
+        for (int position = 0; position < expected.size(); position += 97) {
+            assertEquals(expected.getPosition(position), actual.getPosition(position));
+            assertEquals(expected.start(position), actual.start(position));
+            assertEquals(expected.end(position), actual.end(position));
+            for (int i = expected.start(position); i < expected.end(position); i++) {
+                assertEquals(expected.getProtein(i), actual.getProtein(i));
+            }
+        }
+        long bp = expected.getPosition(expected.size() / 2);
+        assertEquals(expected.find(bp), actual.find(bp));
+        assertEquals(ChromosomeIndex.MISSING, actual.find(-1L));
+        assertEquals(0, snapshot.getChromosome(1).size());
+        assertEquals(0, snapshot.getChromosome(23).size());
+    }
+
+    @Test
+    void rsIdsTest() {
+        RsIdIndex index = snapshot.getRsIds();
+        String rsid = mapping.getRsidsToProteins(21).keySet().stream().filter(id -> RsIdIndex.parseKey(id) >= 0).findFirst().get();
+        int entry = index.find(rsid);
+        assertNotEquals(RsIdIndex.MISSING, entry);
+        assertEquals(21, index.getChr(entry));
+        assertTrue(mapping.getRsidsToProteins(21).get(rsid).contains(index.getProtein(entry)));
+        assertEquals(RsIdIndex.MISSING, index.find("rs10840447"));
+    }
+
+    @Test
+    void searchTest() {
+        Mapping snapshotMapping = new Mapping(InputType.CHRBP, true);
+        ChrBpIndex.of(snapshotMapping, snapshot);
+        long bp = mapping.getChrBpToProteins(22).keySet().iterator().next();
+        List<String> input = Arrays.asList("22 " + bp, "22 " + (bp + 1), "22 1");
+        SearchResult expected = Search.searchWithChrBp(input, mapping, false);
+        SearchResult actual = Search.searchWithChrBp(input, snapshotMapping, false);
+        assertFalse(actual.getHitProteins().isEmpty());
+        assertEquals(expected.getHitProteins(), actual.getHitProteins());
+        assertEquals(expected.getHitPathways().size(), actual.getHitPathways().size());
+    }
+
+    @Test
+    void versionTest() throws IOException {
+        Path copy = copy();
+        try {
+            overwrite(copy, 8, (byte) (ReferenceSnapshot.VERSION + 1));
+            IOException e = assertThrows(IOException.class, () -> ReferenceSnapshot.open(copy));
+            assertTrue(e.getMessage().contains("version"));
+        } finally {
+            Files.delete(copy);
+        }
+    }
+
+    @Test
+    void corruptedHeaderTest() throws IOException {
+        Path copy = copy();
+        try {
+            overwrite(copy, 0, (byte) 0);
+            assertThrows(IOException.class, () -> ReferenceSnapshot.open(copy));
+        } finally {
+            Files.delete(copy);
+        }
+    }
+
+    @Test
+    void missingSectionTest() throws IOException {
+        Path copy = copy();
+        try (FileChannel channel = FileChannel.open(copy, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // Turns the rsid keys into a section of no chromosome, and writes the checksum of the new table
+            ByteBuffer header = ByteBuffer.allocate(24).order(ByteOrder.LITTLE_ENDIAN);
+            channel.read(header, 0);
+            ByteBuffer table = ByteBuffer.allocate(header.getInt(12) * 32).order(ByteOrder.LITTLE_ENDIAN);
+            channel.read(table, 24);
+            for (int entry = 0; entry < table.capacity(); entry += 32) {
+                if (table.getInt(entry) == ReferenceSnapshot.Section.RSID_KEYS.ordinal()) {
+                    table.putInt(entry, ReferenceSnapshot.Section.CHR_BP_POSITIONS.ordinal());
+                }
+            }
+            CRC32 crc = new CRC32();
+            crc.update(table.array());
+            header.putLong(16, crc.getValue());
+            table.rewind();
+            header.rewind();
+            channel.write(table, 24);
+            channel.write(header, 0);
+        }
+        try {
+            ReferenceSnapshot missing = ReferenceSnapshot.open(copy);
+            assertEquals(snapshot.getChromosome(22).size(), missing.getChromosome(22).size());
+            IllegalStateException e = assertThrows(IllegalStateException.class, missing::getRsIds);
+            assertTrue(e.getMessage().contains(copy.toString()));
+        } finally {
+            Files.delete(copy);
+        }
+    }
+
+    @Test
+    void corruptedSectionTest() throws IOException {
+        Path copy = copy();
+        try {
+            // The last byte of the file belongs to the protein names of the rsid index
+            overwrite(copy, Files.size(copy) - 1, (byte) 0);
+            ReferenceSnapshot corrupted = ReferenceSnapshot.open(copy);
+            assertEquals(snapshot.getChromosome(22).size(), corrupted.getChromosome(22).size());
+            assertThrows(IllegalStateException.class, corrupted::getRsIds);
+        } finally {
+            Files.delete(copy);
+        }
+    }
+}
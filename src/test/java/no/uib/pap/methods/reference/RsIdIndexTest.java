@@ -0,0 +1,99 @@
+package no.uib.pap.methods.reference;
+
+import no.uib.pap.model.InputType;
+import no.uib.pap.model.Mapping;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RsIdIndexTest {
+
+    private static Mapping mapping;
+    private static RsIdIndex index;
+
+    @BeforeAll
+    static void loadStaticMapping() {
+        mapping = new Mapping(InputType.RSID, true);
+        index = RsIdIndex.of(mapping);
+    }
+
+    @Test
+    void parseKeyTest() {
+        assertEquals(10840447L, RsIdIndex.parseKey("rs10840447"));
+        assertEquals(-1L, RsIdIndex.parseKey("rs"));
+        assertEquals(-1L, RsIdIndex.parseKey("NA"));
+        assertEquals(-1L, RsIdIndex.parseKey("COSM3425241"));
+        assertEquals(-1L, RsIdIndex.parseKey("rs12a"));
+        assertEquals(-1L, RsIdIndex.parseKey("rs99999999999999999999"));
+    }
+
+    @Test
+    void findTest() {
+        int entry = index.find("rs10840447");
+        assertNotEquals(RsIdIndex.MISSING, entry);
+        assertEquals(11, index.getChr(entry));
+
+        Set<String> proteins = new HashSet<>();
+        for (; entry != RsIdIndex.MISSING; entry = index.next(entry)) {
+            assertEquals(11, index.getChr(entry));
+            proteins.add(index.getProtein(entry));
+        }
+        assertEquals(mapping.getRsidsToProteins(11).get("rs10840447"), proteins);
+        assertTrue(proteins.contains("P01308"));
+    }
+
+    @Test
+    void missingTest() {
+        assertEquals(RsIdIndex.MISSING, index.find("rs121918101"));
+        assertEquals(RsIdIndex.MISSING, index.find("blabla"));
+    }
+
+    @Test
+    void allEntriesTest() {
+        int entries = 0;
+        for (int chr = 1; chr <= RsIdIndex.CHROMOSOMES; chr++) {
+            for (String rsid : mapping.getRsidsToProteins(chr).keySet()) {
+                if (RsIdIndex.parseKey(rsid) >= 0) {
+                    entries += mapping.getRsidsToProteins(chr).get(rsid).size();
+                }
+            }
+        }
+        assertEquals(entries, index.size());
+    }
+
+    @Test
+    void filesSourceTest() {
+        RsIdIndex fromFiles = new RsIdIndex(ChromosomeTableSource.rsIdFiles("resources"));
+        assertEquals(index.size(), fromFiles.size());
+        for (String rsid : new String[]{"rs10840447", "rs7110099", "rs555583938", "rs121918101"}) {
+            int expected = index.find(rsid);
+            int actual = fromFiles.find(rsid);
+            for (; expected != RsIdIndex.MISSING; expected = index.next(expected), actual = fromFiles.next(actual)) {
+                assertEquals(index.getChr(expected), fromFiles.getChr(actual));
+                assertEquals(index.getProtein(expected), fromFiles.getProtein(actual));
+            }
+            assertEquals(RsIdIndex.MISSING, actual);
+        }
+    }
+
+    @Test
+    void filterTest() {
+        assertEquals(0, index.getFilter().getSizeInBytes());
+
+        RsIdIndex filtered = new RsIdIndex(index.getKeys(), index.getStarts(), index.getEntryChrs(), index.getEntryProteins(), index.getProteins(), 0.01);
+        KeyFilter filter = filtered.getFilter();
+        int misses = 0;
+        for (long rsid = 1_000_000_000L; rsid < 1_000_010_000L; rsid++) {
+            assertEquals(RsIdIndex.MISSING, filtered.find("rs" + rsid));
+            misses++;
+        }
+        assertEquals(misses, filter.getChecks());
+        assertEquals(misses, filter.getSkips() + filter.getFalsePositives());
+        assertTrue(filter.getSkipRate() > 0.95);
+        assertNotEquals(RsIdIndex.MISSING, filtered.find("rs10840447"));
+    }
+}
@@ -0,0 +1,104 @@
+package no.uib.pap.methods.reference;
+
+import com.google.common.collect.ImmutableSetMultimap;
+import no.uib.pap.methods.search.Search;
+import no.uib.pap.methods.search.SearchResult;
+import no.uib.pap.model.InputType;
+import no.uib.pap.model.Mapping;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SharedReferenceStoreTest {
+
+    private static Mapping mapping;
+    private static Path directory;
+
+    @BeforeAll
+    static void loadStaticMapping() throws IOException {
+        mapping = new Mapping(InputType.CHRBP, true);
+        directory = Files.createTempDirectory("store");
+    }
+
+    @AfterAll
+    static void deleteStore() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    // Writes a snapshot with chromosome 22 only, to keep the test short
+    private static void writeSnapshot(Path file) throws IOException {
+        ReferenceSnapshot.write(chr -> chr == 22 ? mapping.getChrBpToProteins(chr) : ImmutableSetMultimap.of(),
+                chr -> ImmutableSetMultimap.of(), file);
+    }
+
+    @Test
+    void attachOnceTest() throws Exception {
+        Path file = directory.resolve("once.snapshot");
+        AtomicInteger writes = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<SharedReferenceStore>> stores = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                stores.add(executor.submit(() -> SharedReferenceStore.attach(file, () -> {
+                    writes.incrementAndGet();
+                    writeSnapshot(file);
+                })));
+            }
+            for (Future<SharedReferenceStore> store : stores) {
+                assertEquals(mapping.getChrBpToProteins(22).keySet().size(), store.get().getSnapshot().getChromosome(22).size());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(1, writes.get());
+    }
+
+    @Test
+    void useTest() throws IOException {
+        Path file = directory.resolve("use.snapshot");
+        SharedReferenceStore store = SharedReferenceStore.attach(file, () -> writeSnapshot(file));
+        assertEquals(file, store.getFile());
+
+        Mapping worker = new Mapping(InputType.CHRBP, true);
+        store.use(worker);
+        long bp = mapping.getChrBpToProteins(22).keySet().iterator().next();
+        SearchResult actual = Search.searchWithChrBp(Arrays.asList("22 " + bp, "11 2176042"), worker, false);
+
+        // The store has only chromosome 22
+        SearchResult expected = Search.searchWithChrBp(Arrays.asList("22 " + bp), mapping, false);
+        assertEquals(expected.getHitProteins(), actual.getHitProteins());
+    }
+
+    @Test
+    void fingerprintTest() throws IOException {
+        Path resources = Files.createTempDirectory("resources");
+        try {
+            String empty = SharedReferenceStore.fingerprint(resources.toString());
+            assertEquals(empty, SharedReferenceStore.fingerprint(resources.toString()));
+            Files.write(resources.resolve("chrBpToProteins1.gz"), new byte[]{1, 2, 3});
+            assertNotEquals(empty, SharedReferenceStore.fingerprint(resources.toString()));
+            Files.delete(resources.resolve("chrBpToProteins1.gz"));
+        } finally {
+            Files.delete(resources);
+        }
+    }
+}
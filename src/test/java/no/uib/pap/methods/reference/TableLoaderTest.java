@@ -0,0 +1,102 @@
+package no.uib.pap.methods.reference;
+
+import com.google.common.collect.ImmutableSetMultimap;
+import no.uib.pap.model.InputType;
+import no.uib.pap.model.Mapping;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TableLoaderTest {
+
+    private static Mapping mapping;
+
+    @BeforeAll
+    static void loadStaticMapping() {
+        mapping = new Mapping(InputType.UNIPROT, true);
+    }
+
+    @Test
+    void getTest() {
+        try (TableLoader loader = new TableLoader("resources", 2)) {
+            loader.submitAll(TableLoader.REFERENCE_TABLES);
+            ImmutableSetMultimap<String, String> reactionsToPathways = loader.get("reactionsToPathways");
+            assertEquals(mapping.getReactionsToPathways(), reactionsToPathways);
+            assertEquals(mapping.getProteinsToReactions(), loader.get("proteinsToReactions"));
+            assertEquals(mapping.getPathways().keySet(), loader.<Map<?, ?>>get("pathways").keySet());
+        }
+    }
+
+    @Test
+    void statsTest() {
+        try (TableLoader loader = new TableLoader("resources", 2)) {
+            loader.submitAll(Arrays.asList("pathwaysToTopLevelPathways", "reactionsToPathways", "noTable"));
+            loader.get("reactionsToPathways");
+            loader.get("pathwaysToTopLevelPathways");
+            assertNull(loader.get("noTable"));
+
+            List<TableLoader.TableStats> stats = loader.getStats();
+            assertEquals(3, stats.size());
+            assertEquals("reactionsToPathways", stats.get(0).getName());
+            assertEquals(new File("resources/reactionsToPathways.gz").length(), stats.get(0).getFileBytes());
+            assertTrue(stats.get(0).getBytes() > stats.get(0).getFileBytes());
+            assertTrue(stats.get(0).getNanos() > 0);
+            assertEquals(0, stats.get(2).getFileBytes());
+        }
+    }
+
+    @Test
+    void chromosomeTablesTest() {
+        try (TableLoader loader = new TableLoader("resources", 2)) {
+            loader.submitAll(TableLoader.chromosomeTables(TableLoader.CHR_BP_TABLE).subList(20, 22));
+            ChromosomeTableSource<Long> source = loader.chrBpTables();
+            assertEquals(mapping.getChrBpToProteins(22), source.load(22));
+
+            // A taken table is read again
+            assertEquals(mapping.getChrBpToProteins(22), source.load(22));
+            assertEquals(0, loader.rsIdTables().load(1).size());
+        }
+    }
+
+    @Test
+    void queueTest() {
+        try (TableLoader loader = new TableLoader("resources", 2)) {
+            List<String> names = TableLoader.chromosomeTables(TableLoader.CHR_BP_TABLE).subList(18, 22);
+            loader.queueAll(names);
+            assertEquals(2, loader.getReadAheadCount());
+
+            // Each table taken lets the next one be read
+            ChromosomeTableSource<Long> source = loader.chrBpTables();
+            for (int chr = 19; chr <= 22; chr++) {
+                assertEquals(mapping.getChrBpToProteins(chr), source.load(chr));
+                assertEquals(Math.min(2, 22 - chr), loader.getReadAheadCount());
+            }
+            assertEquals(names, loader.getStats().stream().map(TableLoader.TableStats::getName).collect(Collectors.toList()));
+        }
+    }
+
+    @Test
+    void queueOutOfOrderTest() {
+        try (TableLoader loader = new TableLoader("resources", 1)) {
+            loader.queueAll(TableLoader.chromosomeTables(TableLoader.CHR_BP_TABLE).subList(19, 22));
+            // A queued table asked for before its turn is read at once, and only once
+            assertEquals(mapping.getChrBpToProteins(22), loader.chrBpTables().load(22));
+            assertEquals(1, loader.getReadAheadCount());
+            assertEquals(mapping.getChrBpToProteins(20), loader.chrBpTables().load(20));
+            assertEquals(mapping.getChrBpToProteins(21), loader.chrBpTables().load(21));
+            assertEquals(0, loader.getReadAheadCount());
+        }
+    }
+
+    @Test
+    void threadsTest() {
+        assertThrows(IllegalArgumentException.class, () -> new TableLoader("resources", 0));
+    }
+}
@@ -0,0 +1,155 @@
+package no.uib.pap.methods.search;
+
+import com.google.common.collect.ImmutableTable;
+import no.uib.pap.methods.matching.ProteoformMatching;
+import no.uib.pap.methods.matching.ProteoformMatchingOne;
+import no.uib.pap.methods.matching.ProteoformMatchingSubset;
+import no.uib.pap.methods.matching.ProteoformMatchingSuperset;
+import no.uib.pap.model.InputType;
+import no.uib.pap.model.Mapping;
+import no.uib.pap.model.MatchType;
+import no.uib.pap.model.Proteoform;
+import no.uib.pap.model.ProteoformFormat;
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConcurrentProteoformSearchTest {
+
+    private static Mapping mapping;
+    private static List<String> input;
+
+    @BeforeAll
+    static void loadStaticMapping() {
+        mapping = new Mapping(InputType.PROTEOFORM, true);
+
+        // Reference proteoforms and copies of them with other types and shifted coordinates, which match them only
+        // without types and with a margin
+        input = new ArrayList<>();
+        for (Proteoform proteoform : mapping.getProteinsToProteoforms().values()) {
+            if (input.size() == 600) {
+                break;
+            }
+            if (proteoform.getPtms().isEmpty()) {
+                continue;
+            }
+            Proteoform shifted = new Proteoform(proteoform.getUniProtAccWithIsoform());
+            for (Pair<String, Long> ptm : proteoform.getPtms()) {
+                shifted.addPtm("00046".equals(ptm.getKey()) ? "00047" : "00046", ptm.getValue() == null ? null : ptm.getValue() + 1);
+            }
+            input.add(proteoform.toString(ProteoformFormat.SIMPLE));
+            input.add(shifted.toString(ProteoformFormat.SIMPLE));
+        }
+    }
+
+    @Test
+    void sharedInstancesTest() throws ParseException {
+        for (MatchType matchType : MatchType.values()) {
+            assertSame(ProteoformMatching.getInstance(matchType), ProteoformMatching.getInstance(matchType));
+        }
+
+        // Creating matchers without types does not change the shared ones
+        new ProteoformMatchingSuperset(false);
+        new ProteoformMatchingSubset(false);
+        new ProteoformMatchingOne(false);
+        Proteoform iP = ProteoformFormat.SIMPLE.getProteoform("P01308;00798:31");
+        Proteoform rP = ProteoformFormat.SIMPLE.getProteoform("P01308;00087:31");
+        for (MatchType matchType : new MatchType[]{MatchType.SUPERSET, MatchType.SUBSET, MatchType.ONE}) {
+            assertFalse(ProteoformMatching.getInstance(matchType).matches(iP, rP, 0L), matchType.toString());
+        }
+        for (MatchType matchType : new MatchType[]{MatchType.SUPERSET_NO_TYPES, MatchType.SUBSET_NO_TYPES, MatchType.ONE_NO_TYPES}) {
+            assertTrue(ProteoformMatching.getInstance(matchType).matches(iP, rP, 0L), matchType.toString());
+        }
+    }
+
+    @Test
+    void allMatchTypesConcurrentlyTest() throws Exception {
+        Map<MatchType, SearchResult> expected = new EnumMap<>(MatchType.class);
+        for (MatchType matchType : MatchType.values()) {
+            expected.put(matchType, Search.searchWithProteoform(input, mapping, true, matchType, 1L));
+        }
+        assertNotEquals(expected.get(MatchType.SUPERSET).getMatchedProteoforms(), expected.get(MatchType.SUPERSET_NO_TYPES).getMatchedProteoforms());
+
+        ExecutorService executor = Executors.newFixedThreadPool(MatchType.values().length + 1);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicBoolean running = new AtomicBoolean(true);
+        try {
+            // Keeps creating matchers, which used to change the types setting of all the live matchers
+            Future<?> creator = executor.submit(() -> {
+                start.await();
+                while (running.get()) {
+                    new ProteoformMatchingSuperset(false);
+                    new ProteoformMatchingSubset(true);
+                    new ProteoformMatchingOne(false);
+                }
+                return null;
+            });
+
+            List<MatchType> matchTypes = new ArrayList<>();
+            List<Future<SearchResult>> futures = new ArrayList<>();
+            for (int repetition = 0; repetition < 3; repetition++) {
+                for (MatchType matchType : MatchType.values()) {
+                    matchTypes.add(matchType);
+                    futures.add(executor.submit(() -> {
+                        start.await();
+                        return Search.searchWithProteoform(input, mapping, true, matchType, 1L);
+                    }));
+                }
+            }
+            start.countDown();
+
+            for (int i = 0; i < futures.size(); i++) {
+                SearchResult result = futures.get(i).get();
+                SearchResult reference = expected.get(matchTypes.get(i));
+                assertEquals(reference.getMatchedProteoforms(), result.getMatchedProteoforms(), matchTypes.get(i).toString());
+                assertEquals(reference.getHitProteoforms(), result.getHitProteoforms(), matchTypes.get(i).toString());
+                assertEquals(reference.getHitPathways(), result.getHitPathways(), matchTypes.get(i).toString());
+            }
+            running.set(false);
+            creator.get();
+        } finally {
+            running.set(false);
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void allMatchTypesInOnePassTest() {
+        List<Long> margins = Arrays.asList(0L, 1L, 3L);
+        ForkJoinPool pool = new ForkJoinPool(3);
+        try {
+            for (ForkJoinPool searchPool : Arrays.asList(null, pool)) {
+                ImmutableTable<MatchType, Long, SearchResult> results = Search.searchWithProteoform(input, mapping, true, EnumSet.allOf(MatchType.class), margins, searchPool, 100);
+                assertEquals(MatchType.values().length * margins.size(), results.size());
+                for (MatchType matchType : MatchType.values()) {
+                    for (Long margin : margins) {
+                        SearchResult reference = Search.searchWithProteoform(input, mapping, true, matchType, margin);
+                        SearchResult result = results.get(matchType, margin);
+                        assertEquals(reference.getInputProteoforms(), result.getInputProteoforms(), matchType + " " + margin);
+                        assertEquals(new ArrayList<>(reference.getMatchedProteoforms()), new ArrayList<>(result.getMatchedProteoforms()), matchType + " " + margin);
+                        assertEquals(new ArrayList<>(reference.getHitProteoforms()), new ArrayList<>(result.getHitProteoforms()), matchType + " " + margin);
+                        assertEquals(reference.getHitPathways(), result.getHitPathways(), matchType + " " + margin);
+                    }
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package no.uib.pap.methods.search;
+
+import no.uib.pap.model.InputType;
+import no.uib.pap.model.Mapping;
+import no.uib.pap.model.Pathway;
+import no.uib.pap.model.Proteoform;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConcurrentSearchTest {
+
+    private static Mapping mapping;
+
+    @BeforeAll
+    static void loadStaticMapping() {
+        mapping = new Mapping(InputType.UNIPROT, true);
+    }
+
+    @Test
+    void hitsDoNotLeakBetweenSearchesTest() {
+        SearchResult first = Search.searchWithUniProt(new ArrayList<>(Arrays.asList("P01308", "P35557")), mapping, true);
+        SearchResult second = Search.searchWithUniProt(new ArrayList<>(Arrays.asList("P01308")), mapping, true);
+
+        assertEquals(21, second.getHitPathways().size());
+        for (Pathway pathway : second.getHitPathways()) {
+            assertEquals(1, pathway.getEntitiesFound().size());
+            assertTrue(pathway.getEntitiesFound().contains(new Proteoform("P01308")));
+        }
+        assertTrue(first.getHitPathways().size() > second.getHitPathways().size());
+        assertEquals(0, mapping.getPathways().get("R-HSA-392499").getEntitiesFound().size());
+    }
+
+    @Test
+    void concurrentSearchesTest() throws Exception {
+        List<List<String>> inputs = Arrays.asList(
+                Arrays.asList("P01308"),
+                Arrays.asList("P35557", "P41235"),
+                Arrays.asList("P37088", "P01137", "Q14CN2", "P51170"),
+                Arrays.asList("P01308", "Q16623"));
+
+        List<SearchResult> expected = new ArrayList<>();
+        for (List<String> input : inputs) {
+            expected.add(Search.searchWithUniProt(new ArrayList<>(input), mapping, true));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(inputs.size());
+        List<Future<SearchResult>> futures = new ArrayList<>();
+        for (int repetition = 0; repetition < 8; repetition++) {
+            for (List<String> input : inputs) {
+                futures.add(executor.submit(() -> Search.searchWithUniProt(new ArrayList<>(input), mapping, true)));
+            }
+        }
+
+        for (int i = 0; i < futures.size(); i++) {
+            SearchResult result = futures.get(i).get();
+            SearchResult reference = expected.get(i % inputs.size());
+            assertEquals(reference.getHitPathways(), result.getHitPathways());
+            for (Pathway pathway : reference.getHitPathways()) {
+                assertEquals(pathway.getEntitiesFound(), result.getHitPathwayByStid(pathway.getStId()).getEntitiesFound());
+                assertEquals(pathway.getReactionsFound(), result.getHitPathwayByStid(pathway.getStId()).getReactionsFound());
+            }
+        }
+        executor.shutdown();
+    }
+}
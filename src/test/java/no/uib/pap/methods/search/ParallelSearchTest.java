@@ -0,0 +1,191 @@
+package no.uib.pap.methods.search;
+
+import no.uib.pap.model.InputType;
+import no.uib.pap.model.Mapping;
+import no.uib.pap.model.MatchType;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ParallelSearchTest {
+
+    private static Mapping mapping;
+    private static Mapping ensemblMapping;
+    private static Mapping rsidMapping;
+    private static Mapping chrBpMapping;
+    private static ForkJoinPool pool = new ForkJoinPool(4);
+
+    @BeforeAll
+    static void loadStaticMapping() {
+        mapping = new Mapping(InputType.GENE, true);
+        ensemblMapping = new Mapping(InputType.ENSEMBL, true);
+        rsidMapping = new Mapping(InputType.RSID, true);
+        chrBpMapping = new Mapping(InputType.CHRBP, true);
+    }
+
+    // Every few base pairs of the reference in the chromosomes, the next base pair of each, and a few not valid rows
+    private static List<String> chrBpInput() {
+        List<String> input = new ArrayList<>();
+        for (int chr : new int[]{11, 21, 22}) {
+            int count = 0;
+            for (Long bp : new TreeSet<>(chrBpMapping.getChrBpToProteins(chr).keySet())) {
+                if (count++ % 97 == 0) {
+                    input.add(chr + " " + bp);
+                    input.add(chr + " " + (bp + 1));
+                }
+            }
+        }
+        input.add("11 -1L");
+        input.add("");
+        input.add("blabla");
+        return input;
+    }
+
+    private static String write(SearchResult result) throws IOException {
+        StringWriter writer = new StringWriter();
+        BufferedWriter bw = new BufferedWriter(writer);
+        result.writeToFile(bw, "\t");
+        bw.flush();
+        return writer.toString();
+    }
+
+    private static void assertSameResult(SearchResult expected, SearchResult actual) throws IOException {
+        assertEquals(expected.getHitProteins(), actual.getHitProteins());
+        assertEquals(expected.getHitPathways(), actual.getHitPathways());
+        assertEquals(expected.getInputProteins(), actual.getInputProteins());
+        assertEquals(write(expected), write(actual));
+    }
+
+    @Test
+    void searchWithGeneParallelTest() throws IOException {
+        List<String> input = Arrays.asList("CFTR", "TGFB1", "FCGR2A", "DCTN4", "SCNN1B", "SCNN1G", "SCNN1A", "TNFRSF1A", "CLCA4", "STX1A", "CXCL8", "blabla");
+
+        SearchResult expected = Search.search(new ArrayList<>(input), InputType.GENE, true, mapping);
+        SearchResult actual = ParallelSearch.search(new ArrayList<>(input), InputType.GENE, true, mapping, MatchType.SUPERSET, 0L, "", pool, 2);
+
+        assertSameResult(expected, actual);
+        assertEquals(expected.getHitGenes(), actual.getHitGenes());
+        assertEquals(expected.getMatchedGenes(), actual.getMatchedGenes());
+    }
+
+    @Test
+    void searchWithUniProtParallelTest() throws IOException {
+        List<String> input = Arrays.asList("P01308", "P35557", "P41235", "P37088", "P01137", "Q14CN2", "P51170", "Q16623", "P01308");
+
+        SearchResult expected = Search.search(new ArrayList<>(input), InputType.UNIPROT, false, mapping);
+        SearchResult actual = ParallelSearch.search(new ArrayList<>(input), InputType.UNIPROT, false, mapping, MatchType.SUPERSET, 0L, "", pool, 1);
+
+        assertSameResult(expected, actual);
+    }
+
+    @Test
+    void searchWithEnsemblParallelTest() throws IOException {
+        List<String> input = Arrays.asList("blabla", "ENSG00000101076", "ENSG00000106633", "ENSP00000223366", "ENSP00000312987",
+                "ENSP00000315180", "ENSP00000379142", "ENSP00000384247", "ENSP00000396216", "ENSP00000410911", "ENSP00000476609");
+
+        SearchResult expected = Search.searchWithEnsembl(new ArrayList<>(input), ensemblMapping, true);
+        for (int chunkSize : new int[]{1, 2}) {
+            SearchResult actual = Search.searchWithEnsembl(new ArrayList<>(input), ensemblMapping, true, pool, chunkSize);
+
+            assertSameResult(expected, actual);
+            assertEquals(expected.getMatchedEnsembl(), actual.getMatchedEnsembl());
+            assertEquals(expected.getHitEnsembl(), actual.getHitEnsembl());
+        }
+    }
+
+    @Test
+    void searchWithRsIdParallelTest() throws IOException {
+        // The rsids of a few chromosomes, which are expanded in chunks of each chromosome
+        List<String> input = new ArrayList<>(Arrays.asList("rs121918101", "rs10840447", "rs7110099", "rs555583938", "", "rs"));
+        for (int chr : new int[]{21, 22}) {
+            int count = 0;
+            for (String rsid : new TreeSet<>(rsidMapping.getRsidsToProteins(chr).keySet())) {
+                if (count++ % 211 == 0) {
+                    input.add(rsid);
+                }
+            }
+        }
+
+        SearchResult expected = Search.searchWithRsId(new ArrayList<>(input), rsidMapping, true);
+        for (int chunkSize : new int[]{1, 2}) {
+            SearchResult actual = Search.searchWithRsId(new ArrayList<>(input), rsidMapping, true, pool, chunkSize);
+
+            assertSameResult(expected, actual);
+            assertEquals(expected.getMatchedRsid(), actual.getMatchedRsid());
+            assertEquals(expected.getHitRsid(), actual.getHitRsid());
+        }
+    }
+
+    @Test
+    void searchWithChrBpParallelTest() throws IOException {
+        List<String> input = chrBpInput();
+
+        SearchResult expected = Search.searchWithChrBp(new ArrayList<>(input), chrBpMapping, false);
+        // Small chunks look up each base pair, and a chunk of the whole input merges it with the chromosome
+        for (int chunkSize : new int[]{1, 2, input.size()}) {
+            SearchResult actual = Search.searchWithChrBp(new ArrayList<>(input), chrBpMapping, false, pool, chunkSize);
+
+            assertSameResult(expected, actual);
+            assertEquals(expected.getMatchedChrBp(), actual.getMatchedChrBp());
+            assertEquals(expected.getHitChrBp(), actual.getHitChrBp());
+        }
+    }
+
+    @Test
+    void searchWithVcfParallelTest() throws IOException {
+        Path file = Files.createTempFile("variants", ".vcf");
+        try {
+            List<String> lines = new ArrayList<>();
+            lines.add("#CHROM\tPOS\tID");
+            for (String line : chrBpInput()) {
+                if (!line.isEmpty()) {
+                    lines.add(line.replace(' ', '\t') + "\t.");
+                }
+            }
+            Files.write(file, lines);
+
+            SearchResult expected = Search.searchWithVcf(file, chrBpMapping, true);
+            for (int chunkSize : new int[]{1, 2}) {
+                SearchResult actual = Search.searchWithVcf(file, chrBpMapping, true, pool, chunkSize);
+
+                assertSameResult(expected, actual);
+                assertEquals(expected.getMatchedChrBp(), actual.getMatchedChrBp());
+                assertEquals(expected.getHitChrBp(), actual.getHitChrBp());
+                assertEquals(expected.getInputVariantCount(), actual.getInputVariantCount());
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    void searchWithChrBpWindowParallelTest() throws IOException {
+        List<String> input = chrBpInput();
+        input.add("chr11:2100000-2200000");
+        input.add("21:10000000-20000000");
+        input.add("21:10000000-20000000");
+
+        SearchResult expected = Search.searchWithChrBpWindow(new ArrayList<>(input), chrBpMapping, true, 1000L);
+        for (int chunkSize : new int[]{1, 2}) {
+            SearchResult actual = Search.searchWithChrBpWindow(new ArrayList<>(input), chrBpMapping, true, 1000L, pool, chunkSize);
+
+            assertSameResult(expected, actual);
+            assertEquals(expected.getMatchedChrBp(), actual.getMatchedChrBp());
+            assertEquals(expected.getHitChrBp(), actual.getHitChrBp());
+            assertEquals(expected.getMatchedRegions(), actual.getMatchedRegions());
+            assertEquals(expected.getHitRegions(), actual.getHitRegions());
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package no.uib.pap.methods.search;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the build time and the peptide lookups per second of the {@link PeptideIndex} types on a FASTA file, by
+ * default the one of the peptide search tests, or the one of the system property "fasta". The peptides are substrings
+ * of 7 to 25 residues taken at random from the sequences. The heap used by each index is printed when the benchmark
+ * starts.
+ * <p>
+ * <p>Run with the test classpath: java no.uib.pap.methods.search.PeptideIndexBenchmark</p>
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = "-Xmx8g")
+public class PeptideIndexBenchmark {
+
+    private static final int PEPTIDES = 10_000;
+
+    @Param({"FM_INDEX", "SUFFIX_ARRAY"})
+    public PeptideIndex.Type type;
+
+    private Path fastaFile;
+    private PeptideIndex index;
+    private List<String> peptides;
+
+    private static long getUsedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    @Setup
+    public void setUp() throws IOException, ClassNotFoundException {
+        fastaFile = Paths.get(System.getProperty("fasta", "../PathwayMatcher/resources/uniprot-all.fasta"));
+        List<String> sequences = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(fastaFile, StandardCharsets.ISO_8859_1)) {
+            StringBuilder sequence = null;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(">")) {
+                    if (sequence != null && sequence.length() >= 25) {
+                        sequences.add(sequence.toString());
+                    }
+                    sequence = new StringBuilder();
+                } else if (sequence != null) {
+                    sequence.append(line.trim());
+                }
+            }
+            if (sequence != null && sequence.length() >= 25) {
+                sequences.add(sequence.toString());
+            }
+        }
+        Random random = new Random(7);
+        peptides = new ArrayList<>(PEPTIDES);
+        for (int i = 0; i < PEPTIDES; i++) {
+            String sequence = sequences.get(random.nextInt(sequences.size()));
+            int length = 7 + random.nextInt(19);
+            int start = random.nextInt(sequence.length() - length + 1);
+            peptides.add(sequence.substring(start, start + length));
+        }
+
+        long before = getUsedMemory();
+        index = PeptideMatcher.buildPeptideIndex(type, fastaFile);
+        long after = getUsedMemory();
+
+        System.out.println();
+        System.out.println(type + " of " + sequences.size() + " proteins: " + (after - before) + " bytes of heap");
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public PeptideIndex build() throws IOException, ClassNotFoundException {
+        return PeptideMatcher.buildPeptideIndex(type, fastaFile);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @OperationsPerInvocation(PEPTIDES)
+    public long getProteinMapping() {
+        long mappings = 0;
+        for (String peptide : peptides) {
+            mappings += index.getProteinMapping(peptide).size();
+        }
+        return mappings;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(PeptideIndexBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,146 @@
+package no.uib.pap.methods.search;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PeptideIndexStoreTest {
+
+    private static Path directory;
+
+    @BeforeAll
+    static void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("peptides");
+    }
+
+    @AfterAll
+    static void deleteDirectory() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    private static Path writeFasta(String name, String sequence) throws IOException {
+        Path fasta = directory.resolve(name);
+        Files.write(fasta, (">sp|P01308|INS_HUMAN Insulin\n" + sequence + "\n").getBytes(StandardCharsets.UTF_8));
+        return fasta;
+    }
+
+    @Test
+    void fingerprintTest() throws IOException {
+        Path fasta = writeFasta("a.fasta", "MALWMRLLPLLALLALWGPDPAAA");
+        Path copy = writeFasta("b.fasta", "MALWMRLLPLLALLALWGPDPAAA");
+        Path edited = writeFasta("c.fasta", "MALWMRLLPLLALLALWGPDPAAG");
+        assertEquals(PeptideIndexStore.fingerprint(fasta), PeptideIndexStore.fingerprint(copy));
+        assertNotEquals(PeptideIndexStore.fingerprint(fasta), PeptideIndexStore.fingerprint(edited));
+    }
+
+    @Test
+    void buildOnceTest() throws Exception {
+        String fingerprint = PeptideIndexStore.fingerprint(writeFasta("once.fasta", "GIVEQCCTSICSLYQLENYCN"));
+        AtomicInteger builds = new AtomicInteger();
+        PeptideIndexStore.IndexBuilder<ArrayList> builder = () -> {
+            builds.incrementAndGet();
+            return new ArrayList<>(Arrays.asList("GIVEQCCTSICSLYQLENYCN", "P01308"));
+        };
+        ArrayList<?> built = PeptideIndexStore.getOrBuild(directory, fingerprint, ArrayList.class, builder);
+        assertTrue(Files.exists(PeptideIndexStore.file(directory, fingerprint)));
+
+        // Another process reads the index written by the first one
+        ArrayList<?> read = PeptideIndexStore.getOrBuild(directory, fingerprint, ArrayList.class, builder);
+        assertEquals(1, builds.get());
+        assertEquals(built, read);
+        assertNotSame(built, read);
+    }
+
+    @Test
+    void notSerializableTest() throws Exception {
+        String fingerprint = PeptideIndexStore.fingerprint(writeFasta("object.fasta", "FVNQHLCGSHLVEALYLVCGERGFFYTPKT"));
+        AtomicInteger builds = new AtomicInteger();
+        PeptideIndexStore.IndexBuilder<Object> builder = () -> {
+            builds.incrementAndGet();
+            return new Object();
+        };
+        PeptideIndexStore.getOrBuild(directory, fingerprint, Object.class, builder);
+        PeptideIndexStore.getOrBuild(directory, fingerprint, Object.class, builder);
+        assertEquals(2, builds.get());
+        assertFalse(Files.exists(PeptideIndexStore.file(directory, fingerprint)));
+    }
+
+    @Test
+    void unreadableTest() throws Exception {
+        String fingerprint = PeptideIndexStore.fingerprint(writeFasta("corrupt.fasta", "RREAEDLQVGQVELGGGPGAGSLQPLALEGSLQKR"));
+        Files.write(PeptideIndexStore.file(directory, fingerprint), new byte[]{1, 2, 3});
+        AtomicInteger builds = new AtomicInteger();
+        ArrayList<?> index = PeptideIndexStore.getOrBuild(directory, fingerprint, ArrayList.class, () -> {
+            builds.incrementAndGet();
+            return new ArrayList<>(Arrays.asList("P01308"));
+        });
+        assertEquals(1, builds.get());
+        assertEquals(index, PeptideIndexStore.read(PeptideIndexStore.file(directory, fingerprint), ArrayList.class));
+        assertNull(PeptideIndexStore.read(PeptideIndexStore.file(directory, fingerprint), String.class));
+    }
+
+    @Test
+    void otherClassesTest() throws Exception {
+        String fingerprint = PeptideIndexStore.fingerprint(writeFasta("classes.fasta", "LVCGERGFFYTPKTRREAEDLQVGQ"));
+        PeptideIndexStore.getOrBuild(directory, fingerprint, ArrayList.class, () -> new ArrayList<>(Arrays.asList("P01308", 24)));
+        // The integer is not a class of the indices, so the file is not read
+        assertTrue(Files.exists(PeptideIndexStore.file(directory, fingerprint)));
+        assertNull(PeptideIndexStore.read(PeptideIndexStore.file(directory, fingerprint), ArrayList.class));
+    }
+
+    @Test
+    void sharedDirectoryTest() throws Exception {
+        Path shared = directory.resolve("shared");
+        Files.createDirectory(shared);
+        try {
+            Files.setPosixFilePermissions(shared, PosixFilePermissions.fromString("rwxrwxrwx"));
+            assertThrows(IOException.class, () -> PeptideIndexStore.createPrivateDirectory(shared));
+
+            // The index is built without the folder
+            AtomicInteger builds = new AtomicInteger();
+            PeptideIndexStore.IndexBuilder<ArrayList> builder = () -> {
+                builds.incrementAndGet();
+                return new ArrayList<>(Arrays.asList("P01308"));
+            };
+            assertEquals(Arrays.asList("P01308"), PeptideIndexStore.getOrBuild(shared, "shared", ArrayList.class, builder));
+            PeptideIndexStore.getOrBuild(shared, "shared", ArrayList.class, builder);
+            assertEquals(2, builds.get());
+            try (Stream<Path> files = Files.list(shared)) {
+                assertEquals(0, files.count());
+            }
+        } finally {
+            Files.delete(shared);
+        }
+    }
+
+    @Test
+    void privateDirectoryTest() throws IOException {
+        Path created = directory.resolve("private").resolve("indices");
+        try {
+            PeptideIndexStore.createPrivateDirectory(created);
+            assertEquals(PosixFilePermissions.fromString("rwx------"), Files.getPosixFilePermissions(created));
+            // An existing private folder is used as it is
+            PeptideIndexStore.createPrivateDirectory(created);
+        } finally {
+            Files.delete(created);
+            Files.delete(created.getParent());
+        }
+    }
+}
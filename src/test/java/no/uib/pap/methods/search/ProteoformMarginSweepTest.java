@@ -0,0 +1,81 @@
+package no.uib.pap.methods.search;
+
+import no.uib.pap.model.InputType;
+import no.uib.pap.model.Mapping;
+import no.uib.pap.model.MatchType;
+import no.uib.pap.model.Proteoform;
+import no.uib.pap.model.ProteoformFormat;
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProteoformMarginSweepTest {
+
+    private static Mapping mapping;
+    private static List<String> input;
+
+    @BeforeAll
+    static void loadStaticMapping() {
+        mapping = new Mapping(InputType.PROTEOFORM, true);
+
+        // Reference proteoforms with their coordinates shifted by 0 to 4, which match them from that margin
+        input = new ArrayList<>();
+        for (Proteoform proteoform : mapping.getProteinsToProteoforms().values()) {
+            if (input.size() == 500) {
+                break;
+            }
+            if (proteoform.getPtms().isEmpty()) {
+                continue;
+            }
+            long shift = input.size() % 5;
+            Proteoform shifted = new Proteoform(proteoform.getUniProtAccWithIsoform());
+            for (Pair<String, Long> ptm : proteoform.getPtms()) {
+                shifted.addPtm(ptm.getKey(), ptm.getValue() == null || ptm.getValue() == -1L ? ptm.getValue() : ptm.getValue() + shift);
+            }
+            input.add(shifted.toString(ProteoformFormat.SIMPLE));
+        }
+    }
+
+    @Test
+    void sweepTest() {
+        for (MatchType matchType : new MatchType[]{MatchType.SUPERSET, MatchType.SUBSET_NO_TYPES, MatchType.STRICT}) {
+            ProteoformMarginSweep sweep = Search.searchWithProteoformMargins(input, mapping, true, matchType, 5);
+            assertEquals(5, sweep.getMaxMargin());
+            for (long margin = 0; margin <= 5; margin++) {
+                SearchResult expected = Search.searchWithProteoform(input, mapping, true, matchType, margin);
+                SearchResult result = sweep.getResult(margin);
+                assertEquals(expected.getHitProteoforms().size(), sweep.getHitProteoformCount(margin), matchType + " " + margin);
+                assertEquals(expected.getHitPathways().size(), sweep.getHitPathwayCount(margin), matchType + " " + margin);
+                assertEquals(new ArrayList<>(expected.getMatchedProteoforms()), new ArrayList<>(result.getMatchedProteoforms()), matchType + " " + margin);
+                assertEquals(new ArrayList<>(expected.getHitProteoforms()), new ArrayList<>(result.getHitProteoforms()), matchType + " " + margin);
+                assertEquals(expected.getHitPathways(), result.getHitPathways(), matchType + " " + margin);
+            }
+            if (matchType != MatchType.STRICT) {
+                assertTrue(sweep.getHitProteoformCount(0) < sweep.getHitProteoformCount(4), matchType.toString());
+            }
+            assertThrows(IllegalArgumentException.class, () -> sweep.getHitPathwayCount(6));
+        }
+    }
+
+    @Test
+    void parallelSweepTest() {
+        ForkJoinPool pool = new ForkJoinPool(3);
+        try {
+            ProteoformMarginSweep sequential = Search.searchWithProteoformMargins(input, mapping, false, MatchType.ONE, 3);
+            ProteoformMarginSweep parallel = Search.searchWithProteoformMargins(input, mapping, false, MatchType.ONE, 3, pool, 50);
+            for (long margin = 0; margin <= 3; margin++) {
+                assertEquals(sequential.getHitProteoformCount(margin), parallel.getHitProteoformCount(margin));
+                assertEquals(sequential.getHitPathwayCount(margin), parallel.getHitPathwayCount(margin));
+                assertEquals(sequential.getResult(margin).getHitPathways(), parallel.getResult(margin).getHitPathways());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
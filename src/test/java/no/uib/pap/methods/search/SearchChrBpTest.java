@@ -2,13 +2,24 @@ package no.uib.pap.methods.search;
 
 import no.uib.pap.model.InputType;
 import no.uib.pap.model.Mapping;
+import no.uib.pap.model.Warning;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class SearchChrBpTest {
@@ -21,6 +32,14 @@ class SearchChrBpTest {
         mapping = new Mapping(InputType.CHRBP, true);
     }
 
+    private static List<String> write(SearchResult result) throws IOException {
+        StringWriter records = new StringWriter();
+        try (BufferedWriter writer = new BufferedWriter(records)) {
+            result.writeToFile(writer, "\t");
+        }
+        return Arrays.asList(records.toString().split("\\R"));
+    }
+
     @Test
     void searchWithChr_Bp() {
         List<String> input = new ArrayList<>();
@@ -39,4 +58,128 @@ class SearchChrBpTest {
         assertTrue(result.containsPathwayByStid("R-HSA-264876"));
         assertTrue(result.containsPathwayByStid("R-HSA-74749"));
     }
-}
\ No newline at end of file
+
+    @Test
+    void searchWithManyChr_BpTest() {
+        // Enough base pairs of one chromosome for the search to merge them with the positions of the chromosome
+        List<String> input = new ArrayList<>();
+        Set<Long> inputBps = new HashSet<>();
+        Set<String> expectedProteins = new HashSet<>();
+        int count = 0;
+        for (Long bp : new TreeSet<>(mapping.getChrBpToProteins(21).keySet())) {
+            if (count++ % 2 == 0) {
+                input.add("21 " + bp);
+                inputBps.add(bp);
+                expectedProteins.addAll(mapping.getChrBpToProteins(21).get(bp));
+            } else {
+                input.add("21 " + (bp + 1));  // Usually not found
+                inputBps.add(bp + 1);
+            }
+        }
+
+        SearchResult result = Search.searchWithChrBp(input, mapping, false);
+
+        assertTrue(result.getMatchedProteins().containsAll(expectedProteins));
+        for (Long bp : result.getMatchedChrBp().get(21)) {
+            assertTrue(mapping.getChrBpToProteins(21).containsKey(bp));
+        }
+        assertEquals(inputBps.size(), result.getInputChrBp().get(21).size());
+    }
+
+    @Test
+    void searchWithChrBpWindowTest() throws IOException {
+        long first = Long.MAX_VALUE;
+        long last = Long.MIN_VALUE;
+        for (Long bp : mapping.getChrBpToProteins(11).keySet()) {
+            if (mapping.getChrBpToProteins(11).get(bp).contains("P01308")) {
+                first = Math.min(first, bp);
+                last = Math.max(last, bp);
+            }
+        }
+
+        List<String> input = new ArrayList<>();
+        input.add("11 " + (first - 100));
+        SearchResult result = Search.searchWithChrBpWindow(input, mapping, true, 50L);
+        assertFalse(result.getHitProteins().contains("P01308"));
+
+        result = Search.searchWithChrBpWindow(input, mapping, true, 100L);
+        assertTrue(result.getHitProteins().contains("P01308"));
+        assertTrue(result.containsPathwayByStid("R-HSA-264876"));
+
+        input = new ArrayList<>();
+        input.add("chr11:" + (first + 1) + "-" + (last - 1));
+        input.add("11:" + (last + 1) + "-" + (first - 1)); // Start after the end
+        input.add("11:abc"); // Not valid
+        List<Integer> invalidRows = new ArrayList<>();
+        Search.warningHandler = (warning, row) -> {
+            if (warning == Warning.INVALID_ROW) {
+                invalidRows.add(row);
+            }
+        };
+        try {
+            result = Search.searchWithChrBpWindow(input, mapping, false, 0L);
+        } finally {
+            Search.warningHandler = Warning::sendWarning;
+        }
+        assertTrue(result.getHitProteins().contains("P01308"));
+        assertEquals(Arrays.asList(2, 3), invalidRows);
+        assertEquals(new HashSet<>(Arrays.asList("11:" + (first + 1) + "-" + (last - 1))), result.getInputRegions());
+        assertTrue(result.getInputChrBp().isEmpty());
+
+        // Regions with the same start, and a variant at that start, are all searched, and a repeated one once
+        input = new ArrayList<>();
+        input.add("11:" + first + "-" + (last - 1));
+        input.add("11:" + first + "-" + (last + 1000));
+        input.add("11 " + first);
+        List<String> records = write(Search.searchWithChrBpWindow(input, mapping, false, 0L));
+        for (String label : Arrays.asList(first + "-" + (last - 1), first + "-" + (last + 1000), String.valueOf(first))) {
+            assertTrue(records.stream().anyMatch(record -> record.startsWith("11\t" + label + "\tP01308\t")), label);
+        }
+        assertEquals(write(Search.searchWithChrBpWindow(input.subList(0, 3), mapping, false, 0L)), records);
+
+        // The regions are counted apart from the variant at their start
+        result = Search.searchWithChrBpWindow(input, mapping, false, 0L);
+        assertEquals(1, result.getInputChrBp().size());
+        assertEquals(1, result.getMatchedChrBp().size());
+        assertEquals(1, result.getHitChrBp().size());
+        Set<String> regions = new HashSet<>(Arrays.asList("11:" + first + "-" + (last - 1), "11:" + first + "-" + (last + 1000)));
+        assertEquals(regions, result.getInputRegions());
+        assertEquals(regions, result.getMatchedRegions());
+        assertEquals(regions, result.getHitRegions());
+    }
+
+    @Test
+    void searchWithVcfTest() throws IOException {
+        Path file = Files.createTempFile("variants", ".vcf");
+        try {
+            List<String> variants = Arrays.asList("11\t2176042\t.", "11\t2176105\t.", "11\t5\t.", "11\t2176134\t.", "11\t2176042\t.", "11\t5\t.");
+            List<String> lines = new ArrayList<>();
+            lines.add("#CHROM\tPOS\tID");
+            lines.addAll(variants);
+            lines.add("11\t-1\t.");
+            Files.write(file, lines);
+            SearchResult result = Search.searchWithVcf(file, mapping, true);
+
+            assertEquals(1, result.getHitProteins().size());
+            assertTrue(result.getHitProteins().contains("P01308"));
+            assertEquals(21, result.getHitPathways().size());
+            assertEquals(3, result.getMatchedChrBp().size());
+            assertEquals(6, result.getInputVariantCount());
+            assertTrue(result.getInputChrBp().isEmpty());
+
+            // The repeated variants in other batches do not add their records again
+            List<String> chrBps = new ArrayList<>();
+            for (String variant : variants) {
+                chrBps.add(variant.substring(0, variant.lastIndexOf('\t')).replace('\t', ' '));
+            }
+            Set<String> expected = new TreeSet<>(write(Search.searchWithChrBp(chrBps, mapping, true)));
+            for (int batchSize : new int[]{1, 2, Search.VCF_BATCH_SIZE}) {
+                List<String> records = write(Search.searchWithVcf(file, mapping, true, null, Integer.MAX_VALUE, batchSize));
+                assertEquals(expected.size(), records.size());
+                assertEquals(expected, new TreeSet<>(records));
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package no.uib.pap.methods.search;
+
+import org.apache.commons.lang3.tuple.MutablePair;
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SuffixArrayPeptideIndexTest {
+
+    private static Path directory;
+
+    @BeforeAll
+    static void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("peptides");
+    }
+
+    @AfterAll
+    static void deleteDirectory() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    private static Path writeFasta(String name, String content) throws IOException {
+        Path fasta = directory.resolve(name);
+        Files.write(fasta, content.getBytes(StandardCharsets.UTF_8));
+        return fasta;
+    }
+
+    // Every occurrence of the peptide in every sequence, with I and L as the same amino acid
+    private static List<Pair<String, Integer>> scan(List<String> accessions, List<String> sequences, String peptide) {
+        List<Pair<String, Integer>> mappings = new ArrayList<>();
+        String normalized = peptide.toUpperCase().replace('I', 'L');
+        for (int protein = 0; protein < sequences.size(); protein++) {
+            String sequence = sequences.get(protein).toUpperCase().replace('I', 'L');
+            for (int position = sequence.indexOf(normalized); position >= 0; position = sequence.indexOf(normalized, position + 1)) {
+                mappings.add(new MutablePair<>(accessions.get(protein), position));
+            }
+        }
+        return mappings;
+    }
+
+    @Test
+    void getProteinMappingTest() throws IOException {
+        Path fasta = writeFasta("insulin.fasta",
+                ">sp|P01308|INS_HUMAN Insulin OS=Homo sapiens\n"
+                        + "MALWMRLLPLLALLALWGPDPAAAFVNQHLCGSHLVEALYLVCGERGFFYTPKTRREAEDLQVGQVELGGGPGAGSLQPLALEGSLQKR\n"
+                        + "GIVEQCCTSICSLYQLENYCN\n"
+                        + ">tr|A0A024R1R8|A0A024R1R8_HUMAN Uncharacterized protein\n"
+                        + "mskgplqsvqvfgrkk\n"
+                        + "\n"
+                        + ">P68871 Hemoglobin subunit beta\n"
+                        + "MVHLTPEEKSAVTALWGKVNVDEVGGEALGRLLVVYPWTQRFFESFGDLSTPDAVMGNPKVKAHGKKVLGAFSDGLAHLDNLKGTFATLSELHCDKLHVDPENFRLLGNVLVCVLAHHFGKEFTPPVQAAYQKVVAGVANALAHKYH\n");
+        SuffixArrayPeptideIndex index = SuffixArrayPeptideIndex.of(fasta);
+        assertEquals(3, index.getProteinCount());
+        assertEquals(110 + 16 + 147, index.getResidueCount());
+
+        assertEquals(Arrays.asList(new MutablePair<>("P01308", 24)), index.getProteinMapping("FVNQHLCGSHLVEALYLVCGER"));
+        // Sequences that span two lines
+        assertEquals(Arrays.asList(new MutablePair<>("P01308", 85)), index.getProteinMapping("LQKRGIVEQ"));
+        // I and L are the same, and lower case letters the same as upper case ones
+        assertEquals(Arrays.asList(new MutablePair<>("P01308", 89)), index.getProteinMapping("GLVEQCCTSLCSIYQ"));
+        assertEquals(Arrays.asList(new MutablePair<>("A0A024R1R8", 1)), index.getProteinMapping("SKGPLQSVQVFGR"));
+        assertEquals(Arrays.asList(new MutablePair<>("P01308", 86), new MutablePair<>("P68871", 131)), index.getProteinMapping("QK"));
+        assertEquals(Arrays.asList(new MutablePair<>("P68871", 16), new MutablePair<>("P68871", 64), new MutablePair<>("P68871", 119)), index.getProteinMapping("gk"));
+
+        // A peptide does not span two proteins
+        assertTrue(index.getProteinMapping("YCNMSKG").isEmpty());
+        assertTrue(index.getProteinMapping("WWWW").isEmpty());
+        assertTrue(index.getProteinMapping("").isEmpty());
+    }
+
+    @Test
+    void randomTest() throws IOException {
+        Random random = new Random(11);
+        String aminoAcids = "ACDEFGHIKLMNPQRSTVWY";
+        List<String> accessions = new ArrayList<>();
+        List<String> sequences = new ArrayList<>();
+        StringBuilder fasta = new StringBuilder();
+        for (int protein = 0; protein < 300; protein++) {
+            StringBuilder sequence = new StringBuilder();
+            int length = random.nextInt(400);
+            for (int i = 0; i < length; i++) {
+                // A few residues make many repeats
+                sequence.append(aminoAcids.charAt(random.nextInt(random.nextInt(4) == 0 ? 3 : aminoAcids.length())));
+            }
+            if (protein % 50 == 0 && !sequences.isEmpty()) {
+                sequence = new StringBuilder(sequences.get(random.nextInt(sequences.size())));
+            }
+            accessions.add("Q" + protein);
+            sequences.add(sequence.toString());
+            fasta.append(">sp|Q").append(protein).append("|TEST\n");
+            for (int i = 0; i < sequence.length(); i += 60) {
+                fasta.append(sequence, i, Math.min(i + 60, sequence.length())).append('\n');
+            }
+        }
+        SuffixArrayPeptideIndex index = SuffixArrayPeptideIndex.of(writeFasta("random.fasta", fasta.toString()));
+
+        for (int i = 0; i < 2000; i++) {
+            String peptide;
+            String sequence = sequences.get(random.nextInt(sequences.size()));
+            if (i % 3 == 0 || sequence.length() < 2) {
+                StringBuilder randomPeptide = new StringBuilder();
+                for (int j = 1 + random.nextInt(6); j > 0; j--) {
+                    randomPeptide.append(aminoAcids.charAt(random.nextInt(aminoAcids.length())));
+                }
+                peptide = randomPeptide.toString();
+            } else {
+                int start = random.nextInt(sequence.length() - 1);
+                peptide = sequence.substring(start, Math.min(sequence.length(), start + 1 + random.nextInt(25)));
+            }
+            assertEquals(scan(accessions, sequences, peptide), index.getProteinMapping(peptide), peptide);
+        }
+    }
+
+    @Test
+    void sortSuffixesTest() {
+        for (String text : Arrays.asList("", "A", "AAAAAAAA", "BANANA", "MISSISSIPPI", "ABABABABABAB")) {
+            int[] suffixes = SuffixArrayPeptideIndex.sortSuffixes(text.getBytes(StandardCharsets.US_ASCII));
+            assertEquals(text.length(), suffixes.length);
+            for (int i = 1; i < suffixes.length; i++) {
+                assertTrue(text.substring(suffixes[i - 1]).compareTo(text.substring(suffixes[i])) < 0, text);
+            }
+        }
+    }
+
+    @Test
+    void getAccessionTest() {
+        assertEquals("P01308", SuffixArrayPeptideIndex.getAccession(">sp|P01308|INS_HUMAN Insulin"));
+        assertEquals("P01308-2", SuffixArrayPeptideIndex.getAccession(">sp|P01308-2|INS_HUMAN Isoform 2 of Insulin"));
+        assertEquals("A0A024R1R8", SuffixArrayPeptideIndex.getAccession(">tr|A0A024R1R8|A0A024R1R8_HUMAN"));
+        assertEquals("ENSP00000250971", SuffixArrayPeptideIndex.getAccession(">ENSP00000250971 pep chromosome:GRCh38"));
+    }
+
+    @Test
+    void peptideMatcherTest() throws Exception {
+        Path fasta = writeFasta("matcher.fasta", ">sp|P01308|INS_HUMAN Insulin\nMALWMRLLPLLALLALWGPDPAAAFVNQHLCGSHLVEALYLVCGERGFFYTPKT\n"
+                + ">sp|P01308-2|INS_HUMAN Isoform 2 of Insulin\nMALWMRLLPLLALLALWGPDPAAAFVNQHLCGSHLVEALYLVCGERGFFYTPKTRR\n");
+        PeptideMatcher.setIndexDirectory(directory);
+        PeptideMatcher.setPeptideIndexType(PeptideIndex.Type.SUFFIX_ARRAY);
+        try {
+            assertTrue(PeptideMatcher.initializePeptideMapper(fasta.toString()));
+            assertEquals(Arrays.asList("P01308", "P01308-2"), PeptideMatcher.getPeptideMapping("GFFYTPKT"));
+            assertEquals(Arrays.asList(new MutablePair<>("P01308-2", 46)), PeptideMatcher.getPeptideMappingWithIndex("GFFYTPKTR"));
+            assertEquals(2, PeptideMatcher.getProteoforms("GFFYTPKT;00046:3").size());
+            assertTrue(Files.exists(PeptideIndexStore.file(directory, "suffix_array-" + PeptideIndexStore.fingerprint(fasta))));
+
+            // The index written by the first load is read by the next process
+            SuffixArrayPeptideIndex read = PeptideIndexStore.read(PeptideIndexStore.file(directory, "suffix_array-" + PeptideIndexStore.fingerprint(fasta)), SuffixArrayPeptideIndex.class);
+            assertNotNull(read);
+            assertEquals(PeptideMatcher.getPeptideMappingWithIndex("ALWMR"), read.getProteinMapping("ALWMR"));
+            assertEquals(PeptideMatcher.buildPeptideIndex(PeptideIndex.Type.SUFFIX_ARRAY, fasta).getProteinMapping("LVCGER"), read.getProteinMapping("LVCGER"));
+
+            // An edited file is loaded again
+            writeFasta("matcher.fasta", ">sp|P68871|HBB_HUMAN Hemoglobin subunit beta\nMVHLTPEEKSAVTALWGKVNVDEVGGEALGRLLVVYPWTQRFFESFGDLSTPDAVMGNPK\n");
+            Files.setLastModifiedTime(fasta, FileTime.fromMillis(Files.getLastModifiedTime(fasta).toMillis() + 2000));
+            assertTrue(PeptideMatcher.initializePeptideMapper(fasta.toString()));
+            assertTrue(PeptideMatcher.getPeptideMapping("GFFYTPKT").isEmpty());
+            assertEquals(Arrays.asList("P68871"), PeptideMatcher.getPeptideMapping("VNVDEVGGEALGR"));
+        } finally {
+            PeptideMatcher.setPeptideIndexType(PeptideIndex.Type.FM_INDEX);
+            PeptideMatcher.setIndexDirectory(PeptideIndexStore.getDefaultDirectory());
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package no.uib.pap.methods.search;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class VcfReaderTest {
+
+    private static final String VCF = "##fileformat=VCFv4.2\n"
+            + "#CHROM\tPOS\tID\tREF\tALT\n"
+            + "11\t2176042\trs1\tA\tG\n"
+            + "chr11\t2176105\t.\tA\tG\r\n"
+            + "X\t100\t.\tA\tG\n"
+            + "\n"
+            + "11 2176134\n"
+            + "11\tabc\t.\tA\tG\n"
+            + "1\t15";
+
+    private static List<String> read(Path file) throws IOException {
+        List<String> records = new ArrayList<>();
+        try (VcfReader reader = new VcfReader(file)) {
+            while (reader.next()) {
+                records.add(reader.isValid() ? reader.getRow() + ":" + reader.getChr() + ":" + reader.getBp() : reader.getRow() + ":invalid");
+            }
+        }
+        return records;
+    }
+
+    private static List<String> expected() {
+        List<String> records = new ArrayList<>();
+        records.add("3:11:2176042");
+        records.add("4:11:2176105");
+        records.add("5:invalid");
+        records.add("7:11:2176134");
+        records.add("8:invalid");
+        records.add("9:1:15");
+        return records;
+    }
+
+    @Test
+    void plainFileTest() throws IOException {
+        Path file = Files.createTempFile("variants", ".vcf");
+        try {
+            Files.write(file, VCF.getBytes(StandardCharsets.UTF_8));
+            assertEquals(expected(), read(file));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    void blockGzipFileTest() throws IOException {
+        // Each half of the file in its own gzip member, as in a bgzip file
+        Path file = Files.createTempFile("variants", ".vcf.gz");
+        try {
+            byte[] bytes = VCF.getBytes(StandardCharsets.UTF_8);
+            try (OutputStream out = Files.newOutputStream(file)) {
+                for (int from = 0; from < bytes.length; from += bytes.length / 2 + 1) {
+                    GZIPOutputStream member = new GZIPOutputStream(out);
+                    member.write(bytes, from, Math.min(bytes.length / 2 + 1, bytes.length - from));
+                    member.finish();
+                }
+            }
+            assertEquals(expected(), read(file));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    void emptyFileTest() throws IOException {
+        Path file = Files.createTempFile("variants", ".vcf");
+        try {
+            assertEquals(new ArrayList<>(), read(file));
+        } finally {
+            Files.delete(file);
+        }
+    }
+}